@@ -27,29 +27,25 @@ import com.chemaxon.calculations.io.SmilesMemoizingMoleculeIterator;
 import com.chemaxon.calculations.util.CmdlineUtils;
 import com.chemaxon.clustering.common.DissimilarityInput;
 import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
-import com.chemaxon.clustering.common.MolInput;
-import com.chemaxon.clustering.common.MolInputBuilder;
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.ParallelFingerprintGenerator;
 import com.chemaxon.clustering.framework.BemisMurckoClustering;
 import com.chemaxon.clustering.framework.FrameworkClusteringResults;
 import com.chemaxon.clustering.framework.MoleculeFrameworks;
 import com.chemaxon.clustering.util.Util;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpComparator;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpGenerator;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpParameters;
-import com.chemaxon.descriptors.metrics.BinaryMetrics;
 import com.chemaxon.overlap.cli.invocation.CliInvocation;
 import com.chemaxon.overlap.cli.invocation.CliInvocationEnv2;
 import com.chemaxon.overlap.cli.util.images.DrawMoleculeToRenderer;
 import com.chemaxon.overlap.cli.util.images.Halign;
 import static com.chemaxon.overlap.cli.util.images.Px2d.of;
 import com.chemaxon.overlap.cli.util.images.Valign;
-import com.chemaxon.overlap.io.StandardizerWrappers;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -61,6 +57,13 @@ import java.util.function.Function;
  */
 public final class BemisMurckoCli {
 
+    /**
+     * Fingerprint used in {@link BemisMurckoCliParameters.Mode#DENDROGRAM} mode.
+     *
+     * Default CFP parameters (cfp7-3, 1024 bits) with aromatization, explicit H and small fragment removal.
+     */
+    private static final FingerprintSpec DENDROGRAM_FINGERPRINT =
+            new FingerprintSpec(1024, 3, 7, FingerprintSpec.Standardization.PREPROCESS);
 
 
     /**
@@ -373,24 +376,20 @@ public final class BemisMurckoCli {
                     final BiFunction<DissimilarityInput, SubProgressObserver, IDBasedHierarchicClustering> clusteringMethod =
                             BemisMurckoCliParameters.clusteringMethods.parse(params.clus);
 
-                    // Create dissimilarity input
-                    final MolInputBuilder b = new MolInputBuilder();
-                    b.addMolecules(
-                            mi, // Use iterated molecules
-                            StandardizerWrappers.chainOf( // With preprocessing
-                                    StandardizerWrappers.aromatizeBasic(),
-                                    StandardizerWrappers.removeAllExplicitH(),
-                                    StandardizerWrappers.removeSmallFragments()
-                            )
-                    );
-
-                    env.whenStat(t -> t.targetCount = b.size());
+                    // Read structures; names are used as leaf labels
+                    final List<Molecule> molecules = new ArrayList<>();
+                    while (mi.hasNext()) {
+                        molecules.add(mi.next());
+                    }
 
-                    // Fingerpint and comparison method
-                    final CfpGenerator gen = new CfpParameters().getDescriptorGenerator();
-                    final CfpComparator comp = gen.forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO);
+                    env.whenStat(t -> t.targetCount = molecules.size());
 
-                    final MolInput input = b.build(gen, comp);
+                    // Fingerprint in parallel with preprocessing; comparison is Tanimoto on the packed fingerprints
+                    final SubProgressObserver fppo =
+                            env.progressObserver("Fingerprinting", (stat, timer) -> stat.timestatFingerprinting = timer);
+                    final DissimilarityInput input = new ParallelFingerprintGenerator(DENDROGRAM_FINGERPRINT, ForkJoinPool.commonPool())
+                            .generate(molecules, fppo)
+                            .asDissimilarityInput();
 
                     // Launch clustering algorithm
                     final IDBasedHierarchicClustering clustering = clusteringMethod.apply(input, po);
@@ -404,7 +403,7 @@ public final class BemisMurckoCli {
                             .leafImage((leafid, renderer, area) -> renderer
                                     .setFontHeight(area.sy())
                                     .setColor("#000000")
-                                    .placeHorizontalTextInto(input.getMolecule(leafid).getName(), Halign.LEFT, Valign.FILL, area, 0, 0)
+                                    .placeHorizontalTextInto(molecules.get(leafid).getName(), Halign.LEFT, Valign.FILL, area, 0, 0)
 
                             )
                             .writeToPngImage(out, outpo);
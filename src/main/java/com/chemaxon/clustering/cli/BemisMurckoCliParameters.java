@@ -26,8 +26,10 @@ import com.chemaxon.calculations.common.SubProgressObserver;
 import com.chemaxon.calculations.io.SimpleErrorHandling;
 import com.chemaxon.clustering.common.DissimilarityInput;
 import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import com.chemaxon.clustering.linkage.SingleLinkageMst;
 import com.chemaxon.clustering.wards.LanceWilliamsAlgorithm;
 import com.chemaxon.clustering.wards.LanceWilliamsMerges;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 
 /**
@@ -53,6 +55,12 @@ public class BemisMurckoCliParameters {
                 () -> (DissimilarityInput input, SubProgressObserver po)
                         -> LanceWilliamsAlgorithm.cluster(input, new LanceWilliamsMerges.SingleLinkage(), po)
         );
+        b.addSimpleChoice(
+                "single-linkage-mst",
+                "Single linkage clustering using minimum spanning tree (Prim's algorithm) with linear memory.",
+                () -> (DissimilarityInput input, SubProgressObserver po)
+                        -> SingleLinkageMst.cluster(input, ForkJoinPool.commonPool(), po)
+        );
         b.addSimpleChoice(
                 "average-linkage",
                 "Average linkage clustering using Lance-Williams algorithm.",
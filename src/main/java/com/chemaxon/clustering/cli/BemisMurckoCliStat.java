@@ -49,6 +49,11 @@ public class BemisMurckoCliStat {
      */
     public TimerStatistics timestatImport = null;
 
+    /**
+     * Timer statistics for fingerprinting phase when applicable.
+     */
+    public TimerStatistics timestatFingerprinting = null;
+
     /**
      * Timer statistics for clustering phase when applicable.
      */
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.fingerprints;
+
+import com.chemaxon.descriptors.fingerprints.cfp.CfpGenerator;
+import com.chemaxon.descriptors.fingerprints.cfp.CfpParameters;
+import com.chemaxon.overlap.io.StandardizerWrapper;
+import com.chemaxon.overlap.io.StandardizerWrappers;
+import com.google.common.base.Optional;
+import java.util.Objects;
+
+/**
+ * Describes how fingerprints are calculated for a molfile.
+ *
+ * Instances are immutable and used as a cache key, so two specs describing the same CFP parameters and the same
+ * standardization are equal.
+ *
+ * @author Gabor Imre
+ */
+public final class FingerprintSpec {
+
+    /**
+     * CFP used by the grouping operations: cfp7-2, 1024 bits, basic aromatization.
+     */
+    public static final FingerprintSpec GROUPING = new FingerprintSpec(1024, 2, 7, Standardization.AROMATIZE_BASIC);
+
+    /**
+     * CFP used by the hierarchic clustering operations: cfp7-1, 1024 bits, no standardization.
+     */
+    public static final FingerprintSpec CLUSTERING = new FingerprintSpec(1024, 1, 7, Standardization.NONE);
+
+    /**
+     * Fingerprint length in bits.
+     */
+    private final int length;
+
+    /**
+     * Bits set for each pattern.
+     */
+    private final int bitsPerPattern;
+
+    /**
+     * Max bond count of enumerated patterns.
+     */
+    private final int bondCount;
+
+    /**
+     * Standardization applied on a clone of the structure before fingerprinting.
+     */
+    private final Standardization standardization;
+
+    /**
+     * Construct.
+     *
+     * @param length Fingerprint length in bits
+     * @param bitsPerPattern Bits set for each pattern
+     * @param bondCount Max bond count of enumerated patterns
+     * @param standardization Standardization to apply
+     */
+    public FingerprintSpec(int length, int bitsPerPattern, int bondCount, Standardization standardization) {
+        if (length <= 0 || length % 64 != 0) {
+            throw new IllegalArgumentException("Fingerprint length must be a positive multiple of 64: " + length);
+        }
+        this.length = length;
+        this.bitsPerPattern = bitsPerPattern;
+        this.bondCount = bondCount;
+        this.standardization = standardization;
+    }
+
+    /**
+     * Create a new generator instance.
+     *
+     * Generators are not shared; each invocation returns a new instance.
+     *
+     * @return New generator
+     */
+    public CfpGenerator createGenerator() {
+        return CfpParameters.createNewBuilder()
+            .length(this.length)
+            .bitsPerPattern(this.bitsPerPattern)
+            .bondCount(this.bondCount)
+            .build().getDescriptorGenerator();
+    }
+
+    /**
+     * Create a new standardizer instance.
+     *
+     * @return Standardizer to apply or absent when no standardization is needed
+     */
+    public Optional<StandardizerWrapper> createStandardizer() {
+        return this.standardization.create();
+    }
+
+    /**
+     * Fingerprint length.
+     *
+     * @return Length in bits
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Fingerprint length in 64 bit words.
+     *
+     * @return Word count of a fingerprint
+     */
+    public int words() {
+        return this.length / 64;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FingerprintSpec)) {
+            return false;
+        }
+        final FingerprintSpec other = (FingerprintSpec) obj;
+        return this.length == other.length
+            && this.bitsPerPattern == other.bitsPerPattern
+            && this.bondCount == other.bondCount
+            && this.standardization == other.standardization;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.length, this.bitsPerPattern, this.bondCount, this.standardization);
+    }
+
+    @Override
+    public String toString() {
+        return "cfp" + this.bondCount + "-" + this.bitsPerPattern + "/" + this.length + " (" + this.standardization + ")";
+    }
+
+    /**
+     * Standardization applied before fingerprinting.
+     */
+    public enum Standardization {
+        /**
+         * Use structures as imported.
+         */
+        NONE {
+            @Override
+            public Optional<StandardizerWrapper> create() {
+                return Optional.absent();
+            }
+        },
+
+        /**
+         * Basic aromatization.
+         */
+        AROMATIZE_BASIC {
+            @Override
+            public Optional<StandardizerWrapper> create() {
+                return Optional.of(StandardizerWrappers.aromatizeBasic());
+            }
+        },
+
+        /**
+         * Basic aromatization, explicit hydrogen and small fragment removal.
+         */
+        PREPROCESS {
+            @Override
+            public Optional<StandardizerWrapper> create() {
+                return Optional.of(StandardizerWrappers.chainOf(
+                    StandardizerWrappers.aromatizeBasic(),
+                    StandardizerWrappers.removeAllExplicitH(),
+                    StandardizerWrappers.removeSmallFragments()));
+            }
+        };
+
+        /**
+         * Create a new standardizer instance.
+         *
+         * @return Standardizer or absent when no standardization is needed
+         */
+        public abstract Optional<StandardizerWrapper> create();
+    }
+}
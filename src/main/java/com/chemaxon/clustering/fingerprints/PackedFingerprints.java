@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.fingerprints;
+
+import com.chemaxon.clustering.common.DissimilarityInput;
+
+/**
+ * Binary fingerprints packed into a single contiguous {@code long []}.
+ *
+ * Row {@code i} occupies words {@code [i * words(), (i + 1) * words())} of the backing array. Bit counts of the rows are
+ * precomputed into a separate column. Comparison kernels take row indices (or raw offsets) and allocate nothing.
+ *
+ * <p>Tanimoto similarity is calculated as {@code c / (a + b - c)} where {@code a} and {@code b} are the bit counts of the
+ * compared rows and {@code c} is the bit count of their intersection. Two empty fingerprints are considered
+ * identical.</p>
+ *
+ * <p>Rows are written once by {@link #setRow(int, long[])}; concurrent writes of different rows are allowed. Reads are
+ * safe after the writes are published (for example by joining the writer tasks).</p>
+ *
+ * @author Gabor Imre
+ */
+public final class PackedFingerprints {
+
+    /**
+     * Row count.
+     */
+    private final int size;
+
+    /**
+     * Words (64 bit) per row.
+     */
+    private final int words;
+
+    /**
+     * Packed fingerprint bits.
+     */
+    private final long [] bits;
+
+    /**
+     * Bit count of each row.
+     */
+    private final int [] popcounts;
+
+    /**
+     * Construct with all rows empty.
+     *
+     * @param size Row count
+     * @param words Words (64 bit) per row
+     */
+    public PackedFingerprints(int size, int words) {
+        if (size < 0 || words <= 0) {
+            throw new IllegalArgumentException("Invalid size " + size + " or words " + words);
+        }
+        if ((long) size * words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many fingerprints to pack: " + size + " x " + words + " words");
+        }
+        this.size = size;
+        this.words = words;
+        this.bits = new long[size * words];
+        this.popcounts = new int[size];
+    }
+
+    /**
+     * Set the bits of a row.
+     *
+     * @param row Row index
+     * @param fp Fingerprint bits; length must match {@link #words()}
+     */
+    public void setRow(int row, long [] fp) {
+        if (fp.length != this.words) {
+            throw new IllegalArgumentException("Fingerprint length " + fp.length + " does not match " + this.words);
+        }
+        System.arraycopy(fp, 0, this.bits, row * this.words, this.words);
+        int c = 0;
+        for (long w : fp) {
+            c += Long.bitCount(w);
+        }
+        this.popcounts[row] = c;
+    }
+
+    /**
+     * Gather the specified rows into a new contiguous instance.
+     *
+     * @param rows Row indices to copy; row {@code i} of the result is row {@code rows[i]} of this instance
+     * @return New instance
+     */
+    public PackedFingerprints select(int [] rows) {
+        final PackedFingerprints ret = new PackedFingerprints(rows.length, this.words);
+        for (int i = 0; i < rows.length; i++) {
+            System.arraycopy(this.bits, rows[i] * this.words, ret.bits, i * this.words, this.words);
+            ret.popcounts[i] = this.popcounts[rows[i]];
+        }
+        return ret;
+    }
+
+    /**
+     * Row count.
+     *
+     * @return Number of fingerprints
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Row length.
+     *
+     * @return Words (64 bit) per row
+     */
+    public int words() {
+        return this.words;
+    }
+
+    /**
+     * Bit count of a row.
+     *
+     * @param row Row index
+     * @return Number of bits set
+     */
+    public int popcount(int row) {
+        return this.popcounts[row];
+    }
+
+    /**
+     * Copy of a row.
+     *
+     * @param row Row index
+     * @return Fingerprint bits
+     */
+    public long [] getRow(int row) {
+        final long [] ret = new long[this.words];
+        System.arraycopy(this.bits, row * this.words, ret, 0, this.words);
+        return ret;
+    }
+
+    /**
+     * Bit count of the intersection of two rows.
+     *
+     * @param row Row index in this instance
+     * @param other Instance of the other row; must have the same row length
+     * @param otherRow Row index in {@code other}
+     * @return Common bits count
+     */
+    public int intersectionCount(int row, PackedFingerprints other, int otherRow) {
+        return intersectionCount(this.bits, row * this.words, other.bits, otherRow * other.words, this.words);
+    }
+
+    /**
+     * Tanimoto similarity of two rows.
+     *
+     * @param row Row index in this instance
+     * @param other Instance of the other row; must have the same row length
+     * @param otherRow Row index in {@code other}
+     * @return Similarity in range {@code [0, 1]}
+     */
+    public double tanimoto(int row, PackedFingerprints other, int otherRow) {
+        return tanimoto(
+            this.popcounts[row],
+            other.popcounts[otherRow],
+            intersectionCount(row, other, otherRow));
+    }
+
+    /**
+     * Tanimoto dissimilarity of two rows.
+     *
+     * @param row Row index in this instance
+     * @param other Instance of the other row; must have the same row length
+     * @param otherRow Row index in {@code other}
+     * @return {@code 1 - tanimoto}
+     */
+    public double dissimilarity(int row, PackedFingerprints other, int otherRow) {
+        return 1.0 - tanimoto(row, other, otherRow);
+    }
+
+    /**
+     * Expose as a clustering input.
+     *
+     * Tanimoto dissimilarities are calculated on the fly from the stored rows.
+     *
+     * @return Dissimilarity input view of these fingerprints
+     */
+    public DissimilarityInput asDissimilarityInput() {
+        return new DissimilarityInput() {
+            @Override
+            public int size() {
+                return PackedFingerprints.this.size;
+            }
+
+            @Override
+            public double dissimilarity(int i, int j) {
+                return PackedFingerprints.this.dissimilarity(i, PackedFingerprints.this, j);
+            }
+        };
+    }
+
+    /**
+     * Approximate memory footprint.
+     *
+     * @return Approximate size in bytes
+     */
+    public long sizeInBytes() {
+        return 8L * this.bits.length + 4L * this.popcounts.length + 32;
+    }
+
+    /**
+     * Bit count of the intersection of two packed rows.
+     *
+     * @param a Backing array of the first row
+     * @param offa Offset of the first row
+     * @param b Backing array of the second row
+     * @param offb Offset of the second row
+     * @param words Row length
+     * @return Common bits count
+     */
+    static int intersectionCount(long [] a, int offa, long [] b, int offb, int words) {
+        int c = 0;
+        for (int k = 0; k < words; k++) {
+            c += Long.bitCount(a[offa + k] & b[offb + k]);
+        }
+        return c;
+    }
+
+    /**
+     * Tanimoto similarity from bit counts.
+     *
+     * @param a Bit count of the first fingerprint
+     * @param b Bit count of the second fingerprint
+     * @param c Bit count of the intersection
+     * @return Similarity in range {@code [0, 1]}
+     */
+    public static double tanimoto(int a, int b, int c) {
+        final int union = a + b - c;
+        return union == 0 ? 1.0 : (double) c / union;
+    }
+}
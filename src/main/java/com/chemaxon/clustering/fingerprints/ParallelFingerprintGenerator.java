@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.fingerprints;
+
+import chemaxon.struc.Molecule;
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.descriptors.common.BinaryVectorDescriptor;
+import com.chemaxon.descriptors.common.unguarded.UnguardedExtractor;
+import com.chemaxon.descriptors.fingerprints.cfp.CfpGenerator;
+import com.chemaxon.descriptors.metrics.BinaryMetrics;
+import com.chemaxon.overlap.io.StandardizerWrapper;
+import com.google.common.base.Optional;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculate fingerprints of a list of structures on a fork-join pool.
+ *
+ * The index range of the input is split recursively; each leaf task fingerprints a contiguous range of structures and
+ * writes them directly into their rows of the result. Output order is therefore the input order regardless of the
+ * scheduling.
+ *
+ * <p>Generators and standardizers are not shared between threads: each worker thread lazily creates its own instances
+ * from the {@link FingerprintSpec}.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class ParallelFingerprintGenerator {
+
+    /**
+     * Max number of structures processed by a single leaf task.
+     */
+    private static final int LEAF_SIZE = 64;
+
+    /**
+     * Spec to use.
+     */
+    private final FingerprintSpec spec;
+
+    /**
+     * Pool to execute on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Per-thread generation state.
+     */
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * Construct.
+     *
+     * @param spec Fingerprint spec to use
+     * @param pool Pool to execute on
+     */
+    public ParallelFingerprintGenerator(FingerprintSpec spec, ForkJoinPool pool) {
+        this.spec = spec;
+        this.pool = pool;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(spec));
+    }
+
+    /**
+     * Generate fingerprints.
+     *
+     * Structures are cloned before standardization, passed structures are not modified.
+     *
+     * @param molecules Structures to fingerprint; must not be modified during the generation
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     *      one structure.
+     * @return Fingerprints; row {@code i} belongs to structure {@code i}
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public PackedFingerprints generate(List<Molecule> molecules, SubProgressObserver po) {
+        try {
+            po.switchToDeterminate(molecules.size());
+            final PackedFingerprints ret = new PackedFingerprints(molecules.size(), this.spec.words());
+            this.pool.invoke(new Task(molecules, ret, po, 0, molecules.size()));
+            return ret;
+        } finally {
+            po.done();
+        }
+    }
+
+    /**
+     * Fingerprints an index range of the input.
+     */
+    private final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        private final List<Molecule> molecules;
+        private final PackedFingerprints target;
+        private final SubProgressObserver po;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param molecules Structures
+         * @param target Rows to fill
+         * @param po Observer to report progress to
+         * @param from First index, inclusive
+         * @param to Last index, exclusive
+         */
+        Task(List<Molecule> molecules, PackedFingerprints target, SubProgressObserver po, int from, int to) {
+            this.molecules = molecules;
+            this.target = target;
+            this.po = po;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > LEAF_SIZE) {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(
+                    new Task(this.molecules, this.target, this.po, this.from, mid),
+                    new Task(this.molecules, this.target, this.po, mid, this.to));
+                return;
+            }
+            if (this.po.isCancelled()) {
+                throw new CancellationException("Fingerprint generation cancelled");
+            }
+            final Worker w = workers.get();
+            for (int i = this.from; i < this.to; i++) {
+                this.target.setRow(i, w.fingerprint(this.molecules.get(i)));
+            }
+            // Observers are not expected to be thread safe
+            synchronized (this.po) {
+                this.po.worked(this.to - this.from);
+            }
+        }
+    }
+
+    /**
+     * Generator and standardizer instances confined to a single thread.
+     */
+    private static final class Worker {
+
+        private final CfpGenerator gen;
+        private final Optional<StandardizerWrapper> std;
+        private final UnguardedExtractor<BinaryVectorDescriptor, long []> ue;
+
+        /**
+         * Construct.
+         *
+         * @param spec Spec to use
+         */
+        Worker(FingerprintSpec spec) {
+            this.gen = spec.createGenerator();
+            this.std = spec.createStandardizer();
+            this.ue = this.gen.comparisonContextFactory()
+                .forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO).unguardedContext().unguardedExtractor();
+        }
+
+        /**
+         * Fingerprint a single structure.
+         *
+         * @param molecule Structure; a clone is standardized
+         * @return Fingerprint bits
+         */
+        long [] fingerprint(Molecule molecule) {
+            final Molecule mol = molecule.clone();
+            if (this.std.isPresent()) {
+                this.std.get().standardize(mol);
+            }
+            return this.ue.apply(this.gen.generateDescriptor(mol));
+        }
+    }
+}
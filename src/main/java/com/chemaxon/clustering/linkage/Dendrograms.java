@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.linkage;
+
+import com.chemaxon.clustering.common.HierarchicClustering;
+import com.chemaxon.clustering.common.IDBasedHierarchicClusterBuidler;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.util.Arrays;
+
+/**
+ * Builds dendrograms from the pairwise merges of agglomerative engines.
+ *
+ * Merges are given by one member structure of each merged part and the merge level; their order is arbitrary. They
+ * are applied in ascending level order (ties in given order) and the merged parts are looked up with union-find, so
+ * engines producing merges out of level order need no relabeling of their own.
+ *
+ * @author Gabor Imre
+ */
+public final class Dendrograms {
+
+    /**
+     * No instances.
+     */
+    private Dendrograms() {
+    }
+
+    /**
+     * Build the dendrogram.
+     *
+     * Each merge is a cluster with its two merged parts as children; merged singletons are immediate leaves. The
+     * representant of a cluster is its lowest structure index. Parts not merged with each other are separate roots; a
+     * structure never merged is a root cluster of level 0 with a single leaf. No structures give no roots.
+     *
+     * @param n Structure count
+     * @param from A member of the first merged part, by merge index
+     * @param to A member of the second merged part, by merge index
+     * @param level Merge levels, by merge index
+     * @return Dendrogram
+     */
+    public static IDBasedHierarchicClustering build(int n, int [] from, int [] to, double [] level) {
+        final int merges = level.length;
+
+        // process merges in ascending level order; ties in given order
+        final Integer [] order = new Integer[merges];
+        for (int e = 0; e < merges; e++) {
+            order[e] = e;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(level[a], level[b]));
+
+        // nodes 0 .. n - 1 are structures, n + m is the m-th merge
+        final int [] left = new int[merges];
+        final int [] right = new int[merges];
+        final int [] representant = new int[merges];
+        final int [] uf = new int[n];
+        final int [] nodeOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            uf[i] = i;
+            nodeOf[i] = i;
+        }
+        for (int m = 0; m < merges; m++) {
+            final int e = order[m];
+            final int a = find(uf, from[e]);
+            final int b = find(uf, to[e]);
+            left[m] = nodeOf[a];
+            right[m] = nodeOf[b];
+            representant[m] =
+                Math.min(representantOf(left[m], n, representant), representantOf(right[m], n, representant));
+            uf[b] = a;
+            nodeOf[a] = n + m;
+        }
+
+        final IDBasedHierarchicClusterBuidler b =
+            new IDBasedHierarchicClusterBuidler(HierarchicClustering.Alignment.LEAF_ALIGNED);
+        final int exit = -1;
+        final int [] stack = new int[2 * merges];
+        for (int i = 0; i < n; i++) {
+            if (find(uf, i) != i) {
+                continue;
+            }
+            b.newRootCluster();
+            if (nodeOf[i] < n) {
+                b.setLevel(0).setRepresentant(i).addImmediateLeaf(i);
+                continue;
+            }
+
+            // depth first traversal with an explicit stack; dendrograms can be very deep
+            // entries are merge indices to enter as a new child cluster, or EXIT to move back to the parent
+            int sp = 0;
+            stack[sp++] = nodeOf[i] - n;
+            boolean root = true;
+            while (sp > 0) {
+                final int m = stack[--sp];
+                if (m == exit) {
+                    b.parent();
+                    continue;
+                }
+                if (root) {
+                    root = false;
+                } else {
+                    b.newChildCluster();
+                    stack[sp++] = exit;
+                }
+                b.setLevel(level[order[m]]).setRepresentant(representant[m]);
+                for (int child : new int [] { left[m], right[m] }) {
+                    if (child < n) {
+                        b.addImmediateLeaf(child);
+                    } else {
+                        stack[sp++] = child - n;
+                    }
+                }
+            }
+        }
+        return b.build();
+    }
+
+    /**
+     * Representant of a dendrogram node.
+     *
+     * @param node Node index
+     * @param n Structure count
+     * @param representant Representants of the merges
+     * @return Representant structure index
+     */
+    private static int representantOf(int node, int n, int [] representant) {
+        return node < n ? node : representant[node - n];
+    }
+
+    /**
+     * Find the set of an element with path halving.
+     *
+     * @param uf Parent links
+     * @param i Element
+     * @return Set root
+     */
+    private static int find(int [] uf, int i) {
+        while (uf[i] != i) {
+            uf[i] = uf[uf[i]];
+            i = uf[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.linkage;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.common.DissimilarityInput;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Single linkage clustering through the minimum spanning tree of the implicit complete graph.
+ *
+ * The tree is grown by Prim's algorithm: in each step the closest structure outside the tree is added and the distances
+ * of the remaining structures to the tree are updated by their dissimilarity to the added one. Dissimilarities are
+ * requested from the input on the fly, so only linear memory is used; time is quadratic. The per step updates of large
+ * remaining sets are distributed over the pool.
+ *
+ * <p>Sorting the tree edges by weight and merging their endpoints gives the single linkage dendrogram; merge levels are
+ * the edge weights. On equal distances the structure with the lower index is added first.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class SingleLinkageMst {
+
+    /**
+     * Remaining structures updated by a single task.
+     */
+    private static final int UPDATE_BLOCK = 4096;
+
+    /**
+     * Structure count.
+     */
+    private final int size;
+
+    /**
+     * Tree edge endpoint inside the tree when added, by edge index.
+     */
+    private final int [] edgeFrom;
+
+    /**
+     * Tree edge endpoint added, by edge index.
+     */
+    private final int [] edgeTo;
+
+    /**
+     * Tree edge weights, by edge index.
+     */
+    private final double [] edgeWeight;
+
+    /**
+     * Calculate the minimum spanning tree.
+     *
+     * @param input Dissimilarities; invoked concurrently from the pool
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one structure added to the tree. Cancellation is checked in each step.
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public SingleLinkageMst(DissimilarityInput input, ForkJoinPool pool, SubProgressObserver po) {
+        this.size = input.size();
+        final int edges = Math.max(0, this.size - 1);
+        this.edgeFrom = new int[edges];
+        this.edgeTo = new int[edges];
+        this.edgeWeight = new double[edges];
+
+        // distance of each structure outside the tree to the tree and its closest tree member
+        final double [] dist = new double[this.size];
+        final int [] closest = new int[this.size];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        // structures outside the tree, compacted by swap removal
+        final int [] remaining = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            remaining[i] = i + 1;
+        }
+
+        try {
+            po.switchToDeterminate(this.size);
+            int count = edges;
+            int last = 0;
+            for (int e = 0; e < edges; e++) {
+                if (po.isCancelled()) {
+                    throw new CancellationException("Single linkage clustering cancelled");
+                }
+                final Update update = new Update(input, remaining, dist, closest, last, 0, count);
+                final int pos = count > UPDATE_BLOCK ? pool.invoke(update) : update.compute();
+                final int v = remaining[pos];
+                this.edgeFrom[e] = closest[v];
+                this.edgeTo[e] = v;
+                this.edgeWeight[e] = dist[v];
+                remaining[pos] = remaining[--count];
+                last = v;
+                po.worked(1);
+            }
+        } finally {
+            po.done();
+        }
+    }
+
+    /**
+     * Cluster structures.
+     *
+     * @param input Dissimilarities; invoked concurrently from the pool
+     * @param pool Pool to execute on
+     * @param po Observer to track progress
+     * @return Single linkage dendrogram
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public static IDBasedHierarchicClustering cluster(
+        DissimilarityInput input,
+        ForkJoinPool pool,
+        SubProgressObserver po
+    ) {
+        return new SingleLinkageMst(input, pool, po).toHierarchy();
+    }
+
+    /**
+     * Weight of the tree edges.
+     *
+     * @return Edge weights in ascending order; these are the merge levels of the dendrogram
+     */
+    public double [] getMergeLevels() {
+        final double [] ret = this.edgeWeight.clone();
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Build the dendrogram.
+     *
+     * Each merge is a cluster with its two merged parts as children; merged singletons are immediate leaves. The
+     * representant of a cluster is its lowest structure index.
+     *
+     * @return Single linkage dendrogram
+     */
+    public IDBasedHierarchicClustering toHierarchy() {
+        return Dendrograms.build(this.size, this.edgeFrom, this.edgeTo, this.edgeWeight);
+    }
+
+    /**
+     * Updates the distances of a range of remaining structures and finds the closest one.
+     */
+    private static final class Update extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 0L;
+
+        private final DissimilarityInput input;
+        private final int [] remaining;
+        private final double [] dist;
+        private final int [] closest;
+        private final int added;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param input Dissimilarities
+         * @param remaining Structures outside the tree
+         * @param dist Distances to the tree to update
+         * @param closest Closest tree members to update
+         * @param added Structure added to the tree in the previous step
+         * @param from First remaining position, inclusive
+         * @param to Last remaining position, exclusive
+         */
+        Update(
+            DissimilarityInput input,
+            int [] remaining,
+            double [] dist,
+            int [] closest,
+            int added,
+            int from,
+            int to
+        ) {
+            this.input = input;
+            this.remaining = remaining;
+            this.dist = dist;
+            this.closest = closest;
+            this.added = added;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (this.to - this.from > UPDATE_BLOCK) {
+                final int mid = (this.from + this.to) >>> 1;
+                final Update l =
+                    new Update(this.input, this.remaining, this.dist, this.closest, this.added, this.from, mid);
+                final Update r =
+                    new Update(this.input, this.remaining, this.dist, this.closest, this.added, mid, this.to);
+                r.fork();
+                final int lb = l.compute();
+                final int rb = r.join();
+                return better(lb, rb) ? lb : rb;
+            }
+            int best = this.from;
+            for (int p = this.from; p < this.to; p++) {
+                final int u = this.remaining[p];
+                final double d = this.input.dissimilarity(this.added, u);
+                if (d < this.dist[u]) {
+                    this.dist[u] = d;
+                    this.closest[u] = this.added;
+                }
+                if (better(p, best)) {
+                    best = p;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Compare two remaining positions.
+         *
+         * @param p First position
+         * @param q Second position
+         * @return {@code true} when the structure at {@code p} is closer, or equally close with a lower index
+         */
+        private boolean better(int p, int q) {
+            final int u = this.remaining[p];
+            final int v = this.remaining[q];
+            return this.dist[u] < this.dist[v] || (this.dist[u] == this.dist[v] && u < v);
+        }
+    }
+}
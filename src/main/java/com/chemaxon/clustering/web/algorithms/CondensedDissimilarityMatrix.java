@@ -0,0 +1,392 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.common.DissimilarityInput;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pairwise dissimilarities of a structure set stored as a condensed upper triangle of single precision values.
+ *
+ * Pair {@code (i, j)} with {@code i < j} is stored at position {@code i * n - i * (i + 1) / 2 + j - i - 1}, so a row
+ * is contiguous. Values are kept in chunks of at most 2<sup>28</sup> floats; chunks can be allocated on the heap, off
+ * the heap or mapped from a temporary file, see {@link Storage}. Single precision halves the footprint of a double
+ * matrix; the stored values differ from the exact Tanimoto dissimilarities by less than 10<sup>-7</sup>.
+ *
+ * <p>The matrix is filled by {@link #compute(PackedFingerprints, ForkJoinPool, SubProgressObserver)} in square tiles
+ * distributed over the pool. The rows of a tile fit into cache while its columns are compared against them.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class CondensedDissimilarityMatrix {
+
+    /**
+     * Rows and columns of a tile.
+     */
+    private static final int TILE = 256;
+
+    /**
+     * Log2 of the chunk length.
+     */
+    private static final int CHUNK_SHIFT = 28;
+
+    /**
+     * Max floats in a chunk.
+     */
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    /**
+     * Position mask within a chunk.
+     */
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Value storage options.
+     */
+    public enum Storage {
+        /**
+         * Float arrays on the heap.
+         */
+        HEAP,
+
+        /**
+         * Direct buffers outside the heap.
+         */
+        DIRECT,
+
+        /**
+         * Buffers mapped from a temporary file; paged by the operating system.
+         */
+        MAPPED
+    }
+
+    /**
+     * Structure count.
+     */
+    private final int size;
+
+    /**
+     * Stored pair count.
+     */
+    private final long pairs;
+
+    /**
+     * Storage of the values.
+     */
+    private final Storage storage;
+
+    /**
+     * Value chunks.
+     */
+    private final FloatBuffer [] chunks;
+
+    /**
+     * Allocate an uninitialized matrix.
+     *
+     * @param size Structure count
+     * @param storage Value storage
+     * @param directory Directory of the temporary file for {@link Storage#MAPPED}; ignored otherwise
+     * @throws IllegalStateException when the temporary file can not be mapped
+     */
+    public CondensedDissimilarityMatrix(int size, Storage storage, File directory) {
+        this.size = size;
+        this.pairs = pairCount(size);
+        this.storage = storage;
+        this.chunks = new FloatBuffer[(int) ((this.pairs + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+        if (storage == Storage.MAPPED) {
+            map(directory);
+            return;
+        }
+        for (int c = 0; c < this.chunks.length; c++) {
+            final int length = chunkLength(c);
+            this.chunks[c] = storage == Storage.HEAP
+                ? FloatBuffer.wrap(new float[length])
+                : ByteBuffer.allocateDirect(4 * length).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    }
+
+    /**
+     * Map the chunks from a new temporary file.
+     *
+     * The file is deleted right after mapping where the platform allows; the mapping stays valid until the buffers
+     * are collected.
+     *
+     * @param directory Directory of the file
+     */
+    private void map(File directory) {
+        try {
+            final File file = File.createTempFile("dissimilarity-matrix-", ".bin", directory);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(4 * this.pairs);
+                final FileChannel channel = raf.getChannel();
+                for (int c = 0; c < this.chunks.length; c++) {
+                    this.chunks[c] = channel
+                        .map(FileChannel.MapMode.READ_WRITE, 4 * (c * CHUNK_SIZE), 4L * chunkLength(c))
+                        .order(ByteOrder.nativeOrder())
+                        .asFloatBuffer();
+                }
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error mapping dissimilarity matrix file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Length of a chunk.
+     *
+     * @param c Chunk index
+     * @return Float count
+     */
+    private int chunkLength(int c) {
+        return (int) Math.min(CHUNK_SIZE, this.pairs - c * CHUNK_SIZE);
+    }
+
+    /**
+     * Number of stored pairs.
+     *
+     * @param size Structure count
+     * @return Pair count
+     */
+    public static long pairCount(int size) {
+        return (long) size * (size - 1) / 2;
+    }
+
+    /**
+     * Footprint of the values.
+     *
+     * @param size Structure count
+     * @return Size in bytes
+     */
+    public static long sizeInBytes(int size) {
+        return 4 * pairCount(size);
+    }
+
+    /**
+     * Structure count.
+     *
+     * @return Row count of the full matrix
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Value storage.
+     *
+     * @return Storage of the values
+     */
+    public Storage getStorage() {
+        return this.storage;
+    }
+
+    /**
+     * Footprint of the values.
+     *
+     * @return Size in bytes
+     */
+    public long sizeInBytes() {
+        return 4 * this.pairs;
+    }
+
+    /**
+     * Position of a pair.
+     *
+     * @param i Row, must be less than {@code j}
+     * @param j Column
+     * @return Position in the condensed storage
+     */
+    private long index(int i, int j) {
+        return (long) i * this.size - (long) i * (i + 1) / 2 + j - i - 1;
+    }
+
+    /**
+     * Stored dissimilarity of a pair.
+     *
+     * @param i First structure
+     * @param j Second structure
+     * @return Dissimilarity; 0 when {@code i == j}
+     */
+    public float get(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        final long k = i < j ? index(i, j) : index(j, i);
+        return this.chunks[(int) (k >>> CHUNK_SHIFT)].get((int) (k & CHUNK_MASK));
+    }
+
+    /**
+     * Overwrite the dissimilarity of a pair.
+     *
+     * Used by engines updating dissimilarities of their private copy; shared instances must not be modified.
+     *
+     * @param i First structure
+     * @param j Second structure, must differ from {@code i}
+     * @param value Dissimilarity to store
+     */
+    void set(int i, int j, float value) {
+        set(i < j ? index(i, j) : index(j, i), value);
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param k Position
+     * @param value Value to store
+     */
+    private void set(long k, float value) {
+        this.chunks[(int) (k >>> CHUNK_SHIFT)].put((int) (k & CHUNK_MASK), value);
+    }
+
+    /**
+     * Fill the matrix with Tanimoto dissimilarities.
+     *
+     * @param fingerprints Fingerprints; row count must match the matrix size
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one pair, reported once per tile. Cancellation is checked before each tile.
+     * @throws CancellationException when the observer reports cancellation
+     * @throws IllegalArgumentException when the fingerprint count does not match
+     */
+    public void compute(PackedFingerprints fingerprints, ForkJoinPool pool, SubProgressObserver po) {
+        if (fingerprints.size() != this.size) {
+            throw new IllegalArgumentException("Fingerprint count " + fingerprints.size() + " does not match matrix size "
+                + this.size);
+        }
+        try {
+            po.switchToDeterminate(this.pairs);
+            final int blocks = (this.size + TILE - 1) / TILE;
+            pool.invoke(new Fill(fingerprints, po, 0, blocks));
+        } finally {
+            po.done();
+        }
+    }
+
+    /**
+     * Copy the values into a new matrix.
+     *
+     * Meant for calculations which update dissimilarities of a shared matrix.
+     *
+     * @param copyStorage Storage of the copy
+     * @param directory Directory of the temporary file for {@link Storage#MAPPED}; ignored otherwise
+     * @return Copy
+     */
+    public CondensedDissimilarityMatrix copy(Storage copyStorage, File directory) {
+        final CondensedDissimilarityMatrix ret = new CondensedDissimilarityMatrix(this.size, copyStorage, directory);
+        for (int c = 0; c < this.chunks.length; c++) {
+            // duplicate to keep the position of the shared buffer untouched by concurrent copies
+            ret.chunks[c].put(this.chunks[c].duplicate());
+            ret.chunks[c].clear();
+        }
+        return ret;
+    }
+
+    /**
+     * View as clustering input.
+     *
+     * Note that engines copying their input into a matrix of their own, like the Lance-Williams implementation of the
+     * library, hold both matrices at their peak.
+     *
+     * @return Dissimilarities read from this matrix
+     */
+    public DissimilarityInput asDissimilarityInput() {
+        return new DissimilarityInput() {
+            @Override
+            public int size() {
+                return CondensedDissimilarityMatrix.this.size;
+            }
+
+            @Override
+            public double dissimilarity(int i, int j) {
+                return get(i, j);
+            }
+        };
+    }
+
+    /**
+     * Fills the tiles of a row block range.
+     */
+    private final class Fill extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        private final PackedFingerprints fingerprints;
+        private final SubProgressObserver po;
+        private final int fromBlock;
+        private final int toBlock;
+
+        /**
+         * Construct.
+         *
+         * @param fingerprints Fingerprints
+         * @param po Observer to report progress to
+         * @param fromBlock First row block, inclusive
+         * @param toBlock Last row block, exclusive
+         */
+        Fill(PackedFingerprints fingerprints, SubProgressObserver po, int fromBlock, int toBlock) {
+            this.fingerprints = fingerprints;
+            this.po = po;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.toBlock - this.fromBlock > 1) {
+                final int mid = (this.fromBlock + this.toBlock) >>> 1;
+                invokeAll(
+                    new Fill(this.fingerprints, this.po, this.fromBlock, mid),
+                    new Fill(this.fingerprints, this.po, mid, this.toBlock));
+                return;
+            }
+            final int iFrom = this.fromBlock * TILE;
+            final int iTo = Math.min(size, iFrom + TILE);
+            for (int jFrom = iFrom; jFrom < size; jFrom += TILE) {
+                if (this.po.isCancelled()) {
+                    throw new CancellationException("Dissimilarity matrix calculation cancelled");
+                }
+                final int jTo = Math.min(size, jFrom + TILE);
+                long count = 0;
+                for (int i = iFrom; i < iTo; i++) {
+                    final int jStart = Math.max(jFrom, i + 1);
+                    long k = index(i, jStart);
+                    for (int j = jStart; j < jTo; j++, k++) {
+                        set(k, (float) this.fingerprints.dissimilarity(i, this.fingerprints, j));
+                    }
+                    count += Math.max(0, jTo - jStart);
+                }
+                synchronized (this.po) {
+                    this.po.worked(count);
+                }
+            }
+        }
+    }
+}
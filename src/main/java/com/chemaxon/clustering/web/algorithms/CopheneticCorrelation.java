@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.common.DissimilarityInput;
+import com.chemaxon.clustering.web.hierarchy.LcaIndex;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Cophenetic correlation of a hierarchy: Pearson correlation of the input dissimilarities and the cophenetic distances
+ * over all structure pairs.
+ *
+ * Cophenetic distances are looked up in constant time from a {@link LcaIndex}, so the calculation is quadratic in the
+ * structure count; row ranges are distributed over the pool. Moments of row ranges are merged pairwise, which keeps
+ * the result accurate for billions of pairs. Pairs in different roots are skipped.
+ *
+ * @author Gabor Imre
+ */
+public final class CopheneticCorrelation {
+
+    /**
+     * Rows processed by a single task.
+     */
+    private static final int ROW_BLOCK = 64;
+
+    /**
+     * Correlation.
+     */
+    private final double correlation;
+
+    /**
+     * Pairs considered.
+     */
+    private final long pairs;
+
+    /**
+     * Calculate.
+     *
+     * @param input Dissimilarities; structure indices are the leaf IDs; invoked concurrently from the pool
+     * @param lca Index of the hierarchy
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one pair, reported once per row block. Cancellation is checked before each row block.
+     * @throws CancellationException when the observer reports cancellation
+     * @throws IllegalArgumentException when a structure is not a leaf of the hierarchy
+     */
+    public CopheneticCorrelation(DissimilarityInput input, LcaIndex lca, ForkJoinPool pool, SubProgressObserver po) {
+        final int n = input.size();
+        for (int i = 0; i < n; i++) {
+            lca.clusterOf(i);
+        }
+        final Moments m;
+        try {
+            po.switchToDeterminate((long) n * (n - 1) / 2);
+            m = pool.invoke(new Rows(input, lca, po, 0, n));
+        } finally {
+            po.done();
+        }
+        this.pairs = m.count;
+        this.correlation = m.cxy / Math.sqrt(m.m2x * m.m2y);
+    }
+
+    /**
+     * Correlation.
+     *
+     * @return Pearson correlation coefficient; {@link Double#NaN} when either side has no variance
+     */
+    public double getCorrelation() {
+        return this.correlation;
+    }
+
+    /**
+     * Number of pairs considered.
+     *
+     * @return Pair count
+     */
+    public long getPairs() {
+        return this.pairs;
+    }
+
+    /**
+     * Running moments of a sample of pairs.
+     */
+    private static final class Moments {
+        private long count;
+        private double meanX;
+        private double meanY;
+        private double m2x;
+        private double m2y;
+        private double cxy;
+
+        /**
+         * Add an observation.
+         *
+         * @param x Dissimilarity
+         * @param y Cophenetic distance
+         */
+        void add(double x, double y) {
+            this.count++;
+            final double dx = x - this.meanX;
+            this.meanX += dx / this.count;
+            final double dy = y - this.meanY;
+            this.meanY += dy / this.count;
+            this.m2x += dx * (x - this.meanX);
+            this.m2y += dy * (y - this.meanY);
+            this.cxy += dx * (y - this.meanY);
+        }
+
+        /**
+         * Merge the moments of a disjoint sample.
+         *
+         * @param o Moments to merge
+         * @return This instance
+         */
+        Moments merge(Moments o) {
+            if (o.count == 0) {
+                return this;
+            }
+            final long total = this.count + o.count;
+            final double dx = o.meanX - this.meanX;
+            final double dy = o.meanY - this.meanY;
+            final double f = (double) this.count * o.count / total;
+            this.m2x += o.m2x + dx * dx * f;
+            this.m2y += o.m2y + dy * dy * f;
+            this.cxy += o.cxy + dx * dy * f;
+            this.meanX += dx * o.count / total;
+            this.meanY += dy * o.count / total;
+            this.count = total;
+            return this;
+        }
+    }
+
+    /**
+     * Moments of the pairs of a row range with all later rows.
+     */
+    private static final class Rows extends RecursiveTask<Moments> {
+
+        private static final long serialVersionUID = 0L;
+
+        private final DissimilarityInput input;
+        private final LcaIndex lca;
+        private final SubProgressObserver po;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param input Dissimilarities
+         * @param lca Index of the hierarchy
+         * @param po Observer to report progress to
+         * @param from First row, inclusive
+         * @param to Last row, exclusive
+         */
+        Rows(DissimilarityInput input, LcaIndex lca, SubProgressObserver po, int from, int to) {
+            this.input = input;
+            this.lca = lca;
+            this.po = po;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Moments compute() {
+            if (this.to - this.from > ROW_BLOCK) {
+                final int mid = (this.from + this.to) >>> 1;
+                final Rows l = new Rows(this.input, this.lca, this.po, this.from, mid);
+                final Rows r = new Rows(this.input, this.lca, this.po, mid, this.to);
+                r.fork();
+                final Moments lm = l.compute();
+                return lm.merge(r.join());
+            }
+            if (this.po.isCancelled()) {
+                throw new CancellationException("Cophenetic correlation cancelled");
+            }
+            final Moments ret = new Moments();
+            final int n = this.input.size();
+            long work = 0;
+            for (int i = this.from; i < this.to; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    final double y = this.lca.cophenetic(i, j);
+                    if (!Double.isNaN(y)) {
+                        ret.add(this.input.dissimilarity(i, j), y);
+                    }
+                }
+                work += n - 1 - i;
+            }
+            synchronized (this.po) {
+                this.po.worked(work);
+            }
+            return ret;
+        }
+    }
+}
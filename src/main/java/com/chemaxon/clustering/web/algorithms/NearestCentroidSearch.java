@@ -0,0 +1,398 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Find the most similar centroid for query structures by Tanimoto similarity.
+ *
+ * Two exact search modes are available, see {@link Mode}. Both select the centroid with the lowest index on equal
+ * similarity. Query blocks are distributed over the pool.
+ *
+ * <p>Similarities are compared exactly as fractions of bit counts; no floating point rounding is involved. Distinct
+ * fractions of fingerprint bit counts differ by far more than the rounding error of double dissimilarities, so the
+ * order is the one of the library Tanimoto metric. Two empty fingerprints are considered identical.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class NearestCentroidSearch {
+
+    /**
+     * Query rows processed by a single task.
+     */
+    private static final int QUERY_BLOCK = 128;
+
+    /**
+     * Centroid rows compared against a query block at once.
+     */
+    private static final int CENTROID_BLOCK = 256;
+
+    /**
+     * Search modes.
+     */
+    public enum Mode {
+        /**
+         * Compare every query against every centroid.
+         *
+         * Queries and centroids are processed in blocks sized to keep a block of centroid rows in cache while a block
+         * of query rows is compared against it. Centroid blocks are visited in ascending order.
+         */
+        BRUTE_FORCE,
+
+        /**
+         * Skip centroids which can not be more similar than the best one found so far.
+         *
+         * Tanimoto similarity of fingerprints with bit counts {@code a} and {@code b} is at most
+         * {@code min(a, b) / max(a, b)}. Centroids are sorted by bit count; the search starts at the bit count of the
+         * query and proceeds outward, always on the side with the larger bound. A side is abandoned once its bound is
+         * below the best similarity; centroids with a bound equal to the best are still compared to resolve ties.
+         */
+        BIT_BOUND
+    }
+
+    /**
+     * Centroid fingerprints.
+     */
+    private final PackedFingerprints centroids;
+
+    /**
+     * Construct.
+     *
+     * @param centroids Centroid fingerprints; must not be empty
+     */
+    public NearestCentroidSearch(PackedFingerprints centroids) {
+        if (centroids.size() == 0) {
+            throw new IllegalArgumentException("No centroids specified");
+        }
+        this.centroids = centroids;
+    }
+
+    /**
+     * Find the nearest centroid for each query.
+     *
+     * @param molecules Fingerprints of the queries; must have the same row length as the centroids
+     * @param queries Row indices of the queries in {@code molecules}
+     * @param mode Search mode
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one query, reported once per query block.
+     * @return Search result
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public Result search(
+        PackedFingerprints molecules,
+        int [] queries,
+        Mode mode,
+        ForkJoinPool pool,
+        SubProgressObserver po
+    ) {
+        final int [] nearest = new int[queries.length];
+        final LongAdder comparisons = new LongAdder();
+        final Searcher searcher = mode == Mode.BIT_BOUND ? new BitBoundSearcher() : new BruteForceSearcher();
+        try {
+            po.switchToDeterminate(queries.length);
+            pool.invoke(new Task(searcher, molecules, queries, nearest, comparisons, po, 0, queries.length));
+        } finally {
+            po.done();
+        }
+        final long total = (long) queries.length * this.centroids.size();
+        return new Result(nearest, comparisons.sum(), total - comparisons.sum());
+    }
+
+    /**
+     * Compare two fractions.
+     *
+     * @param n1 Numerator of the first fraction
+     * @param d1 Positive denominator of the first fraction
+     * @param n2 Numerator of the second fraction
+     * @param d2 Positive denominator of the second fraction
+     * @return Negative, zero or positive as {@code n1 / d1} is less than, equal to or greater than {@code n2 / d2}
+     */
+    private static int compareFractions(int n1, int d1, int n2, int d2) {
+        return Long.compare((long) n1 * d2, (long) n2 * d1);
+    }
+
+    /**
+     * Search strategy for a block of queries.
+     */
+    private interface Searcher {
+
+        /**
+         * Search a block of queries.
+         *
+         * @param molecules Query fingerprints
+         * @param queries Query row indices
+         * @param nearest Result array to fill
+         * @param from First query position, inclusive
+         * @param to Last query position, exclusive
+         * @return Comparisons done
+         */
+        long search(PackedFingerprints molecules, int [] queries, int [] nearest, int from, int to);
+    }
+
+    /**
+     * Blocked exhaustive search.
+     */
+    private final class BruteForceSearcher implements Searcher {
+
+        @Override
+        public long search(PackedFingerprints molecules, int [] queries, int [] nearest, int from, int to) {
+            final int len = to - from;
+            // best similarity of each query so far as bestCommon / bestUnion
+            final int [] bestCommon = new int[len];
+            final int [] bestUnion = new int[len];
+            final int [] bestIndex = new int[len];
+            final int [] popcounts = new int[len];
+            for (int q = 0; q < len; q++) {
+                bestCommon[q] = -1;
+                bestUnion[q] = 1;
+                bestIndex[q] = -1;
+                popcounts[q] = molecules.popcount(queries[from + q]);
+            }
+
+            final int cn = centroids.size();
+            for (int cfrom = 0; cfrom < cn; cfrom += CENTROID_BLOCK) {
+                final int cto = Math.min(cn, cfrom + CENTROID_BLOCK);
+                for (int q = 0; q < len; q++) {
+                    final int row = queries[from + q];
+                    int bc = bestCommon[q];
+                    int bu = bestUnion[q];
+                    int bi = bestIndex[q];
+                    for (int c = cfrom; c < cto; c++) {
+                        int common = centroids.intersectionCount(c, molecules, row);
+                        int union = centroids.popcount(c) + popcounts[q] - common;
+                        if (union == 0) {
+                            // two empty fingerprints are identical
+                            common = 1;
+                            union = 1;
+                        }
+                        if (compareFractions(common, union, bc, bu) > 0) {
+                            bc = common;
+                            bu = union;
+                            bi = c;
+                        }
+                    }
+                    bestCommon[q] = bc;
+                    bestUnion[q] = bu;
+                    bestIndex[q] = bi;
+                }
+            }
+
+            System.arraycopy(bestIndex, 0, nearest, from, len);
+            return (long) len * cn;
+        }
+    }
+
+    /**
+     * Popcount bound pruned search.
+     */
+    private final class BitBoundSearcher implements Searcher {
+
+        /**
+         * Centroids sorted by bit count.
+         */
+        private final PopcountIndex index = new PopcountIndex(centroids);
+
+        @Override
+        public long search(PackedFingerprints molecules, int [] queries, int [] nearest, int from, int to) {
+            final PackedFingerprints sorted = this.index.sorted();
+            final int cn = sorted.size();
+            long comparisons = 0;
+            for (int q = from; q < to; q++) {
+                final int row = queries[q];
+                final int a = molecules.popcount(row);
+
+                // best similarity so far as bc / bu, bi is the original centroid index
+                int bc = -1;
+                int bu = 1;
+                int bi = -1;
+
+                int hi = this.index.firstAtLeast(a);
+                int lo = hi - 1;
+                while (true) {
+                    final boolean hiOpen = hi < cn && compareFractions(a, sorted.popcount(hi), bc, bu) >= 0;
+                    final boolean loOpen = lo >= 0 && compareFractions(sorted.popcount(lo), a, bc, bu) >= 0;
+                    if (!hiOpen && !loOpen) {
+                        break;
+                    }
+                    // Bound on the high side is a / b, on the low side b / a
+                    final int pos;
+                    if (hiOpen && (!loOpen || compareFractions(a, sorted.popcount(hi), sorted.popcount(lo), a) >= 0)) {
+                        pos = hi++;
+                    } else {
+                        pos = lo--;
+                    }
+
+                    int common = sorted.intersectionCount(pos, molecules, row);
+                    int union = sorted.popcount(pos) + a - common;
+                    if (union == 0) {
+                        // two empty fingerprints are identical
+                        common = 1;
+                        union = 1;
+                    }
+                    comparisons++;
+
+                    final int cmp = compareFractions(common, union, bc, bu);
+                    if (cmp > 0 || (cmp == 0 && this.index.row(pos) < bi)) {
+                        bc = common;
+                        bu = union;
+                        bi = this.index.row(pos);
+                    }
+                }
+                nearest[q] = bi;
+            }
+            return comparisons;
+        }
+    }
+
+    /**
+     * Searches a range of the queries.
+     */
+    private static final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        private final Searcher searcher;
+        private final PackedFingerprints molecules;
+        private final int [] queries;
+        private final int [] nearest;
+        private final LongAdder comparisons;
+        private final SubProgressObserver po;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param searcher Search strategy
+         * @param molecules Query fingerprints
+         * @param queries Query row indices
+         * @param nearest Result array to fill
+         * @param comparisons Comparison count to update
+         * @param po Observer to report progress to
+         * @param from First query position, inclusive
+         * @param to Last query position, exclusive
+         */
+        Task(
+            Searcher searcher,
+            PackedFingerprints molecules,
+            int [] queries,
+            int [] nearest,
+            LongAdder comparisons,
+            SubProgressObserver po,
+            int from,
+            int to
+        ) {
+            this.searcher = searcher;
+            this.molecules = molecules;
+            this.queries = queries;
+            this.nearest = nearest;
+            this.comparisons = comparisons;
+            this.po = po;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > QUERY_BLOCK) {
+                final int mid = this.from + Math.max(1, (this.to - this.from) / QUERY_BLOCK / 2) * QUERY_BLOCK;
+                invokeAll(
+                    new Task(this.searcher, this.molecules, this.queries, this.nearest, this.comparisons, this.po,
+                        this.from, mid),
+                    new Task(this.searcher, this.molecules, this.queries, this.nearest, this.comparisons, this.po,
+                        mid, this.to));
+                return;
+            }
+            if (this.po.isCancelled()) {
+                throw new CancellationException("Nearest centroid search cancelled");
+            }
+            this.comparisons.add(this.searcher.search(this.molecules, this.queries, this.nearest, this.from, this.to));
+            synchronized (this.po) {
+                this.po.worked(this.to - this.from);
+            }
+        }
+    }
+
+    /**
+     * Result of a search.
+     */
+    public static final class Result {
+
+        /**
+         * Nearest centroid index for each query.
+         */
+        private final int [] nearest;
+
+        /**
+         * Fingerprint comparisons done.
+         */
+        private final long comparisons;
+
+        /**
+         * Fingerprint comparisons skipped.
+         */
+        private final long pruned;
+
+        /**
+         * Construct.
+         *
+         * @param nearest Nearest centroid index for each query
+         * @param comparisons Fingerprint comparisons done
+         * @param pruned Fingerprint comparisons skipped
+         */
+        Result(int [] nearest, long comparisons, long pruned) {
+            this.nearest = nearest;
+            this.comparisons = comparisons;
+            this.pruned = pruned;
+        }
+
+        /**
+         * Nearest centroid of a query.
+         *
+         * @param query Query position in the searched query array
+         * @return Index of the most similar centroid
+         */
+        public int nearest(int query) {
+            return this.nearest[query];
+        }
+
+        /**
+         * Number of fingerprint comparisons done.
+         *
+         * @return Comparison count
+         */
+        public long getComparisons() {
+            return this.comparisons;
+        }
+
+        /**
+         * Number of fingerprint comparisons skipped by bounds.
+         *
+         * @return Pruned comparison count; zero for {@link Mode#BRUTE_FORCE}
+         */
+        public long getPruned() {
+            return this.pruned;
+        }
+    }
+}
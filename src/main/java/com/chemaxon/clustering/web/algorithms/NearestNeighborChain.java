@@ -0,0 +1,399 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import com.chemaxon.clustering.linkage.Dendrograms;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Agglomerative clustering of reducible linkages with the nearest neighbor chain algorithm.
+ *
+ * A chain of nearest neighbors is grown from an arbitrary cluster until its last two members are reciprocal nearest
+ * neighbors; these are merged and the chain is continued from its remaining part. For reducible linkages the merges
+ * found this way are exactly the merges of the classic closest pair algorithm, but each cluster is scanned only a
+ * constant number of times on average: time is quadratic with a small constant instead of cubic.
+ *
+ * <p>Dissimilarities of the merged cluster are calculated by the Lance-Williams formula of the linkage and written back
+ * into the given condensed matrix, which is therefore overwritten; no additional quadratic memory is used. The merged
+ * cluster keeps the lower slot index. Neighbor scans and updates of large active sets are distributed over the
+ * pool.</p>
+ *
+ * <p>Merges are found out of level order; the dendrogram is built by sorting them. On equal distances the previous
+ * chain member is preferred, then the lower index, so the chain is strictly descending and always terminates.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class NearestNeighborChain {
+
+    /**
+     * Active clusters scanned or updated by a single task.
+     */
+    private static final int BLOCK = 4096;
+
+    /**
+     * Supported reducible linkages.
+     */
+    public enum Linkage {
+        /**
+         * Minimum of the merged dissimilarities.
+         */
+        SINGLE {
+            @Override
+            double update(double dki, double dkj, double dij, int ni, int nj, int nk) {
+                return Math.min(dki, dkj);
+            }
+        },
+        /**
+         * Maximum of the merged dissimilarities.
+         */
+        COMPLETE {
+            @Override
+            double update(double dki, double dkj, double dij, int ni, int nj, int nk) {
+                return Math.max(dki, dkj);
+            }
+        },
+        /**
+         * Size weighted average of the merged dissimilarities (UPGMA).
+         */
+        AVERAGE {
+            @Override
+            double update(double dki, double dkj, double dij, int ni, int nj, int nk) {
+                return (ni * dki + nj * dkj) / (ni + nj);
+            }
+        },
+        /**
+         * Ward's minimum variance update.
+         */
+        WARD {
+            @Override
+            double update(double dki, double dkj, double dij, int ni, int nj, int nk) {
+                return ((double) (ni + nk) * dki + (double) (nj + nk) * dkj - (double) nk * dij) / (ni + nj + nk);
+            }
+        };
+
+        /**
+         * Lance-Williams update.
+         *
+         * @param dki Dissimilarity of cluster k and merged cluster i
+         * @param dkj Dissimilarity of cluster k and merged cluster j
+         * @param dij Dissimilarity of the merged clusters
+         * @param ni Size of cluster i
+         * @param nj Size of cluster j
+         * @param nk Size of cluster k
+         * @return Dissimilarity of cluster k and the union of i and j
+         */
+        abstract double update(double dki, double dkj, double dij, int ni, int nj, int nk);
+    }
+
+    /**
+     * Structure count.
+     */
+    private final int size;
+
+    /**
+     * A member of the first merged cluster, by merge index.
+     */
+    private final int [] mergeFrom;
+
+    /**
+     * A member of the second merged cluster, by merge index.
+     */
+    private final int [] mergeTo;
+
+    /**
+     * Merge levels, by merge index.
+     */
+    private final double [] mergeLevel;
+
+    /**
+     * Calculate the merges.
+     *
+     * @param matrix Dissimilarities; overwritten by the calculation
+     * @param linkage Linkage to use
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one merge. Cancellation is checked in each chain step.
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public NearestNeighborChain(
+        CondensedDissimilarityMatrix matrix,
+        Linkage linkage,
+        ForkJoinPool pool,
+        SubProgressObserver po
+    ) {
+        this.size = matrix.size();
+        final int merges = Math.max(0, this.size - 1);
+        this.mergeFrom = new int[merges];
+        this.mergeTo = new int[merges];
+        this.mergeLevel = new double[merges];
+
+        // cluster sizes by slot
+        final int [] members = new int[this.size];
+        Arrays.fill(members, 1);
+        // active slots, compacted by swap removal, and their positions
+        final int [] active = new int[this.size];
+        final int [] position = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            active[i] = i;
+            position[i] = i;
+        }
+        final int [] chain = new int[this.size];
+
+        try {
+            po.switchToDeterminate(merges);
+            int count = this.size;
+            int length = 0;
+            int m = 0;
+            while (m < merges) {
+                if (po.isCancelled()) {
+                    throw new CancellationException("Nearest neighbor chain clustering cancelled");
+                }
+                if (length == 0) {
+                    chain[length++] = active[0];
+                }
+                final int a = chain[length - 1];
+                final int prev = length > 1 ? chain[length - 2] : -1;
+                final Scan scan = new Scan(matrix, active, a, 0, count);
+                int c = active[count > BLOCK ? pool.invoke(scan) : scan.compute()];
+                if (prev >= 0 && matrix.get(a, prev) <= matrix.get(a, c)) {
+                    c = prev;
+                }
+                if (c != prev) {
+                    chain[length++] = c;
+                    continue;
+                }
+
+                // reciprocal nearest neighbors
+                length -= 2;
+                final int keep = Math.min(a, c);
+                final int drop = Math.max(a, c);
+                this.mergeFrom[m] = keep;
+                this.mergeTo[m] = drop;
+                this.mergeLevel[m] = matrix.get(keep, drop);
+                final Update update = new Update(matrix, linkage, members, active, keep, drop, 0, count);
+                if (count > BLOCK) {
+                    pool.invoke(update);
+                } else {
+                    update.compute();
+                }
+                members[keep] += members[drop];
+                final int p = position[drop];
+                final int last = active[--count];
+                active[p] = last;
+                position[last] = p;
+                m++;
+                po.worked(1);
+            }
+        } finally {
+            po.done();
+        }
+    }
+
+    /**
+     * Cluster structures.
+     *
+     * @param matrix Dissimilarities; overwritten by the calculation
+     * @param linkage Linkage to use
+     * @param pool Pool to execute on
+     * @param po Observer to track progress
+     * @return Dendrogram
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public static IDBasedHierarchicClustering cluster(
+        CondensedDissimilarityMatrix matrix,
+        Linkage linkage,
+        ForkJoinPool pool,
+        SubProgressObserver po
+    ) {
+        return new NearestNeighborChain(matrix, linkage, pool, po).toHierarchy();
+    }
+
+    /**
+     * Levels of the merges.
+     *
+     * @return Merge levels in ascending order
+     */
+    public double [] getMergeLevels() {
+        final double [] ret = this.mergeLevel.clone();
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Build the dendrogram.
+     *
+     * Each merge is a cluster with its two merged parts as children; merged singletons are immediate leaves. The
+     * representant of a cluster is its lowest structure index.
+     *
+     * @return Dendrogram
+     */
+    public IDBasedHierarchicClustering toHierarchy() {
+        return Dendrograms.build(this.size, this.mergeFrom, this.mergeTo, this.mergeLevel);
+    }
+
+    /**
+     * Finds the nearest active cluster of a cluster in a range of active positions.
+     */
+    private static final class Scan extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 0L;
+
+        private final CondensedDissimilarityMatrix matrix;
+        private final int [] active;
+        private final int query;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param matrix Current dissimilarities
+         * @param active Active slots
+         * @param query Slot to find the nearest neighbor of
+         * @param from First active position, inclusive
+         * @param to Last active position, exclusive
+         */
+        Scan(CondensedDissimilarityMatrix matrix, int [] active, int query, int from, int to) {
+            this.matrix = matrix;
+            this.active = active;
+            this.query = query;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (this.to - this.from > BLOCK) {
+                final int mid = (this.from + this.to) >>> 1;
+                final Scan l = new Scan(this.matrix, this.active, this.query, this.from, mid);
+                final Scan r = new Scan(this.matrix, this.active, this.query, mid, this.to);
+                r.fork();
+                final int lb = l.compute();
+                final int rb = r.join();
+                return better(lb, rb) ? lb : rb;
+            }
+            int best = -1;
+            for (int p = this.from; p < this.to; p++) {
+                if (this.active[p] != this.query && better(p, best)) {
+                    best = p;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Compare two active positions.
+         *
+         * @param p First position, or -1 when none
+         * @param q Second position, or -1 when none
+         * @return {@code true} when the slot at {@code p} is closer to the query, or equally close with a lower index
+         */
+        private boolean better(int p, int q) {
+            if (p < 0) {
+                return false;
+            }
+            if (q < 0) {
+                return true;
+            }
+            final int u = this.active[p];
+            final int v = this.active[q];
+            final float du = this.matrix.get(this.query, u);
+            final float dv = this.matrix.get(this.query, v);
+            return du < dv || (du == dv && u < v);
+        }
+    }
+
+    /**
+     * Updates the dissimilarities of a range of active clusters to a merged cluster.
+     */
+    private static final class Update extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        private final CondensedDissimilarityMatrix matrix;
+        private final Linkage linkage;
+        private final int [] members;
+        private final int [] active;
+        private final int keep;
+        private final int drop;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param matrix Dissimilarities to update
+         * @param linkage Linkage to use
+         * @param members Cluster sizes before the merge
+         * @param active Active slots
+         * @param keep Merged slot which holds the union
+         * @param drop Merged slot which is removed
+         * @param from First active position, inclusive
+         * @param to Last active position, exclusive
+         */
+        Update(
+            CondensedDissimilarityMatrix matrix,
+            Linkage linkage,
+            int [] members,
+            int [] active,
+            int keep,
+            int drop,
+            int from,
+            int to
+        ) {
+            this.matrix = matrix;
+            this.linkage = linkage;
+            this.members = members;
+            this.active = active;
+            this.keep = keep;
+            this.drop = drop;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > BLOCK) {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(
+                    new Update(this.matrix, this.linkage, this.members, this.active, this.keep, this.drop, this.from,
+                        mid),
+                    new Update(this.matrix, this.linkage, this.members, this.active, this.keep, this.drop, mid,
+                        this.to));
+                return;
+            }
+            final double dij = this.matrix.get(this.keep, this.drop);
+            final int ni = this.members[this.keep];
+            final int nj = this.members[this.drop];
+            for (int p = this.from; p < this.to; p++) {
+                final int k = this.active[p];
+                if (k == this.keep || k == this.drop) {
+                    continue;
+                }
+                final double d = this.linkage.update(
+                    this.matrix.get(k, this.keep), this.matrix.get(k, this.drop), dij, ni, nj, this.members[k]);
+                this.matrix.set(k, this.keep, (float) d);
+            }
+        }
+    }
+}
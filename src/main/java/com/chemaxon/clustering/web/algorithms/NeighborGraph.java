@@ -0,0 +1,361 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pairs of fingerprints closer than a radius.
+ *
+ * For each row the later rows within the radius are stored along with their Tanimoto dissimilarities. Once built, greedy
+ * sphere exclusion at any radius not larger than the graph radius is evaluated from the stored pairs without comparing
+ * fingerprints again; this makes repeated evaluation during an adaptive radius search cheap.
+ *
+ * @author Gabor Imre
+ */
+public final class NeighborGraph {
+
+    /**
+     * Rows processed by a single build task.
+     */
+    private static final int BUILD_BLOCK = 64;
+
+    /**
+     * Shared empty neighbor list.
+     */
+    private static final int [] NO_NEIGHBORS = new int[0];
+
+    /**
+     * Shared empty dissimilarity list.
+     */
+    private static final double [] NO_DISSIMILARITIES = new double[0];
+
+    /**
+     * Radius the graph was built with.
+     */
+    private final double radius;
+
+    /**
+     * Later neighbors of each row, in bit count order.
+     */
+    private final int [][] neighbors;
+
+    /**
+     * Dissimilarities to the neighbors of each row.
+     */
+    private final double [][] dissimilarities;
+
+    /**
+     * Total number of stored pairs.
+     */
+    private final long edgeCount;
+
+    /**
+     * Build.
+     *
+     * @param fingerprints Fingerprints
+     * @param radius Tanimoto dissimilarity radius; pairs with dissimilarity strictly less are stored
+     * @param maxEdges Max number of pairs to store
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one row, reported once per row block.
+     * @throws IllegalArgumentException when the number of pairs exceeds {@code maxEdges}
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public NeighborGraph(
+        PackedFingerprints fingerprints,
+        double radius,
+        long maxEdges,
+        ForkJoinPool pool,
+        SubProgressObserver po
+    ) {
+        final int n = fingerprints.size();
+        this.radius = radius;
+        this.neighbors = new int[n][];
+        this.dissimilarities = new double[n][];
+        final AtomicLong edges = new AtomicLong();
+        try {
+            po.switchToDeterminate(n);
+            pool.invoke(new Build(new PopcountIndex(fingerprints), edges, maxEdges, po, 0, n));
+        } finally {
+            po.done();
+        }
+        this.edgeCount = edges.get();
+    }
+
+    /**
+     * Radius the graph was built with.
+     *
+     * @return Max usable radius
+     */
+    public double getRadius() {
+        return this.radius;
+    }
+
+    /**
+     * Number of stored pairs.
+     *
+     * @return Pair count
+     */
+    public long getEdgeCount() {
+        return this.edgeCount;
+    }
+
+    /**
+     * Greedy sphere exclusion.
+     *
+     * Rows are visited in ascending order; a row not yet excluded becomes a centroid and excludes every later row closer
+     * than the radius. Result is identical to {@link SphereExclusionFilter} with the same radius.
+     *
+     * @param r Tanimoto dissimilarity radius; must not be larger than the graph radius
+     * @return Centroid row indices, ascending
+     */
+    public int [] greedyCentroids(double r) {
+        if (r > this.radius) {
+            throw new IllegalArgumentException("Radius " + r + " is larger than the graph radius " + this.radius);
+        }
+        final int n = this.neighbors.length;
+        final boolean [] excluded = new boolean[n];
+        final int [] centroids = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (excluded[i]) {
+                continue;
+            }
+            centroids[count++] = i;
+            final int [] nb = this.neighbors[i];
+            final double [] ds = this.dissimilarities[i];
+            for (int k = 0; k < nb.length; k++) {
+                if (ds[k] < r) {
+                    excluded[nb[k]] = true;
+                }
+            }
+        }
+        return Arrays.copyOf(centroids, count);
+    }
+
+    /**
+     * Find a radius where greedy sphere exclusion yields a centroid count in the specified range.
+     *
+     * Bisection on the radius in range {@code [0, graph radius]}. When no radius is found in the iteration limit the
+     * evaluated radius with the centroid count closest to the range is returned.
+     *
+     * @param minCount Min centroid count, inclusive
+     * @param maxCount Max centroid count, inclusive
+     * @param maxIterations Max number of radius evaluations
+     * @return Search result
+     */
+    public RadiusSearch searchRadius(int minCount, int maxCount, int maxIterations) {
+        if (minCount <= 0 || maxCount < minCount || maxIterations <= 0) {
+            throw new IllegalArgumentException("Invalid centroid count range [" + minCount + ", " + maxCount + "]");
+        }
+        double lo = 0;
+        double hi = this.radius;
+        double r = hi;
+        RadiusSearch best = null;
+        int iterations = 0;
+        while (iterations < maxIterations) {
+            iterations++;
+            final int [] centroids = greedyCentroids(r);
+            final RadiusSearch current = new RadiusSearch(r, centroids, iterations);
+            if (best == null || distance(current, minCount, maxCount) < distance(best, minCount, maxCount)) {
+                best = current;
+            }
+            if (centroids.length > maxCount) {
+                if (r == this.radius) {
+                    // can not increase radius further
+                    break;
+                }
+                lo = r;
+            } else if (centroids.length < minCount) {
+                hi = r;
+            } else {
+                break;
+            }
+            r = (lo + hi) / 2;
+        }
+        return new RadiusSearch(best.radius, best.centroids, iterations);
+    }
+
+    /**
+     * Distance of a centroid count from a range.
+     *
+     * @param s Result to check
+     * @param minCount Min count
+     * @param maxCount Max count
+     * @return Zero when in range
+     */
+    private static int distance(RadiusSearch s, int minCount, int maxCount) {
+        final int c = s.centroids.length;
+        return c < minCount ? minCount - c : Math.max(0, c - maxCount);
+    }
+
+    /**
+     * Builds the neighbor lists of a row range.
+     */
+    private final class Build extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        private final PopcountIndex index;
+        private final AtomicLong edges;
+        private final long maxEdges;
+        private final SubProgressObserver po;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param index Sorted fingerprints
+         * @param edges Total pair count to update
+         * @param maxEdges Max total pair count
+         * @param po Observer to report progress to
+         * @param from First row, inclusive
+         * @param to Last row, exclusive
+         */
+        Build(PopcountIndex index, AtomicLong edges, long maxEdges, SubProgressObserver po, int from, int to) {
+            this.index = index;
+            this.edges = edges;
+            this.maxEdges = maxEdges;
+            this.po = po;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > BUILD_BLOCK) {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(
+                    new Build(this.index, this.edges, this.maxEdges, this.po, this.from, mid),
+                    new Build(this.index, this.edges, this.maxEdges, this.po, mid, this.to));
+                return;
+            }
+            if (this.po.isCancelled()) {
+                throw new CancellationException("Neighbor graph building cancelled");
+            }
+
+            final PackedFingerprints fp = this.index.fingerprints();
+            final PackedFingerprints sorted = this.index.sorted();
+            int [] nb = new int[16];
+            double [] ds = new double[16];
+            for (int i = this.from; i < this.to; i++) {
+                final int a = fp.popcount(i);
+                final int wto = this.index.windowTo(a, radius);
+                int count = 0;
+                for (int pos = this.index.windowFrom(a, radius); pos < wto; pos++) {
+                    final int j = this.index.row(pos);
+                    if (j <= i) {
+                        continue;
+                    }
+                    final double d = fp.dissimilarity(i, sorted, pos);
+                    if (d < radius) {
+                        if (count == nb.length) {
+                            nb = Arrays.copyOf(nb, 2 * count);
+                            ds = Arrays.copyOf(ds, 2 * count);
+                        }
+                        nb[count] = j;
+                        ds[count] = d;
+                        count++;
+                    }
+                }
+                if (count == 0) {
+                    neighbors[i] = NO_NEIGHBORS;
+                    dissimilarities[i] = NO_DISSIMILARITIES;
+                    continue;
+                }
+                if (this.edges.addAndGet(count) > this.maxEdges) {
+                    throw new IllegalArgumentException("Neighbor graph exceeds " + this.maxEdges
+                        + " pairs at radius " + radius + "; use a smaller max radius");
+                }
+                neighbors[i] = Arrays.copyOf(nb, count);
+                dissimilarities[i] = Arrays.copyOf(ds, count);
+            }
+            synchronized (this.po) {
+                this.po.worked(this.to - this.from);
+            }
+        }
+    }
+
+    /**
+     * Result of an adaptive radius search.
+     */
+    public static final class RadiusSearch {
+
+        /**
+         * Selected radius.
+         */
+        private final double radius;
+
+        /**
+         * Centroids at the selected radius.
+         */
+        private final int [] centroids;
+
+        /**
+         * Radius evaluations done.
+         */
+        private final int iterations;
+
+        /**
+         * Construct.
+         *
+         * @param radius Selected radius
+         * @param centroids Centroids at the selected radius
+         * @param iterations Radius evaluations done
+         */
+        RadiusSearch(double radius, int [] centroids, int iterations) {
+            this.radius = radius;
+            this.centroids = centroids;
+            this.iterations = iterations;
+        }
+
+        /**
+         * Selected radius.
+         *
+         * @return Tanimoto dissimilarity radius
+         */
+        public double getRadius() {
+            return this.radius;
+        }
+
+        /**
+         * Centroids at the selected radius.
+         *
+         * @return Centroid row indices, ascending; must not be modified
+         */
+        public int [] getCentroids() {
+            return this.centroids;
+        }
+
+        /**
+         * Radius evaluations done.
+         *
+         * @return Iteration count
+         */
+        public int getIterations() {
+            return this.iterations;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+
+/**
+ * Fingerprints sorted by bit count for Tanimoto radius searches.
+ *
+ * Tanimoto similarity of fingerprints with bit counts {@code a} and {@code b} is at most {@code min(a, b) / max(a, b)},
+ * so the rows possibly within a radius of a query form a contiguous range of the sorted order.
+ *
+ * @author Gabor Imre
+ */
+final class PopcountIndex {
+
+    /**
+     * Indexed fingerprints.
+     */
+    private final PackedFingerprints fingerprints;
+
+    /**
+     * Row index of each sorted position.
+     */
+    private final int [] order;
+
+    /**
+     * Fingerprints sorted by bit count.
+     */
+    private final PackedFingerprints sorted;
+
+    /**
+     * First sorted position of each bit count; has an extra trailing element.
+     */
+    private final int [] start;
+
+    /**
+     * Construct; sort rows by bit count.
+     *
+     * @param fingerprints Fingerprints to index
+     */
+    PopcountIndex(PackedFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+
+        // Counting sort by bit count; stable, so equal bit counts remain in index order
+        final int n = fingerprints.size();
+        this.start = new int[fingerprints.words() * 64 + 2];
+        for (int i = 0; i < n; i++) {
+            this.start[fingerprints.popcount(i) + 1]++;
+        }
+        for (int i = 1; i < this.start.length; i++) {
+            this.start[i] += this.start[i - 1];
+        }
+        final int [] next = this.start.clone();
+        this.order = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.order[next[fingerprints.popcount(i)]++] = i;
+        }
+        this.sorted = fingerprints.select(this.order);
+    }
+
+    /**
+     * Indexed fingerprints.
+     *
+     * @return Fingerprints in original order
+     */
+    PackedFingerprints fingerprints() {
+        return this.fingerprints;
+    }
+
+    /**
+     * Sorted fingerprints.
+     *
+     * @return Fingerprints; row {@code pos} is the original row {@link #row(int)}
+     */
+    PackedFingerprints sorted() {
+        return this.sorted;
+    }
+
+    /**
+     * Original row of a sorted position.
+     *
+     * @param pos Sorted position
+     * @return Row index in {@link #fingerprints()}
+     */
+    int row(int pos) {
+        return this.order[pos];
+    }
+
+    /**
+     * First sorted position with at least the given bit count.
+     *
+     * @param popcount Bit count
+     * @return First position with a bit count not less than {@code popcount}; row count when no such position exists
+     */
+    int firstAtLeast(int popcount) {
+        return this.start[Math.max(0, Math.min(popcount, this.start.length - 1))];
+    }
+
+    /**
+     * First sorted position of the candidates within a radius.
+     *
+     * @param popcount Bit count of the query
+     * @param radius Tanimoto dissimilarity radius
+     * @return First position, inclusive
+     */
+    int windowFrom(int popcount, double radius) {
+        final double threshold = 1.0 - radius;
+        if (threshold <= 0) {
+            return 0;
+        }
+        // Widened by one to stay on the safe side of rounding
+        return this.start[Math.max(0, (int) Math.floor(popcount * threshold) - 1)];
+    }
+
+    /**
+     * Last sorted position of the candidates within a radius.
+     *
+     * @param popcount Bit count of the query
+     * @param radius Tanimoto dissimilarity radius
+     * @return Last position, exclusive
+     */
+    int windowTo(int popcount, double radius) {
+        final int maxBits = this.start.length - 2;
+        final double threshold = 1.0 - radius;
+        if (threshold <= 0) {
+            return this.start[maxBits + 1];
+        }
+        // Widened by one to stay on the safe side of rounding
+        return this.start[(int) Math.min(maxBits, Math.ceil(popcount / threshold) + 1) + 1];
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.common.HierarchicClustering;
+import com.chemaxon.clustering.common.IDBasedAssigner;
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClusterBuidler;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Second stage of two-stage hierarchic clustering: grafts assigned structures under their representatives.
+ *
+ * The first stage clusters a set of representatives only; every other structure is assigned to a representative. In
+ * the grafted dendrogram each representative leaf with assigned members is replaced by a cluster holding the
+ * representative and its members as immediate leaves. The level of this cluster is the largest dissimilarity of a
+ * member to the representative, which is below the smallest representative merge level when representatives are
+ * separated by at least the assignment radius.
+ *
+ * @author Gabor Imre
+ */
+public final class RepresentativeGrafting {
+
+    /**
+     * Stack entry marking the exit from a cluster.
+     */
+    private static final Object EXIT = new Object();
+
+    /**
+     * No instances.
+     */
+    private RepresentativeGrafting() {
+    }
+
+    /**
+     * Graft structures under their representatives.
+     *
+     * @param representatives Dendrogram of the representatives; leaf IDs are representative indices. Ignored when
+     * there is a single representative, can be {@code null} then.
+     * @param reps Structure index of each representative
+     * @param assignment Representative index of each structure; representatives are assigned to themselves
+     * @param dissimilarity Dissimilarity of each structure to its representative
+     * @return Dendrogram of all the structures
+     */
+    public static IDBasedHierarchicClustering graft(
+        IDBasedHierarchicClustering representatives,
+        int [] reps,
+        int [] assignment,
+        double [] dissimilarity
+    ) {
+        if (reps.length == 0) {
+            throw new IllegalArgumentException("No representatives specified");
+        }
+
+        // members of each representative, representatives excluded; levels of the grafted clusters
+        final int [] counts = new int[reps.length];
+        final double [] levels = new double[reps.length];
+        for (int i = 0; i < assignment.length; i++) {
+            final int r = assignment[i];
+            if (reps[r] != i) {
+                counts[r]++;
+                levels[r] = Math.max(levels[r], dissimilarity[i]);
+            }
+        }
+        final int [][] members = new int[reps.length][];
+        for (int r = 0; r < reps.length; r++) {
+            members[r] = new int[counts[r]];
+            counts[r] = 0;
+        }
+        for (int i = 0; i < assignment.length; i++) {
+            final int r = assignment[i];
+            if (reps[r] != i) {
+                members[r][counts[r]++] = i;
+            }
+        }
+
+        final IDBasedHierarchicClusterBuidler b =
+            new IDBasedHierarchicClusterBuidler(HierarchicClustering.Alignment.LEAF_ALIGNED);
+        if (reps.length == 1) {
+            return b.newRootCluster()
+                .setLevel(levels[0])
+                .setRepresentant(reps[0])
+                .addImmediateLeaf(reps[0])
+                .addImmediateLeaves(members[0])
+                .build();
+        }
+
+        // depth first traversal of each root with an explicit stack
+        final IDBasedAssigner assigner = representatives.getPreferredAssigner();
+        final Deque<Object> stack = new ArrayDeque<>();
+        for (IDBasedHierarchicCluster root : representatives.roots()) {
+            b.newRootCluster();
+            enter(b, assigner, root, reps, members, levels, stack);
+            while (!stack.isEmpty()) {
+                final Object e = stack.pop();
+                if (e == EXIT) {
+                    b.parent();
+                } else {
+                    b.newChildCluster();
+                    stack.push(EXIT);
+                    enter(b, assigner, (IDBasedHierarchicCluster) e, reps, members, levels, stack);
+                }
+            }
+        }
+        return b.build();
+    }
+
+    /**
+     * Fill the current cluster of the builder from a representative cluster.
+     *
+     * @param b Builder positioned on the new cluster
+     * @param assigner Level assigner of the representative dendrogram
+     * @param c Representative cluster
+     * @param reps Structure index of each representative
+     * @param members Assigned members of each representative
+     * @param levels Grafted cluster level of each representative
+     * @param stack Traversal stack to push the child clusters to
+     */
+    private static void enter(
+        IDBasedHierarchicClusterBuidler b,
+        IDBasedAssigner assigner,
+        IDBasedHierarchicCluster c,
+        int [] reps,
+        int [][] members,
+        double [] levels,
+        Deque<Object> stack
+    ) {
+        b.setLevel(assigner.clusterLevel(c)).setRepresentant(reps[c.representant()]);
+        for (int r : c.leaves()) {
+            if (members[r].length == 0) {
+                b.addImmediateLeaf(reps[r]);
+            } else {
+                b.newChildCluster()
+                    .setLevel(levels[r])
+                    .setRepresentant(reps[r])
+                    .addImmediateLeaf(reps[r])
+                    .addImmediateLeaves(members[r])
+                    .parent();
+            }
+        }
+        for (IDBasedHierarchicCluster child : c.clusters()) {
+            stack.push(child);
+        }
+    }
+}
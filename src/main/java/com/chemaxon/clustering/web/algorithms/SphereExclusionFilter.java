@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import java.util.BitSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Greedy sphere exclusion filter.
+ *
+ * Rows are visited in ascending order; a row not yet excluded is kept and excludes every later row closer than the
+ * radius (Tanimoto dissimilarity strictly less than the radius). The result is identical to the sequential pairwise
+ * scan.
+ *
+ * <p>Only rows whose bit count is compatible with the radius are compared: Tanimoto similarity of fingerprints with bit
+ * counts {@code a} and {@code b} is at most {@code min(a, b) / max(a, b)}. Rows are sorted by bit count once; the
+ * candidates of a kept row form a contiguous range of the sorted order. Large ranges are swept in parallel.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class SphereExclusionFilter {
+
+    /**
+     * Candidates swept by a single task.
+     */
+    private static final int SWEEP_BLOCK = 2048;
+
+    /**
+     * Visited rows between progress reports.
+     */
+    private static final int PROGRESS_STEP = 1024;
+
+    /**
+     * Fingerprints to filter, sorted by bit count.
+     */
+    private final PopcountIndex index;
+
+    /**
+     * Construct; sort rows by bit count.
+     *
+     * @param fingerprints Fingerprints to filter
+     */
+    public SphereExclusionFilter(PackedFingerprints fingerprints) {
+        this.index = new PopcountIndex(fingerprints);
+    }
+
+    /**
+     * Execute the filter.
+     *
+     * @param radius Tanimoto dissimilarity radius
+     * @param pool Pool to execute large sweeps on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     * one visited row, reported in steps of {@value #PROGRESS_STEP}. Cancellation is checked before each sweep.
+     * @return Filter result
+     * @throws CancellationException when the observer reports cancellation
+     */
+    public Result filter(double radius, ForkJoinPool pool, SubProgressObserver po) {
+        final PackedFingerprints fingerprints = this.index.fingerprints();
+        final int n = fingerprints.size();
+        final boolean [] excluded = new boolean[n];
+        final LongAdder comparisons = new LongAdder();
+
+        try {
+            po.switchToDeterminate(n);
+            for (int i = 0; i < n; i++) {
+                if (i % PROGRESS_STEP == 0 && i > 0) {
+                    po.worked(PROGRESS_STEP);
+                }
+                if (excluded[i]) {
+                    continue;
+                }
+                if (po.isCancelled()) {
+                    throw new CancellationException("Sphere exclusion filtering cancelled");
+                }
+                final int a = fingerprints.popcount(i);
+                final int from = this.index.windowFrom(a, radius);
+                final int to = this.index.windowTo(a, radius);
+
+                if (to - from > SWEEP_BLOCK) {
+                    pool.invoke(new Sweep(i, radius, excluded, comparisons, from, to));
+                } else {
+                    comparisons.add(sweep(i, radius, excluded, from, to));
+                }
+            }
+        } finally {
+            po.done();
+        }
+
+        final BitSet kept = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            if (!excluded[i]) {
+                kept.set(i);
+            }
+        }
+        return new Result(kept, comparisons.sum());
+    }
+
+    /**
+     * Exclude the rows of a sorted range which are within the radius of a kept row.
+     *
+     * Only rows after the kept row are affected. Concurrent sweeps of disjoint ranges for the same kept row are
+     * allowed.
+     *
+     * @param i Kept row
+     * @param radius Tanimoto dissimilarity radius
+     * @param excluded Exclusion flags to update
+     * @param from First sorted position, inclusive
+     * @param to Last sorted position, exclusive
+     * @return Comparisons done
+     */
+    private long sweep(int i, double radius, boolean [] excluded, int from, int to) {
+        long comparisons = 0;
+        for (int pos = from; pos < to; pos++) {
+            final int j = this.index.row(pos);
+            if (j <= i || excluded[j]) {
+                continue;
+            }
+            comparisons++;
+            if (this.index.fingerprints().dissimilarity(i, this.index.sorted(), pos) < radius) {
+                excluded[j] = true;
+            }
+        }
+        return comparisons;
+    }
+
+    /**
+     * Parallel sweep of a sorted range.
+     */
+    private final class Sweep extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        private final int i;
+        private final double radius;
+        private final boolean [] excluded;
+        private final LongAdder comparisons;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construct.
+         *
+         * @param i Kept row
+         * @param radius Tanimoto dissimilarity radius
+         * @param excluded Exclusion flags to update
+         * @param comparisons Comparison count to update
+         * @param from First sorted position, inclusive
+         * @param to Last sorted position, exclusive
+         */
+        Sweep(int i, double radius, boolean [] excluded, LongAdder comparisons, int from, int to) {
+            this.i = i;
+            this.radius = radius;
+            this.excluded = excluded;
+            this.comparisons = comparisons;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > SWEEP_BLOCK) {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(
+                    new Sweep(this.i, this.radius, this.excluded, this.comparisons, this.from, mid),
+                    new Sweep(this.i, this.radius, this.excluded, this.comparisons, mid, this.to));
+                return;
+            }
+            this.comparisons.add(sweep(this.i, this.radius, this.excluded, this.from, this.to));
+        }
+    }
+
+    /**
+     * Result of filtering.
+     */
+    public static final class Result {
+
+        /**
+         * Kept row indices.
+         */
+        private final BitSet kept;
+
+        /**
+         * Fingerprint comparisons done.
+         */
+        private final long comparisons;
+
+        /**
+         * Construct.
+         *
+         * @param kept Kept row indices
+         * @param comparisons Fingerprint comparisons done
+         */
+        Result(BitSet kept, long comparisons) {
+            this.kept = kept;
+            this.comparisons = comparisons;
+        }
+
+        /**
+         * Check if a row is kept.
+         *
+         * @param row Row index
+         * @return {@code true} when the row is kept, {@code false} when excluded
+         */
+        public boolean isKept(int row) {
+            return this.kept.get(row);
+        }
+
+        /**
+         * Number of kept rows.
+         *
+         * @return Kept count
+         */
+        public int getKeptCount() {
+            return this.kept.cardinality();
+        }
+
+        /**
+         * Number of fingerprint comparisons done.
+         *
+         * @return Comparison count
+         */
+        public long getComparisons() {
+            return this.comparisons;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.application;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import javax.ws.rs.NameBinding;
+
+/**
+ * Marks GET resource methods whose response for a given path and query never changes while the addressed entity
+ * exists.
+ *
+ * Such responses get content derived ETags and are answered from {@link ConditionalGetFilter}.
+ *
+ * @author Gabor Imre
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+    /**
+     * Keep the serialized content in the response cache.
+     *
+     * Disable for responses which are already cached in serialized form by the resource, to record their ETags only.
+     *
+     * @return {@code false} to record the ETag only
+     */
+    boolean content() default true;
+}
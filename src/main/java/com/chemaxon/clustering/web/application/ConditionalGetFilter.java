@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.application;
+
+import com.chemaxon.clustering.web.services.ResponseCache;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Conditional GET handling of {@link Cached} resource methods.
+ *
+ * The first successful response of a request key is hashed with SHA-256 while it is written. It is held back in
+ * memory as long as it fits the content cache of the {@link ResponseCache}; a response completed within this limit is
+ * sent with its ETag and Cache-Control header, and its content is cached unless disabled by {@link Cached#content()}.
+ * A larger response is streamed to the client once over the limit; since its headers are sent before the hash is
+ * known, it is marked for revalidation and its ETag is only recorded for later requests. Later requests are answered
+ * before the resource method is invoked: with 304 Not Modified when the If-None-Match header matches the recorded
+ * ETag, or with the cached content and its ETag when still available.
+ *
+ * @author Gabor Imre
+ */
+@Component
+@Provider
+@Cached
+public class ConditionalGetFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    /**
+     * Request property holding the request key.
+     */
+    private static final String KEY_PROPERTY = ConditionalGetFilter.class.getName() + ".key";
+
+    /**
+     * Request property marking responses to be recorded.
+     */
+    private static final String RECORD_PROPERTY = ConditionalGetFilter.class.getName() + ".record";
+
+    /**
+     * Request property marking responses whose content is not to be cached.
+     */
+    private static final String NO_CONTENT_PROPERTY = ConditionalGetFilter.class.getName() + ".noContent";
+
+    /**
+     * Cache-Control header value of responses sent without an ETag.
+     */
+    private static final String NO_VALIDATOR_CACHE_CONTROL = "no-cache";
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    /**
+     * Matched resource method.
+     */
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!HttpMethod.GET.equals(requestContext.getMethod())) {
+            return;
+        }
+        final String query = requestContext.getUriInfo().getRequestUri().getRawQuery();
+        final String key = requestContext.getUriInfo().getPath() + (query == null ? "" : "?" + query);
+
+        final String etag = this.responseCache.getEtag(key);
+        if (etag != null && matches(requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH), etag)) {
+            requestContext.abortWith(Response
+                .notModified(etag.substring(1, etag.length() - 1))
+                .header(HttpHeaders.CACHE_CONTROL, this.responseCache.getCacheControl())
+                .build());
+            return;
+        }
+        final ResponseCache.Entry entry = this.responseCache.getEntry(key);
+        if (entry != null) {
+            final Response.ResponseBuilder ret = Response.ok(entry.getContent(), entry.getMediaType());
+            entry.getHeaders().forEach((name, values) -> values.forEach(v -> ret.header(name, v)));
+            requestContext.abortWith(ret
+                .header(HttpHeaders.ETAG, entry.getEtag())
+                .header(HttpHeaders.CACHE_CONTROL, this.responseCache.getCacheControl())
+                .build());
+            return;
+        }
+        requestContext.setProperty(KEY_PROPERTY, key);
+        final Cached cached = this.resourceInfo.getResourceMethod().getAnnotation(Cached.class);
+        if (cached != null && !cached.content()) {
+            requestContext.setProperty(NO_CONTENT_PROPERTY, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+        throws IOException {
+        // only successful responses of the resource method are recorded
+        if (requestContext.getProperty(KEY_PROPERTY) != null && responseContext.getStatus() == 200) {
+            requestContext.setProperty(RECORD_PROPERTY, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        if (context.getProperty(RECORD_PROPERTY) == null) {
+            context.proceed();
+            return;
+        }
+        final OutputStream out = context.getOutputStream();
+        // no validator is sent once streaming started, so the client must not reuse the response without asking
+        final HoldingOutputStream holding = new HoldingOutputStream(out, this.responseCache.getMaxContentBytes(),
+            () -> context.getHeaders().putSingle(HttpHeaders.CACHE_CONTROL, NO_VALIDATOR_CACHE_CONTROL));
+        final HashingOutputStream hashing = new HashingOutputStream(Hashing.sha256(), holding);
+        context.setOutputStream(hashing);
+        context.proceed();
+        context.setOutputStream(out);
+
+        final byte [] content = holding.getHeld();
+        final String etag = this.responseCache.put((String) context.getProperty(KEY_PROPERTY), hashing.hash(),
+            context.getMediaType(), context.getHeaders(),
+            context.getProperty(NO_CONTENT_PROPERTY) == null ? content : null);
+        if (content != null) {
+            context.getHeaders().putSingle(HttpHeaders.ETAG, etag);
+            context.getHeaders().putSingle(HttpHeaders.CACHE_CONTROL, this.responseCache.getCacheControl());
+            out.write(content);
+        }
+    }
+
+    /**
+     * Check an If-None-Match header.
+     *
+     * @param ifNoneMatch Header value, possibly {@code null}
+     * @param etag Quoted ETag of the current content
+     * @return {@code true} when any listed tag matches; weak tags are compared by their value
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            final String t = tag.trim();
+            if ("*".equals(t) || etag.equals(t.startsWith("W/") ? t.substring(2) : t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Holds back the written content up to a size limit; writes through to the client once over the limit.
+     */
+    private static final class HoldingOutputStream extends FilterOutputStream {
+
+        /**
+         * Max size of the held content in bytes.
+         */
+        private final long limit;
+
+        /**
+         * Invoked once before the first byte is written through.
+         */
+        private final Runnable beforeStreaming;
+
+        /**
+         * Held content; {@code null} once the limit is exceeded.
+         */
+        private ByteArrayOutputStream held;
+
+        /**
+         * Construct.
+         *
+         * @param out Underlying stream
+         * @param limit Max size of the held content in bytes; 0 to write through right away
+         * @param beforeStreaming Invoked once before the first byte is written through, while headers can be changed
+         */
+        HoldingOutputStream(OutputStream out, long limit, Runnable beforeStreaming) {
+            super(out);
+            this.limit = limit;
+            this.beforeStreaming = beforeStreaming;
+            this.held = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte [] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte [] b, int off, int len) throws IOException {
+            if (this.held != null && this.held.size() + (long) len > this.limit) {
+                this.beforeStreaming.run();
+                this.held.writeTo(this.out);
+                this.held = null;
+            }
+            if (this.held != null) {
+                this.held.write(b, off, len);
+            } else {
+                this.out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // flushing held content would commit the headers
+            if (this.held == null) {
+                this.out.flush();
+            }
+        }
+
+        /**
+         * Get the held content.
+         *
+         * @return Complete content or {@code null} when it was written through
+         */
+        byte [] getHeld() {
+            return this.held == null ? null : this.held.toByteArray();
+        }
+    }
+}
@@ -19,10 +19,12 @@ package com.chemaxon.clustering.web.application;
 
 import com.chemaxon.clustering.web.resources.ClusteringResource;
 import com.chemaxon.clustering.web.resources.GroupingResource;
+import com.chemaxon.clustering.web.resources.JobsResource;
 import com.chemaxon.clustering.web.resources.LaunchClusteringResource;
 import com.chemaxon.clustering.web.resources.LaunchGroupingResource;
 import com.chemaxon.clustering.web.resources.ManageResource;
 import com.chemaxon.clustering.web.resources.MolfilesResource;
+import com.chemaxon.clustering.web.resources.ProgressResource;
 import javax.ws.rs.ApplicationPath;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -48,6 +50,8 @@ public final class JerseyConfig extends ResourceConfig {
         register(LaunchClusteringResource.class);
         register(GroupingResource.class);
         register(LaunchGroupingResource.class);
+        register(JobsResource.class);
+        register(ProgressResource.class);
         register(ParamConverterProviderImpl.class);
 
         // See http://stackoverflow.com/questions/35644365/multipart-api-doesnt-work-in-jersey-with-springboot
@@ -55,5 +59,8 @@ public final class JerseyConfig extends ResourceConfig {
 
         // See http://stackoverflow.com/questions/4687271/jax-rs-how-to-return-json-and-http-status-code-together
         register(StatusFilter.class);
+
+        // ETags and cached content of immutable responses
+        register(ConditionalGetFilter.class);
     }
 }
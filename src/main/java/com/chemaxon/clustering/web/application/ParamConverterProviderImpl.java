@@ -19,9 +19,11 @@ package com.chemaxon.clustering.web.application;
 
 import com.chemaxon.clustering.web.entities.Clustering;
 import com.chemaxon.clustering.web.entities.Grouping;
+import com.chemaxon.clustering.web.entities.Job;
 import com.chemaxon.clustering.web.entities.Molfile;
 import com.chemaxon.clustering.web.services.ClusteringService;
 import com.chemaxon.clustering.web.services.GroupingService;
+import com.chemaxon.clustering.web.services.JobService;
 import com.chemaxon.clustering.web.services.MolfilesService;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
@@ -55,16 +57,23 @@ public class ParamConverterProviderImpl implements ParamConverterProvider {
      */
     private ParamConverter<Grouping> groupingIdLookupParamConverter;
 
+    /**
+     * Converter to look up instances.
+     */
+    private ParamConverter<Job> jobIdLookupParamConverter;
+
     // Constructor injection is used to allow the usage of inner class converter
     @Autowired
     public ParamConverterProviderImpl(
         MolfilesService molfilesService,
         ClusteringService clusteringService,
-        GroupingService groupingService
+        GroupingService groupingService,
+        JobService jobService
     ) {
         this.molfileIdLookupParamConverter = new MolfileIdLookupParamConverter(molfilesService);
         this.clusteringIdLookupParamConverter = new ClusteringIdLookupParamConverter(clusteringService);
         this.groupingIdLookupParamConverter = new GroupingIdLookupParamConverter(groupingService);
+        this.jobIdLookupParamConverter = new JobIdLookupParamConverter(jobService);
     }
 
     @Override
@@ -75,7 +84,9 @@ public class ParamConverterProviderImpl implements ParamConverterProvider {
             return (ParamConverter<T>) this.clusteringIdLookupParamConverter;
         } else if (rawType == Grouping.class) {
             return (ParamConverter<T>) this.groupingIdLookupParamConverter;
-        }else {
+        } else if (rawType == Job.class) {
+            return (ParamConverter<T>) this.jobIdLookupParamConverter;
+        } else {
             return null;
         }
     }
@@ -177,5 +188,37 @@ public class ParamConverterProviderImpl implements ParamConverterProvider {
     }
 
 
+    /**
+     * Looking up instance by ID.
+     */
+    private static class JobIdLookupParamConverter implements ParamConverter<Job> {
+
+        /**
+         * Underlying service.
+         */
+        private final JobService jobService;
+
+        /**
+         * Construct.
+         *
+         * @param jobService Underlying service
+         */
+        public JobIdLookupParamConverter(JobService jobService) {
+            this.jobService = jobService;
+        }
+
+        @Override
+        public Job fromString(String value) {
+            return this.jobService.getJob(value);
+        }
+
+        @Override
+        public String toString(Job value) {
+            return this.jobService.getJobId(value);
+        }
+
+    }
+
+
 
 }
@@ -30,5 +30,6 @@ import javax.ws.rs.NameBinding;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Status {
     int CREATED = 201;
+    int ACCEPTED = 202;
     int value();
 }
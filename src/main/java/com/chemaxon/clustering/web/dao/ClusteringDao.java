@@ -17,19 +17,39 @@
 
 package com.chemaxon.clustering.web.dao;
 
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
 import com.chemaxon.clustering.web.Util;
 import com.chemaxon.clustering.web.entities.Clustering;
+import com.chemaxon.clustering.web.hierarchy.ColumnarHierarchy;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 /**
  * Provides access to {@link Clustering} instances.
  *
- * Current implementation provides in-memory storage with no further persistence.
+ * Instances are kept in memory. When a directory is configured each instance is also persisted there in the
+ * {@link ColumnarHierarchy} format, one file per instance named after its URL encoded ID; persisted instances are
+ * loaded on startup. Hierarchies of new instances are prepared by {@link #toStorable(IDBasedHierarchicClustering)}, so
+ * loaded instances keep their cluster IDs and levels.
  *
  * @author Gabor Imre
  */
@@ -42,10 +62,125 @@ public class ClusteringDao {
     private final BiMap<String, Clustering> storage;
 
     /**
-     * Construct.
+     * Extension of persisted files.
      */
-    public ClusteringDao() {
+    private static final String EXTENSION = ".jkh";
+
+    /**
+     * Directory of persisted instances; {@code null} when not persisted.
+     */
+    private final File directory;
+
+    /**
+     * Construct; load persisted instances.
+     *
+     * @param directory Directory of persisted instances; empty for in-memory storage only
+     * @throws IllegalStateException when persisted instances can not be loaded
+     */
+    @Autowired
+    public ClusteringDao(@Value("${clusterings.directory:}") String directory) {
         this.storage = HashBiMap.<String, Clustering>create();
+        if (directory.isEmpty()) {
+            this.directory = null;
+            return;
+        }
+        this.directory = new File(directory);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IllegalStateException("Can not create clusterings directory " + this.directory);
+        }
+        final File [] files = this.directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        for (File f : files == null ? new File[0] : files) {
+            final String name = f.getName();
+            try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+                final ColumnarHierarchy h = ColumnarHierarchy.readFrom(in);
+                this.storage.put(
+                    decode(name.substring(0, name.length() - EXTENSION.length())),
+                    new Clustering(h.toClustering(), h.getElapsedTime(), h.getAlgorithmDescription()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error loading clustering " + f + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Persisted file of an instance.
+     *
+     * @param id Instance ID
+     * @return File
+     */
+    private File fileOf(String id) {
+        try {
+            return new File(this.directory, URLEncoder.encode(id, "UTF-8") + EXTENSION);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode an instance ID from a file name.
+     *
+     * @param name File name without extension
+     * @return Instance ID
+     */
+    private static String decode(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Persist an instance when persistence is enabled.
+     *
+     * The file is written under a temporary name first, so a partially written file is never loaded.
+     *
+     * @param id Instance ID
+     * @param clustering Instance
+     * @throws IllegalStateException on write failure
+     */
+    private void persist(String id, Clustering clustering) {
+        if (this.directory == null) {
+            return;
+        }
+        final File target = fileOf(id);
+        final File temp = new File(this.directory, target.getName() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                ColumnarHierarchy.of(clustering.getClustering(), clustering.getHierarchyIndex(),
+                    clustering.getElapsedTime(), clustering.getAlgorithmDescription()).writeTo(out);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error persisting clustering " + id + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Remove the persisted file of an instance when persistence is enabled.
+     *
+     * @param id Instance ID
+     */
+    private void unpersist(String id) {
+        if (this.directory != null) {
+            final File f = fileOf(id);
+            if (f.exists() && !f.delete()) {
+                throw new IllegalStateException("Error deleting persisted clustering " + f);
+            }
+        }
+    }
+
+    /**
+     * Prepare the hierarchy of a new instance.
+     *
+     * When persistence is enabled the hierarchy is rebuilt in the canonical form of {@link ColumnarHierarchy}, so it
+     * has the same cluster IDs when loaded from the persisted file.
+     *
+     * @param clustering Hierarchy of a new instance
+     * @return Hierarchy to construct the instance from
+     */
+    public IDBasedHierarchicClustering toStorable(IDBasedHierarchicClustering clustering) {
+        return this.directory == null ? clustering : ColumnarHierarchy.canonical(clustering);
     }
 
     /**
@@ -58,6 +193,7 @@ public class ClusteringDao {
      */
     public synchronized String add(String idSuggestion, Clustering clustering) {
         final String idToUse = Util.constructUniqueKey(this.storage, idSuggestion);
+        persist(idToUse, clustering);
         this.storage.put(idToUse, clustering);
         return idToUse;
     }
@@ -103,13 +239,16 @@ public class ClusteringDao {
         if (!this.storage.inverse().containsKey(clustering)) {
             throw new NoSuchElementException("Item not found: " + clustering);
         }
-        this.storage.inverse().remove(clustering);
+        unpersist(this.storage.inverse().remove(clustering));
     }
 
     /**
      * Delete all instances.
      */
     public synchronized void deleteAll() {
+        for (String id : this.storage.keySet()) {
+            unpersist(id);
+        }
         this.storage.clear();
     }
 
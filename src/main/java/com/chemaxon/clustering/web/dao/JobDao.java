@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.chemaxon.clustering.web.dao;
+
+import com.chemaxon.clustering.web.entities.Job;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Provides access to {@link Job} instances.
+ *
+ * Current implementation provides in-memory storage with no further persistence. Finished jobs are deleted after a
+ * while, so IDs are never reused: a client polling a deleted job must not see a later one under its ID.
+ *
+ * @author Gabor Imre
+ */
+@Repository
+public class JobDao {
+
+    /**
+     * Stored data.
+     */
+    private final BiMap<String, Job> storage;
+
+    /**
+     * Sequence number of the last added instance.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Construct.
+     */
+    public JobDao() {
+        this.storage = HashBiMap.<String, Job>create();
+    }
+
+    /**
+     * Add a new instance.
+     *
+     * @param idSuggestion ID prefix; a {@code -<NUMBER>} suffix unique for the lifetime of the application is appended
+     * @param job Instance to add.
+     * @return Associated ID
+     */
+    public synchronized String add(String idSuggestion, Job job) {
+        final String idToUse = idSuggestion + "-" + this.sequence.incrementAndGet();
+        this.storage.put(idToUse, job);
+        return idToUse;
+    }
+
+
+    /**
+     * Retrieve a stored instance.
+     *
+     * @param id Instance ID.
+     * @return instance
+     * @throws NoSuchElementException when no instance with the specified id found.
+     */
+    public synchronized Job get(String id) {
+        if (!this.storage.containsKey(id)) {
+            throw new NoSuchElementException("Job ID not found " + id);
+        }
+        return this.storage.get(id);
+    }
+
+
+    /**
+     * Retrieve the ID of a stored instance.
+     *
+     * @param job  Instance previously added with {@link #add(java.lang.String, com.chemaxon.clustering.web.entities.Job) }
+     * @return Instance ID
+     * @throws NoSuchElementException when instance not found
+     */
+    public synchronized String getIdOf(Job job) {
+        if (!this.storage.inverse().containsKey(job)) {
+            throw new NoSuchElementException("Item not found: " + job);
+        }
+        return this.storage.inverse().get(job);
+    }
+
+
+    /**
+     * Delete a stored instance.
+     *
+     * @param job  Instance previously added with {@link #add(java.lang.String, com.chemaxon.clustering.web.entities.Job) }
+     * @throws NoSuchElementException when instance not found
+     */
+    public synchronized void delete(Job job) {
+        if (!this.storage.inverse().containsKey(job)) {
+            throw new NoSuchElementException("Item not found: " + job);
+        }
+        this.storage.inverse().remove(job);
+    }
+
+    /**
+     * Delete all instances.
+     */
+    public synchronized void deleteAll() {
+        this.storage.clear();
+    }
+
+
+    /**
+     * Retrieve all stored instances.
+     *
+     * @return All stored instances, keyed by ID
+     */
+    public synchronized Map<String, Job> getAll() {
+        return ImmutableMap.copyOf(this.storage);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Simple DTO describing the cophenetic distance of two structures.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class CopheneticInfo {
+
+    /**
+     * ID of the clustering.
+     */
+    @XmlElement(required = true)
+    public String id;
+
+    /**
+     * URL of the clustering.
+     */
+    @XmlElement(required = true)
+    public String url;
+
+    /**
+     * First structure index.
+     */
+    @XmlElement(required = true)
+    public int a;
+
+    /**
+     * Second structure index.
+     */
+    @XmlElement(required = true)
+    public int b;
+
+    /**
+     * Level of the lowest cluster containing both structures; NaN when they are in different roots.
+     */
+    @XmlElement(required = true)
+    public double distance;
+
+    /**
+     * ID of the lowest cluster containing both structures; -1 when they are in different roots.
+     */
+    @XmlElement(required = true)
+    public int lcaClusterId;
+}
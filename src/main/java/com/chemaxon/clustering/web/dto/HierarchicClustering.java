@@ -36,6 +36,9 @@ import javax.xml.bind.annotation.XmlRootElement;
  * <li>Benchmarking information</li>
  * </ul>
  *
+ * <p>The hierarchy endpoint streams this representation with {@link HierarchicClusteringWriter} instead of
+ * materializing it.</p>
+ *
  * @author Gabor Imre
  */
 @XmlRootElement
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import com.chemaxon.clustering.common.IDBasedAssigner;
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import com.chemaxon.clustering.web.hierarchy.HierarchyIndex;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.ListIterator;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Streams a clustering in the JSON representation of {@link HierarchicClustering}.
+ *
+ * The hierarchy is walked iteratively and written directly to the response, so neither the DTO tree nor boxed leaf
+ * lists are materialized and arbitrarily deep hierarchies are supported.
+ *
+ * <p>Output can be limited to a depth limited subtree. Clusters at the depth limit are written collapsed: besides
+ * {@code clusterId} and {@code clusterPosition} only {@code collapsed}, {@code leafCount}, {@code minLevel} and
+ * {@code maxLevel} of their subtree are written, looked up from a {@link HierarchyIndex}. Expanded clusters of a
+ * limited output also get {@code collapsed} and {@code leafCount}.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class HierarchicClusteringWriter implements StreamingOutput {
+
+    /**
+     * Shared, thread safe generator factory.
+     */
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Marks closing stack entries.
+     */
+    private static final int CLOSE = -1;
+
+    /**
+     * Top level clusters to write.
+     */
+    private final List<IDBasedHierarchicCluster> roots;
+
+    /**
+     * Index to summarize collapsed clusters; {@code null} when the depth is not limited.
+     */
+    private final HierarchyIndex index;
+
+    /**
+     * Expanded cluster levels below the top level clusters.
+     */
+    private final int depth;
+
+    /**
+     * Level assigner.
+     */
+    private final IDBasedAssigner assigner;
+
+    /**
+     * Value of {@link HierarchicClustering#id}.
+     */
+    private final String id;
+
+    /**
+     * Value of {@link HierarchicClustering#url}.
+     */
+    private final String url;
+
+    /**
+     * Value of {@link HierarchicClustering#elapsedTime}.
+     */
+    private final long elapsedTime;
+
+    /**
+     * Value of {@link HierarchicClustering#algorithmDescription}.
+     */
+    private final String algorithmDescription;
+
+    /**
+     * Construct.
+     *
+     * @param clustering Clustering to write
+     * @param assigner Level assigner
+     * @param id ID of the clustering
+     * @param url URL of the clustering
+     * @param elapsedTime Elapsed time of the clustering in ms
+     * @param algorithmDescription Algorithm description
+     */
+    public HierarchicClusteringWriter(
+        IDBasedHierarchicClustering clustering,
+        IDBasedAssigner assigner,
+        String id,
+        String url,
+        long elapsedTime,
+        String algorithmDescription
+    ) {
+        this(clustering.roots(), null, Integer.MAX_VALUE, assigner, id, url, elapsedTime, algorithmDescription);
+    }
+
+    /**
+     * Construct for a depth limited subtree.
+     *
+     * @param roots Top level clusters to write
+     * @param index Index of the hierarchy; {@code null} is allowed only when the depth is {@link Integer#MAX_VALUE}
+     * @param depth Expanded levels below the top level clusters; 0 writes the top level clusters collapsed
+     * @param assigner Level assigner
+     * @param id ID of the clustering
+     * @param url URL of the clustering
+     * @param elapsedTime Elapsed time of the clustering in ms
+     * @param algorithmDescription Algorithm description
+     */
+    public HierarchicClusteringWriter(
+        List<IDBasedHierarchicCluster> roots,
+        HierarchyIndex index,
+        int depth,
+        IDBasedAssigner assigner,
+        String id,
+        String url,
+        long elapsedTime,
+        String algorithmDescription
+    ) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Invalid depth specified: " + depth);
+        }
+        if (index == null && depth != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("No index specified for depth " + depth);
+        }
+        this.roots = roots;
+        this.index = index;
+        this.depth = depth;
+        this.assigner = assigner;
+        this.id = id;
+        this.url = url;
+        this.elapsedTime = elapsedTime;
+        this.algorithmDescription = algorithmDescription;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (JsonGenerator g = FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            // the container closes the response stream
+            g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            g.writeStartObject();
+            g.writeArrayFieldStart("roots");
+            for (IDBasedHierarchicCluster root : this.roots) {
+                writeCluster(g, root);
+            }
+            g.writeEndArray();
+            g.writeStringField("id", this.id);
+            g.writeStringField("url", this.url);
+            g.writeNumberField("elapsedTime", this.elapsedTime);
+            g.writeStringField("algorithmDescription", this.algorithmDescription);
+            g.writeStringField("positionDescription", this.assigner.toString());
+            g.writeEndObject();
+        }
+    }
+
+    /**
+     * Write a cluster in the representation of {@link HierarchicCluster}.
+     *
+     * Depth first traversal with an explicit stack; a cluster is pushed again as closing entry when opened.
+     *
+     * @param g Generator to write to
+     * @param cluster Cluster to write
+     * @throws IOException on write failure
+     */
+    private void writeCluster(JsonGenerator g, IDBasedHierarchicCluster cluster) throws IOException {
+        final Deque<IDBasedHierarchicCluster> stack = new ArrayDeque<>();
+        // remaining expanded levels of the entry; CLOSE for closing entries
+        final Deque<Integer> remaining = new ArrayDeque<>();
+        stack.push(cluster);
+        remaining.push(this.depth);
+        while (!stack.isEmpty()) {
+            final IDBasedHierarchicCluster c = stack.pop();
+            final int r = remaining.pop();
+            if (r == CLOSE) {
+                g.writeEndArray();
+                final List<Integer> leaves = c.leaves();
+                g.writeArrayFieldStart("leafIds");
+                for (int leaf : leaves) {
+                    g.writeNumber(leaf);
+                }
+                g.writeEndArray();
+                g.writeArrayFieldStart("leafPositions");
+                for (int leaf : leaves) {
+                    g.writeNumber(this.assigner.leafLevel(leaf));
+                }
+                g.writeEndArray();
+                if (this.index != null) {
+                    g.writeBooleanField("collapsed", false);
+                    g.writeNumberField("leafCount", this.index.getLeafCount(this.index.nodeOf(c.getClusterID())));
+                }
+                g.writeEndObject();
+                continue;
+            }
+            g.writeStartObject();
+            g.writeNumberField("clusterId", c.getClusterID());
+            g.writeNumberField("clusterPosition", this.assigner.clusterLevel(c));
+            if (r == 0) {
+                final int node = this.index.nodeOf(c.getClusterID());
+                g.writeBooleanField("collapsed", true);
+                g.writeNumberField("leafCount", this.index.getLeafCount(node));
+                g.writeNumberField("minLevel", this.index.getMinLevel(node));
+                g.writeNumberField("maxLevel", this.index.getMaxLevel(node));
+                g.writeEndObject();
+                continue;
+            }
+            g.writeArrayFieldStart("clusters");
+            stack.push(c);
+            remaining.push(CLOSE);
+            // children are popped in their original order
+            final List<IDBasedHierarchicCluster> children = c.clusters();
+            for (ListIterator<IDBasedHierarchicCluster> it = children.listIterator(children.size()); it.hasPrevious();) {
+                stack.push(it.previous());
+                remaining.push(r == Integer.MAX_VALUE ? r : r - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * State of a background job.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class JobInfo {
+
+    /**
+     * ID.
+     */
+    @XmlElement(required = true)
+    public String id;
+
+    /**
+     * URL.
+     */
+    @XmlElement(required = true)
+    public String url;
+
+    /**
+     * Operation human readable description.
+     */
+    @XmlElement(required = true)
+    public String description;
+
+    /**
+     * Job state: QUEUED, RUNNING, SUCCEEDED or FAILED.
+     */
+    @XmlElement(required = true)
+    public String state;
+
+    /**
+     * Submission time in ms since epoch.
+     */
+    @XmlElement(required = true)
+    public long submitTime;
+
+    /**
+     * Execution start time in ms since epoch; 0 when not started.
+     */
+    @XmlElement(required = true)
+    public long startTime;
+
+    /**
+     * Execution finish time in ms since epoch; 0 when not finished.
+     */
+    @XmlElement(required = true)
+    public long finishTime;
+
+    /**
+     * URL of the result when succeeded.
+     */
+    @XmlElement(required = false)
+    public String resultUrl;
+
+    /**
+     * Error description when failed.
+     */
+    @XmlElement(required = false)
+    public String error;
+
+    /**
+     * URL of the progress of the job.
+     */
+    @XmlElement
+    public String progressUrl;
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Simple DTO describing the state of the shared dissimilarity matrix cache.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class MatrixCacheInfo {
+
+    /**
+     * Lookups served from the cache.
+     */
+    @XmlElement(required = true)
+    public long hitCount;
+
+    /**
+     * Lookups which triggered matrix calculation.
+     */
+    @XmlElement(required = true)
+    public long missCount;
+
+    /**
+     * Ratio of hits and all lookups.
+     */
+    @XmlElement(required = true)
+    public double hitRate;
+
+    /**
+     * Entries evicted due to size or access time limits.
+     */
+    @XmlElement(required = true)
+    public long evictionCount;
+
+    /**
+     * Cached entry count.
+     */
+    @XmlElement(required = true)
+    public long entryCount;
+
+    /**
+     * Total size of cached matrices in bytes.
+     */
+    @XmlElement(required = true)
+    public long sizeInBytes;
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Simple DTO describing the state of the shared memory budget.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class MemoryBudgetInfo {
+
+    /**
+     * Total budget in bytes.
+     */
+    @XmlElement(required = true)
+    public long budgetBytes;
+
+    /**
+     * Part of the budget set aside for caches in bytes.
+     */
+    @XmlElement(required = true)
+    public long setAsideBytes;
+
+    /**
+     * Memory reserved by running calculations in bytes.
+     */
+    @XmlElement(required = true)
+    public long reservedBytes;
+
+    /**
+     * Running calculations holding a reservation.
+     */
+    @XmlElement(required = true)
+    public int activeCount;
+
+    /**
+     * Calculations waiting for memory.
+     */
+    @XmlElement(required = true)
+    public int waitingCount;
+}
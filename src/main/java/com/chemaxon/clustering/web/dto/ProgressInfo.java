@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.List;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Progress of an operation.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class ProgressInfo {
+
+    /**
+     * ID.
+     */
+    @XmlElement(required = true)
+    public String id;
+
+    /**
+     * URL.
+     */
+    @XmlElement(required = true)
+    public String url;
+
+    /**
+     * Is the operation finished.
+     */
+    @XmlElement(required = true)
+    public boolean finished;
+
+    /**
+     * Stages entered so far, in order.
+     */
+    @XmlElement(required = true)
+    public List<ProgressStageInfo> stages;
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Progress of a single stage of an operation.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class ProgressStageInfo {
+
+    /**
+     * Stage name.
+     */
+    @XmlElement(required = true)
+    public String name;
+
+    /**
+     * Is the stage finished.
+     */
+    @XmlElement(required = true)
+    public boolean done;
+
+    /**
+     * Total work units; negative when not known.
+     */
+    @XmlElement(required = true)
+    public long totalWork;
+
+    /**
+     * Work units done.
+     */
+    @XmlElement(required = true)
+    public long worked;
+
+    /**
+     * Time spent in the stage in ms.
+     */
+    @XmlElement(required = true)
+    public long elapsedTime;
+
+    /**
+     * Average work units per second.
+     */
+    @XmlElement(required = true)
+    public double rate;
+
+    /**
+     * Estimated remaining time in ms; negative when not known.
+     */
+    @XmlElement(required = true)
+    public long eta;
+}
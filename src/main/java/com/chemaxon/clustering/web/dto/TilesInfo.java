@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Simple DTO describing the dendrogram tile pyramid of a clustering.
+ *
+ * @author Gabor Imre
+ */
+@XmlRootElement
+@SuppressFBWarnings(
+    value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
+    justification = "Fields of this DTO is read by JSON serialization."
+)
+public class TilesInfo {
+
+    /**
+     * ID of the clustering.
+     */
+    @XmlElement(required = true)
+    public String id;
+
+    /**
+     * URL of the clustering.
+     */
+    @XmlElement(required = true)
+    public String url;
+
+    /**
+     * URL template of the tiles with {z}, {x} and {y} placeholders.
+     */
+    @XmlElement(required = true)
+    public String tileUrl;
+
+    /**
+     * Tile width and height in pixels.
+     */
+    @XmlElement(required = true)
+    public int tileSize;
+
+    /**
+     * Deepest zoom level; level z has 2^z by 2^z tiles.
+     */
+    @XmlElement(required = true)
+    public int maxZoom;
+}
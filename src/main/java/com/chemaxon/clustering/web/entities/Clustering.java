@@ -18,6 +18,12 @@ package com.chemaxon.clustering.web.entities;
 
 import com.chemaxon.clustering.common.IDBasedAssigner;
 import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import com.chemaxon.clustering.web.hierarchy.CutIndex;
+import com.chemaxon.clustering.web.hierarchy.DendrogramLayout;
+import com.chemaxon.clustering.web.hierarchy.HierarchyIndex;
+import com.chemaxon.clustering.web.hierarchy.LcaIndex;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 
 /**
  * Represents a hierarchic clustering.
@@ -49,6 +55,26 @@ public class Clustering {
      */
     private final String algorithmDescription;
 
+    /**
+     * Index of the hierarchy, built on first access.
+     */
+    private final Supplier<HierarchyIndex> hierarchyIndex;
+
+    /**
+     * Cut index of the hierarchy, built on first access.
+     */
+    private final Supplier<CutIndex> cutIndex;
+
+    /**
+     * Lowest common ancestor index of the hierarchy, built on first access.
+     */
+    private final Supplier<LcaIndex> lcaIndex;
+
+    /**
+     * Dendrogram layout of the hierarchy, computed on first access.
+     */
+    private final Supplier<DendrogramLayout> dendrogramLayout;
+
     /**
      * Create.
      *
@@ -61,6 +87,10 @@ public class Clustering {
         this.elapsedTime = elapsedTime;
         this.assigner = clustering.getPreferredAssigner();
         this.algorithmDescription = algorithmDescription;
+        this.hierarchyIndex = Suppliers.memoize(() -> new HierarchyIndex(this.clustering, this.assigner));
+        this.cutIndex = Suppliers.memoize(() -> CutIndex.of(this.hierarchyIndex.get()));
+        this.lcaIndex = Suppliers.memoize(() -> LcaIndex.of(this.hierarchyIndex.get()));
+        this.dendrogramLayout = Suppliers.memoize(() -> DendrogramLayout.of(this.hierarchyIndex.get()));
     }
 
 
@@ -80,6 +110,51 @@ public class Clustering {
         return algorithmDescription;
     }
 
+    /**
+     * Index of the hierarchy.
+     *
+     * Built once on first access; subsequent calls return the same instance.
+     *
+     * @return Hierarchy index
+     */
+    public HierarchyIndex getHierarchyIndex() {
+        return this.hierarchyIndex.get();
+    }
+
+    /**
+     * Cut index of the hierarchy.
+     *
+     * Built once on first access; subsequent calls return the same instance.
+     *
+     * @return Cut index
+     */
+    public CutIndex getCutIndex() {
+        return this.cutIndex.get();
+    }
+
+    /**
+     * Lowest common ancestor index of the hierarchy.
+     *
+     * Built once on first access; subsequent calls return the same instance. Cluster indices are the nodes of
+     * {@link #getHierarchyIndex()}.
+     *
+     * @return LCA index
+     */
+    public LcaIndex getLcaIndex() {
+        return this.lcaIndex.get();
+    }
+
+    /**
+     * Dendrogram layout of the hierarchy.
+     *
+     * Computed once on first access; subsequent calls return the same instance.
+     *
+     * @return Layout used for tile rendering
+     */
+    public DendrogramLayout getDendrogramLayout() {
+        return this.dendrogramLayout.get();
+    }
+
 
 
 
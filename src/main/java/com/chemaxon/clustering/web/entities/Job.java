@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.entities;
+
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+
+/**
+ * Represents a long running operation executed in the background.
+ *
+ * The result of a finished job is registered in the usual storage of its kind; the job references it by URL.
+ *
+ * @author Gabor Imre
+ */
+public class Job {
+
+    /**
+     * Job lifecycle states.
+     */
+    public enum State {
+        /**
+         * Waiting for a free worker or for memory.
+         */
+        QUEUED,
+
+        /**
+         * Being executed.
+         */
+        RUNNING,
+
+        /**
+         * Finished, result is available.
+         */
+        SUCCEEDED,
+
+        /**
+         * Finished with an error.
+         */
+        FAILED,
+
+        /**
+         * Cancelled on request or on exceeding its deadline.
+         */
+        CANCELLED
+    }
+
+    /**
+     * Operation description.
+     */
+    private final String description;
+
+    /**
+     * Submission time from {@link System#currentTimeMillis()}.
+     */
+    private final long submitTime;
+
+    /**
+     * Progress of the operation.
+     */
+    private final ProgressTracker progress = new ProgressTracker();
+
+    /**
+     * Current state.
+     */
+    private State state;
+
+    /**
+     * Execution start time; 0 when not started yet.
+     */
+    private long startTime;
+
+    /**
+     * Execution finish time; 0 when not finished yet.
+     */
+    private long finishTime;
+
+    /**
+     * URL of the result when succeeded.
+     */
+    private String resultUrl;
+
+    /**
+     * Error description when failed or cancelled.
+     */
+    private String error;
+
+    /**
+     * Create in {@link State#QUEUED} state.
+     *
+     * @param description Operation description
+     */
+    public Job(String description) {
+        this.description = description;
+        this.submitTime = System.currentTimeMillis();
+        this.state = State.QUEUED;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public long getSubmitTime() {
+        return this.submitTime;
+    }
+
+    public ProgressTracker getProgress() {
+        return this.progress;
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    public synchronized long getStartTime() {
+        return this.startTime;
+    }
+
+    public synchronized long getFinishTime() {
+        return this.finishTime;
+    }
+
+    public synchronized String getResultUrl() {
+        return this.resultUrl;
+    }
+
+    public synchronized String getError() {
+        return this.error;
+    }
+
+    /**
+     * Check if the job is finished.
+     *
+     * @return {@code true} when the job succeeded, failed or was cancelled
+     */
+    public synchronized boolean isFinished() {
+        return this.state == State.SUCCEEDED || this.state == State.FAILED || this.state == State.CANCELLED;
+    }
+
+    /**
+     * Record execution start.
+     *
+     * @return {@code false} when the job was cancelled while queued; it must not be executed then
+     */
+    public synchronized boolean markRunning() {
+        if (this.state != State.QUEUED) {
+            return false;
+        }
+        this.state = State.RUNNING;
+        if (this.startTime == 0) {
+            this.startTime = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /**
+     * Record waiting for execution again, for example when memory is not available.
+     *
+     * Has no effect when not running.
+     */
+    public synchronized void markQueued() {
+        if (this.state == State.RUNNING) {
+            this.state = State.QUEUED;
+        }
+    }
+
+    /**
+     * Record successful completion.
+     *
+     * @param resultUrl URL of the result
+     */
+    public synchronized void markSucceeded(String resultUrl) {
+        this.state = State.SUCCEEDED;
+        this.finishTime = System.currentTimeMillis();
+        this.resultUrl = resultUrl;
+    }
+
+    /**
+     * Record failure.
+     *
+     * @param error Error description
+     */
+    public synchronized void markFailed(String error) {
+        this.state = State.FAILED;
+        this.finishTime = System.currentTimeMillis();
+        this.error = error;
+    }
+
+    /**
+     * Record cancellation.
+     *
+     * Has no effect when already finished.
+     *
+     * @param reason Cancellation reason
+     */
+    public synchronized void markCancelled(String reason) {
+        if (isFinished()) {
+            return;
+        }
+        this.state = State.CANCELLED;
+        this.finishTime = System.currentTimeMillis();
+        this.error = reason;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.fingerprints;
+
+import chemaxon.struc.Molecule;
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.common.DissimilarityInput;
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.fingerprints.ParallelFingerprintGenerator;
+import com.google.common.base.Stopwatch;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fingerprints of all structures of a molfile, calculated with a given {@link FingerprintSpec}.
+ *
+ * Instances are immutable once generated. The fingerprint of structure {@code i} is stored in row {@code i} of the
+ * underlying {@link PackedFingerprints}.
+ *
+ * @author Gabor Imre
+ */
+public final class MolfileFingerprints {
+
+    /**
+     * Spec used for generation.
+     */
+    private final FingerprintSpec spec;
+
+    /**
+     * Fingerprint bits for each structure.
+     */
+    private final PackedFingerprints fingerprints;
+
+    /**
+     * Generation time in milliseconds.
+     */
+    private final long generationTime;
+
+    /**
+     * Construct.
+     *
+     * @param spec Spec used for generation
+     * @param fingerprints Fingerprint bits
+     * @param generationTime Generation time in milliseconds
+     */
+    private MolfileFingerprints(FingerprintSpec spec, PackedFingerprints fingerprints, long generationTime) {
+        this.spec = spec;
+        this.fingerprints = fingerprints;
+        this.generationTime = generationTime;
+    }
+
+    /**
+     * Generate fingerprints.
+     *
+     * Structures are cloned before standardization, passed structures are not modified.
+     *
+     * @param molecules Structures to fingerprint
+     * @param spec Fingerprint spec to use
+     * @param pool Pool to execute on
+     * @param po Observer to track progress. Method {@link SubProgressObserver#done()} will be invoked. One work unit is
+     *      one structure.
+     * @return Generated fingerprints
+     */
+    public static MolfileFingerprints generate(
+        List<Molecule> molecules,
+        FingerprintSpec spec,
+        ForkJoinPool pool,
+        SubProgressObserver po
+    ) {
+        final Stopwatch time = Stopwatch.createStarted();
+        final PackedFingerprints fp = new ParallelFingerprintGenerator(spec, pool).generate(molecules, po);
+        time.stop();
+
+        return new MolfileFingerprints(spec, fp, time.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Fingerprinted structure count.
+     *
+     * @return Structure count
+     */
+    public int size() {
+        return this.fingerprints.size();
+    }
+
+    /**
+     * Retrieve the packed fingerprints.
+     *
+     * The returned instance must not be modified.
+     *
+     * @return Fingerprint bits; row {@code i} belongs to structure {@code i}
+     */
+    public PackedFingerprints packed() {
+        return this.fingerprints;
+    }
+
+    /**
+     * Spec used for generation.
+     *
+     * @return Fingerprint spec
+     */
+    public FingerprintSpec spec() {
+        return this.spec;
+    }
+
+    /**
+     * Generation time.
+     *
+     * @return Generation time in milliseconds
+     */
+    public long getGenerationTime() {
+        return this.generationTime;
+    }
+
+    /**
+     * Approximate memory footprint.
+     *
+     * @return Approximate size in bytes
+     */
+    public long sizeInBytes() {
+        return this.fingerprints.sizeInBytes();
+    }
+
+    /**
+     * Expose as a clustering input.
+     *
+     * Dissimilarities are calculated on the fly from the stored fingerprints.
+     *
+     * @return Dissimilarity input view of these fingerprints
+     */
+    public DissimilarityInput asDissimilarityInput() {
+        return this.fingerprints.asDissimilarityInput();
+    }
+
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import com.chemaxon.clustering.common.HierarchicClustering;
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClusterBuidler;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Compact columnar binary representation of a clustering hierarchy.
+ *
+ * Clusters are stored in depth first preorder as parallel columns; leaves in the order of the preorder traversal where
+ * the immediate leaves of a cluster precede the leaves of its child clusters. The leaves of every subtree therefore
+ * form a contiguous range of the leaf order.
+ *
+ * <p>Layout, all values little endian:</p>
+ * <ul>
+ * <li>Header of 6 int32: {@link #MAGIC}, {@link #VERSION}, cluster count {@code C}, leaf count {@code L}, the
+ * ordinal of the preferred {@link HierarchicClustering.Alignment} and a reserved 0</li>
+ * <li>float64[C] cluster (merge) level</li>
+ * <li>int32[C] parent cluster index; -1 for roots</li>
+ * <li>int32[C] cluster ID</li>
+ * <li>int32[C] representant structure</li>
+ * <li>int32[C] immediate leaf count</li>
+ * <li>int32[L] leaf order (structure indices)</li>
+ * <li>Trailer: int64 elapsed time in ms, int32 byte length and the UTF-8 bytes of the algorithm description</li>
+ * </ul>
+ *
+ * <p>Every column starts at an offset aligned to its element size, so browsers can view it as a typed array without
+ * parsing. The same format is used to persist clusterings; levels are stored exactly. The builder of
+ * {@link #toClustering()} assigns its own cluster IDs, so hierarchies to persist are converted by
+ * {@link #canonical(IDBasedHierarchicClustering)} first: their IDs are then restored on loading.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class ColumnarHierarchy {
+
+    /**
+     * Format identifier, the bytes {@code JKH1} read as a little endian int32.
+     */
+    public static final int MAGIC = 0x31484B4A;
+
+    /**
+     * Format version.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Header length in bytes.
+     */
+    private static final int HEADER_BYTES = 24;
+
+    /**
+     * Size of the transfer buffer.
+     */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final HierarchicClustering.Alignment alignment;
+    private final int [] parent;
+    private final double [] level;
+    private final int [] clusterId;
+    private final int [] representant;
+    private final int [] leafCount;
+    private final int [] leafOrder;
+    private final long elapsedTime;
+    private final String algorithmDescription;
+
+    /**
+     * Construct from columns.
+     *
+     * @param alignment Preferred alignment
+     * @param parent Parent cluster index by cluster; -1 for roots. Parents must precede their children.
+     * @param level Cluster level by cluster
+     * @param clusterId Cluster ID by cluster
+     * @param representant Representant structure by cluster
+     * @param leafCount Immediate leaf count by cluster
+     * @param leafOrder Leaves in traversal order
+     * @param elapsedTime Elapsed time of the clustering in ms
+     * @param algorithmDescription Algorithm description
+     */
+    ColumnarHierarchy(
+        HierarchicClustering.Alignment alignment,
+        int [] parent,
+        double [] level,
+        int [] clusterId,
+        int [] representant,
+        int [] leafCount,
+        int [] leafOrder,
+        long elapsedTime,
+        String algorithmDescription
+    ) {
+        this.alignment = alignment;
+        this.parent = parent;
+        this.level = level;
+        this.clusterId = clusterId;
+        this.representant = representant;
+        this.leafCount = leafCount;
+        this.leafOrder = leafOrder;
+        this.elapsedTime = elapsedTime;
+        this.algorithmDescription = algorithmDescription;
+    }
+
+    /**
+     * Convert a clustering.
+     *
+     * @param clustering Clustering to convert
+     * @param index Index of the clustering
+     * @param elapsedTime Elapsed time of the clustering in ms
+     * @param algorithmDescription Algorithm description
+     * @return Columnar representation
+     */
+    public static ColumnarHierarchy of(
+        IDBasedHierarchicClustering clustering,
+        HierarchyIndex index,
+        long elapsedTime,
+        String algorithmDescription
+    ) {
+        final int c = index.size();
+        final int [] parent = new int[c];
+        final double [] level = new double[c];
+        final int [] clusterId = new int[c];
+        final int [] representant = new int[c];
+        final int [] leafCount = new int[c];
+        for (int n = 0; n < c; n++) {
+            final IDBasedHierarchicCluster cluster = index.getCluster(n);
+            parent[n] = index.getParent(n);
+            level[n] = index.getLevel(n);
+            clusterId[n] = cluster.getClusterID();
+            representant[n] = cluster.representant();
+            leafCount[n] = cluster.leaves().size();
+        }
+        return new ColumnarHierarchy(clustering.preferredAlignment(), parent, level, clusterId, representant,
+            leafCount, index.getLeafOrder(), elapsedTime, algorithmDescription);
+    }
+
+    /**
+     * Rebuild a hierarchy so that its cluster IDs are restored when persisted in this format.
+     *
+     * @param clustering Hierarchy to rebuild
+     * @return Equivalent hierarchy with cluster IDs assigned by the builder of {@link #toClustering()}
+     */
+    public static IDBasedHierarchicClustering canonical(IDBasedHierarchicClustering clustering) {
+        return of(clustering, new HierarchyIndex(clustering, clustering.getPreferredAssigner()), 0, "")
+            .toClustering();
+    }
+
+    /**
+     * Cluster count.
+     *
+     * @return Number of clusters
+     */
+    public int getClusterCount() {
+        return this.parent.length;
+    }
+
+    /**
+     * Leaf count.
+     *
+     * @return Number of leaves
+     */
+    public int getLeafCount() {
+        return this.leafOrder.length;
+    }
+
+    /**
+     * Elapsed time of the represented clustering.
+     *
+     * @return Elapsed time in ms
+     */
+    public long getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    /**
+     * Description of the represented clustering algorithm.
+     *
+     * @return Algorithm description
+     */
+    public String getAlgorithmDescription() {
+        return this.algorithmDescription;
+    }
+
+    /**
+     * Size of the binary representation.
+     *
+     * @return Byte count written by {@link #writeTo(java.io.OutputStream)}
+     */
+    public long sizeInBytes() {
+        return HEADER_BYTES + 24L * this.parent.length + 4L * this.leafOrder.length + 12
+            + this.algorithmDescription.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Build the represented hierarchy.
+     *
+     * Cluster IDs are assigned by the builder; they equal the stored ones when the represented hierarchy was built by
+     * {@link #canonical(IDBasedHierarchicClustering)}.
+     *
+     * @return Hierarchy
+     * @throws IllegalStateException when the stored cluster IDs can not be restored
+     */
+    public IDBasedHierarchicClustering toClustering() {
+        final IDBasedHierarchicClusterBuidler b = new IDBasedHierarchicClusterBuidler(this.alignment);
+        // builder cursor follows the preorder; move up to the parent of the next cluster
+        int current = -1;
+        for (int n = 0, l = 0; n < this.parent.length; n++) {
+            final int p = this.parent[n];
+            if (p < 0) {
+                while (current >= 0 && this.parent[current] >= 0) {
+                    b.parent();
+                    current = this.parent[current];
+                }
+                b.newRootCluster();
+            } else {
+                while (current != p) {
+                    b.parent();
+                    current = this.parent[current];
+                }
+                b.newChildCluster();
+            }
+            b.setLevel(this.level[n]).setRepresentant(this.representant[n]);
+            if (this.leafCount[n] > 0) {
+                b.addImmediateLeaves(Arrays.copyOfRange(this.leafOrder, l, l + this.leafCount[n]));
+                l += this.leafCount[n];
+            }
+            current = n;
+        }
+        final IDBasedHierarchicClustering ret = b.build();
+        checkClusterIds(ret.roots());
+        return ret;
+    }
+
+    /**
+     * Check that a built hierarchy has the stored cluster IDs.
+     *
+     * @param roots Roots of the built hierarchy
+     * @throws IllegalStateException when an ID differs
+     */
+    private void checkClusterIds(List<IDBasedHierarchicCluster> roots) {
+        // preorder traversal visits the clusters in the order of the columns
+        final Deque<IDBasedHierarchicCluster> stack = new ArrayDeque<>();
+        for (int i = roots.size() - 1; i >= 0; i--) {
+            stack.push(roots.get(i));
+        }
+        for (int n = 0; !stack.isEmpty(); n++) {
+            final IDBasedHierarchicCluster c = stack.pop();
+            if (c.getClusterID() != this.clusterId[n]) {
+                throw new IllegalStateException("Stored cluster ID " + this.clusterId[n] + " is rebuilt as "
+                    + c.getClusterID() + "; the hierarchy was not stored in canonical form");
+            }
+            final List<IDBasedHierarchicCluster> children = c.clusters();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * Write the binary representation.
+     *
+     * @param out Stream to write to; not closed
+     * @throws IOException on write failure
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final WritableByteChannel ch = Channels.newChannel(out);
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(this.parent.length).putInt(this.leafOrder.length)
+            .putInt(this.alignment.ordinal()).putInt(0);
+        for (double v : this.level) {
+            flushIfFull(ch, buf);
+            buf.putDouble(v);
+        }
+        writeInts(ch, buf, this.parent);
+        writeInts(ch, buf, this.clusterId);
+        writeInts(ch, buf, this.representant);
+        writeInts(ch, buf, this.leafCount);
+        writeInts(ch, buf, this.leafOrder);
+        final byte [] description = this.algorithmDescription.getBytes(StandardCharsets.UTF_8);
+        flushIfFull(ch, buf);
+        buf.putLong(this.elapsedTime).putInt(description.length);
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        out.write(description);
+        out.flush();
+    }
+
+    /**
+     * Read a binary representation.
+     *
+     * @param in Stream to read from; not closed. Might be read beyond the representation.
+     * @return Read representation
+     * @throws IOException on read failure or when the stream is not in this format
+     */
+    public static ColumnarHierarchy readFrom(InputStream in) throws IOException {
+        final ReadableByteChannel ch = Channels.newChannel(in);
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.flip();
+        fill(ch, buf, HEADER_BYTES);
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not a columnar hierarchy");
+        }
+        final int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported columnar hierarchy version " + version);
+        }
+        final int c = buf.getInt();
+        final int leaves = buf.getInt();
+        final HierarchicClustering.Alignment alignment = HierarchicClustering.Alignment.values()[buf.getInt()];
+        // reserved
+        buf.getInt();
+        final double [] level = new double[c];
+        for (int i = 0; i < c; i++) {
+            fill(ch, buf, 8);
+            level[i] = buf.getDouble();
+        }
+        final int [] parent = readInts(ch, buf, c);
+        final int [] clusterId = readInts(ch, buf, c);
+        final int [] representant = readInts(ch, buf, c);
+        final int [] leafCount = readInts(ch, buf, c);
+        final int [] leafOrder = readInts(ch, buf, leaves);
+        fill(ch, buf, 12);
+        final long elapsedTime = buf.getLong();
+        final ByteBuffer description = ByteBuffer.allocate(buf.getInt());
+        while (description.hasRemaining() && buf.hasRemaining()) {
+            description.put(buf.get());
+        }
+        while (description.hasRemaining()) {
+            if (ch.read(description) < 0) {
+                throw new EOFException("Unexpected end of columnar hierarchy");
+            }
+        }
+        return new ColumnarHierarchy(alignment, parent, level, clusterId, representant, leafCount, leafOrder,
+            elapsedTime, new String(description.array(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write an int column through the buffer.
+     *
+     * @param ch Channel to write to
+     * @param buf Buffer in write mode
+     * @param values Values to write
+     * @throws IOException on write failure
+     */
+    private static void writeInts(WritableByteChannel ch, ByteBuffer buf, int [] values) throws IOException {
+        for (int v : values) {
+            flushIfFull(ch, buf);
+            buf.putInt(v);
+        }
+    }
+
+    /**
+     * Empty the buffer when less than 16 bytes remain.
+     *
+     * @param ch Channel to write to
+     * @param buf Buffer in write mode
+     * @throws IOException on write failure
+     */
+    private static void flushIfFull(WritableByteChannel ch, ByteBuffer buf) throws IOException {
+        if (buf.remaining() < 16) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /**
+     * Read an int column through the buffer.
+     *
+     * @param ch Channel to read from
+     * @param buf Buffer in read mode
+     * @param count Number of values
+     * @return Read values
+     * @throws IOException on read failure
+     */
+    private static int [] readInts(ReadableByteChannel ch, ByteBuffer buf, int count) throws IOException {
+        final int [] ret = new int[count];
+        for (int i = 0; i < count; i++) {
+            fill(ch, buf, 4);
+            ret[i] = buf.getInt();
+        }
+        return ret;
+    }
+
+    /**
+     * Make sure the buffer holds enough unread bytes.
+     *
+     * @param ch Channel to read from
+     * @param buf Buffer in read mode
+     * @param bytes Bytes needed; must not exceed the buffer capacity
+     * @throws IOException on read failure
+     * @throws EOFException when the stream ends early
+     */
+    private static void fill(ReadableByteChannel ch, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() >= bytes) {
+            return;
+        }
+        buf.compact();
+        while (buf.position() < Math.min(bytes, buf.capacity())) {
+            if (ch.read(buf) < 0) {
+                throw new EOFException("Unexpected end of columnar hierarchy");
+            }
+        }
+        buf.flip();
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import java.util.Arrays;
+
+/**
+ * Precomputed index for cutting a hierarchy into a flat partition.
+ *
+ * Cutting at a level keeps every maximal subtree with a root level not above the cut level as a group; the immediate
+ * leaves of clusters above the cut level become singletons.
+ *
+ * <p>Every cluster merges its immediate leaves and child clusters, so merging it reduces the group count by its
+ * descendant count minus one. Clusters sorted by level with the prefix sums of these reductions give the cluster count
+ * of any level by binary search, and the smallest level reaching a target count the same way. Clusters are kept in
+ * preorder with the leaves in traversal order, so the members of each group form a contiguous range and a cut is
+ * produced in a single linear pass without visiting the original hierarchy.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class CutIndex {
+
+    private final int [] parent;
+    private final double [] level;
+    private final int [] representant;
+    private final int [] immediateLeafCount;
+    private final int [] leafOrder;
+
+    /**
+     * First leaf order position of the subtree by cluster.
+     */
+    private final int [] leafStart;
+
+    /**
+     * Leaf count of the subtree by cluster.
+     */
+    private final int [] subtreeLeafCount;
+
+    /**
+     * Distinct cluster levels, ascending.
+     */
+    private final double [] levels;
+
+    /**
+     * Group count after merging all clusters up to the level of the same index.
+     */
+    private final int [] counts;
+
+    /**
+     * Construct from preorder columns.
+     *
+     * @param parent Parent cluster by cluster; -1 for roots. Parents must precede their children.
+     * @param level Cluster level by cluster
+     * @param representant Representant structure by cluster
+     * @param immediateLeafCount Immediate leaf count by cluster
+     * @param leafOrder Leaves in traversal order: immediate leaves of a cluster followed by its child subtrees
+     */
+    CutIndex(int [] parent, double [] level, int [] representant, int [] immediateLeafCount, int [] leafOrder) {
+        final int c = parent.length;
+        this.parent = parent;
+        this.level = level;
+        this.representant = representant;
+        this.immediateLeafCount = immediateLeafCount;
+        this.leafOrder = leafOrder;
+        this.leafStart = new int[c];
+        this.subtreeLeafCount = new int[c];
+
+        final int [] descendants = new int[c];
+        for (int n = 0, offset = 0; n < c; n++) {
+            this.leafStart[n] = offset;
+            offset += immediateLeafCount[n];
+            this.subtreeLeafCount[n] = immediateLeafCount[n];
+            descendants[n] = immediateLeafCount[n];
+            if (parent[n] >= 0) {
+                descendants[parent[n]]++;
+            }
+        }
+        for (int n = c - 1; n >= 0; n--) {
+            if (parent[n] >= 0) {
+                this.subtreeLeafCount[parent[n]] += this.subtreeLeafCount[n];
+            }
+        }
+
+        // merge reductions in ascending level order, collapsed to distinct levels
+        final Integer [] order = new Integer[c];
+        for (int n = 0; n < c; n++) {
+            order[n] = n;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(level[a], level[b]));
+        final double [] lv = new double[c];
+        final int [] cnt = new int[c];
+        int distinct = 0;
+        int groups = leafOrder.length;
+        for (int i = 0; i < c; i++) {
+            final int n = order[i];
+            groups -= Math.max(0, descendants[n] - 1);
+            if (distinct > 0 && lv[distinct - 1] == level[n]) {
+                cnt[distinct - 1] = groups;
+            } else {
+                lv[distinct] = level[n];
+                cnt[distinct] = groups;
+                distinct++;
+            }
+        }
+        this.levels = Arrays.copyOf(lv, distinct);
+        this.counts = Arrays.copyOf(cnt, distinct);
+    }
+
+    /**
+     * Build from a hierarchy index.
+     *
+     * @param index Index of the hierarchy
+     * @return Cut index
+     */
+    public static CutIndex of(HierarchyIndex index) {
+        final int c = index.size();
+        final int [] parent = new int[c];
+        final double [] level = new double[c];
+        final int [] representant = new int[c];
+        final int [] immediateLeafCount = new int[c];
+        for (int n = 0; n < c; n++) {
+            final IDBasedHierarchicCluster cluster = index.getCluster(n);
+            parent[n] = index.getParent(n);
+            level[n] = index.getLevel(n);
+            representant[n] = cluster.representant();
+            immediateLeafCount[n] = cluster.leaves().size();
+        }
+        return new CutIndex(parent, level, representant, immediateLeafCount, index.getLeafOrder());
+    }
+
+    /**
+     * Number of leaves.
+     *
+     * @return Leaf count; the group count below the lowest cluster level
+     */
+    public int getLeafCount() {
+        return this.leafOrder.length;
+    }
+
+    /**
+     * Distinct cluster levels.
+     *
+     * @return Levels in ascending order
+     */
+    public double [] getLevels() {
+        return this.levels.clone();
+    }
+
+    /**
+     * Group counts of the distinct cluster levels.
+     *
+     * @return Group count of a cut at the level of the same index in {@link #getLevels()}
+     */
+    public int [] getClusterCounts() {
+        return this.counts.clone();
+    }
+
+    /**
+     * Group count of a cut.
+     *
+     * @param cutLevel Cut level
+     * @return Number of groups
+     */
+    public int clusterCount(double cutLevel) {
+        int lo = 0;
+        int hi = this.levels.length;
+        // first level above the cut
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (this.levels[mid] <= cutLevel) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == 0 ? this.leafOrder.length : this.counts[lo - 1];
+    }
+
+    /**
+     * Lowest cut level reaching a group count.
+     *
+     * @param count Max number of groups
+     * @return Lowest cluster level where the group count is at most the given one; negative infinity when the leaf
+     * count is not above it
+     * @throws IllegalArgumentException when the count is not reachable
+     */
+    public double levelForCount(int count) {
+        if (count >= this.leafOrder.length) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        // counts are non increasing
+        int lo = 0;
+        int hi = this.counts.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (this.counts[mid] > count) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == this.counts.length) {
+            throw new IllegalArgumentException("Cluster count " + count + " not reachable; min is "
+                + (this.counts.length == 0 ? this.leafOrder.length : this.counts[this.counts.length - 1]));
+        }
+        return this.levels[lo];
+    }
+
+    /**
+     * Cut the hierarchy.
+     *
+     * @param cutLevel Cut level
+     * @return Groups in hierarchy order
+     */
+    public Cut cut(double cutLevel) {
+        final int c = this.parent.length;
+        // clusters inside a kept subtree are skipped
+        final boolean [] covered = new boolean[c];
+        final int [] groupStart = new int[this.leafOrder.length + 1];
+        final int [] groupRepresentant = new int[this.leafOrder.length];
+        final int [] members = new int[this.leafOrder.length];
+        int groups = 0;
+        int m = 0;
+        for (int n = 0; n < c; n++) {
+            final int p = this.parent[n];
+            if (p >= 0 && (covered[p] || this.level[p] <= cutLevel)) {
+                covered[n] = true;
+                continue;
+            }
+            if (this.level[n] <= cutLevel) {
+                groupStart[groups] = m;
+                groupRepresentant[groups++] = this.representant[n];
+                System.arraycopy(this.leafOrder, this.leafStart[n], members, m, this.subtreeLeafCount[n]);
+                m += this.subtreeLeafCount[n];
+            } else {
+                for (int l = this.leafStart[n]; l < this.leafStart[n] + this.immediateLeafCount[n]; l++) {
+                    groupStart[groups] = m;
+                    groupRepresentant[groups++] = this.leafOrder[l];
+                    members[m++] = this.leafOrder[l];
+                }
+            }
+        }
+        groupStart[groups] = m;
+        return new Cut(
+            Arrays.copyOf(groupStart, groups + 1), Arrays.copyOf(groupRepresentant, groups), members, cutLevel);
+    }
+
+    /**
+     * Flat partition of a hierarchy.
+     */
+    public static final class Cut {
+
+        /**
+         * Start of each group in {@link #members}, followed by the member count.
+         */
+        private final int [] groupStart;
+
+        /**
+         * Representant by group.
+         */
+        private final int [] representant;
+
+        /**
+         * Group members, grouped.
+         */
+        private final int [] members;
+
+        /**
+         * Cut level.
+         */
+        private final double level;
+
+        /**
+         * Construct.
+         *
+         * @param groupStart Start of each group in members, followed by the member count
+         * @param representant Representant by group
+         * @param members Group members, grouped
+         * @param level Cut level
+         */
+        Cut(int [] groupStart, int [] representant, int [] members, double level) {
+            this.groupStart = groupStart;
+            this.representant = representant;
+            this.members = members;
+            this.level = level;
+        }
+
+        /**
+         * Cut level.
+         *
+         * @return Level the hierarchy was cut at
+         */
+        public double getLevel() {
+            return this.level;
+        }
+
+        /**
+         * Number of groups.
+         *
+         * @return Group count
+         */
+        public int getGroupCount() {
+            return this.representant.length;
+        }
+
+        /**
+         * Representant of a group.
+         *
+         * @param group Group index
+         * @return Representant structure; the representant of the kept cluster or the structure of a singleton
+         */
+        public int getRepresentant(int group) {
+            return this.representant[group];
+        }
+
+        /**
+         * Members of a group.
+         *
+         * @param group Group index
+         * @return Member structures
+         */
+        public int [] getMembers(int group) {
+            return Arrays.copyOfRange(this.members, this.groupStart[group], this.groupStart[group + 1]);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Dendrogram layout of a hierarchy, rendered as a pyramid of square tiles.
+ *
+ * The layout is computed once in a unit square: roots are on the left, cluster x coordinates are proportional to their
+ * levels and leaves are stacked vertically in dendrogram order on the right with label space after them. At zoom
+ * level {@code z} the square is {@code tileSize * 2^z} pixels wide and high, cut into {@code 2^z} by {@code 2^z}
+ * tiles.
+ *
+ * <p>Clusters are kept in preorder with the leaves in traversal order, so every subtree covers a contiguous vertical
+ * band. Rendering a tile skips subtrees outside of the tile and draws subtrees thinner than a pixel as a single line,
+ * so the work of a tile is proportional to its visible detail, not to the size of the hierarchy.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class DendrogramLayout {
+
+    /**
+     * Horizontal position of the lowest clusters.
+     */
+    private static final double CLUSTERS_RIGHT = 0.85;
+
+    /**
+     * Horizontal position of the leaves; labels are placed to their right.
+     */
+    private static final double LEAVES_X = 0.9;
+
+    /**
+     * Leaf height in pixels at the deepest zoom level.
+     */
+    private static final int MAX_LEAF_PIXELS = 16;
+
+    /**
+     * Min leaf height in pixels for labels to be drawn.
+     */
+    private static final int LABEL_LEAF_PIXELS = 10;
+
+    /**
+     * Upper bound of the zoom levels.
+     */
+    private static final int ZOOM_LIMIT = 20;
+
+    private final int [] immediateLeafCount;
+    private final int [] leafOrder;
+
+    /**
+     * Node count of the subtree by cluster.
+     */
+    private final int [] subtreeSize;
+
+    /**
+     * First leaf order position of the subtree by cluster.
+     */
+    private final int [] leafStart;
+
+    /**
+     * Leaf count of the subtree by cluster.
+     */
+    private final int [] subtreeLeafCount;
+
+    /**
+     * Horizontal position by cluster, in the unit square.
+     */
+    private final double [] x;
+
+    /**
+     * Leftmost horizontal position of the subtree by cluster, in the unit square.
+     */
+    private final double [] subtreeX;
+
+    /**
+     * Vertical position by cluster, in leaf units.
+     */
+    private final double [] y;
+
+    /**
+     * Vertical position of the first child by cluster, in leaf units.
+     */
+    private final double [] firstChildY;
+
+    /**
+     * Vertical position of the last child by cluster, in leaf units.
+     */
+    private final double [] lastChildY;
+
+    /**
+     * Deepest zoom level.
+     */
+    private final int maxZoom;
+
+    /**
+     * Construct from preorder columns.
+     *
+     * @param parent Parent cluster by cluster; -1 for roots. Parents must precede their children.
+     * @param level Cluster level by cluster
+     * @param immediateLeafCount Immediate leaf count by cluster
+     * @param leafOrder Leaves in traversal order: immediate leaves of a cluster followed by its child subtrees
+     */
+    DendrogramLayout(int [] parent, double [] level, int [] immediateLeafCount, int [] leafOrder) {
+        final int c = parent.length;
+        this.immediateLeafCount = immediateLeafCount;
+        this.leafOrder = leafOrder;
+        this.subtreeSize = new int[c];
+        this.leafStart = new int[c];
+        this.subtreeLeafCount = new int[c];
+        this.x = new double[c];
+        this.subtreeX = new double[c];
+        this.y = new double[c];
+        this.firstChildY = new double[c];
+        this.lastChildY = new double[c];
+
+        double minLevel = Double.POSITIVE_INFINITY;
+        double maxLevel = Double.NEGATIVE_INFINITY;
+        for (int n = 0, offset = 0; n < c; n++) {
+            this.leafStart[n] = offset;
+            offset += immediateLeafCount[n];
+            minLevel = Math.min(minLevel, level[n]);
+            maxLevel = Math.max(maxLevel, level[n]);
+        }
+        final double span = maxLevel - minLevel;
+        for (int n = 0; n < c; n++) {
+            this.x[n] = span > 0 ? CLUSTERS_RIGHT * (maxLevel - level[n]) / span : CLUSTERS_RIGHT;
+            this.subtreeX[n] = this.x[n];
+            this.subtreeSize[n] = 1;
+            this.subtreeLeafCount[n] = immediateLeafCount[n];
+        }
+
+        // children follow their parents in preorder; aggregate bottom up
+        for (int n = c - 1; n >= 0; n--) {
+            final int leaves = immediateLeafCount[n];
+            if (leaves > 0) {
+                this.firstChildY[n] = this.leafStart[n] + 0.5;
+                if (this.subtreeSize[n] == 1) {
+                    this.lastChildY[n] = this.leafStart[n] + leaves - 0.5;
+                }
+            } else if (this.subtreeSize[n] == 1) {
+                this.firstChildY[n] = this.leafStart[n];
+                this.lastChildY[n] = this.leafStart[n];
+            }
+            this.y[n] = (this.firstChildY[n] + this.lastChildY[n]) / 2;
+
+            final int p = parent[n];
+            if (p >= 0) {
+                // the first visited child of the parent in reverse preorder is its last child
+                if (this.subtreeSize[p] == 1) {
+                    this.lastChildY[p] = this.y[n];
+                }
+                if (immediateLeafCount[p] == 0) {
+                    this.firstChildY[p] = this.y[n];
+                }
+                this.subtreeSize[p] += this.subtreeSize[n];
+                this.subtreeLeafCount[p] += this.subtreeLeafCount[n];
+                this.subtreeX[p] = Math.min(this.subtreeX[p], this.subtreeX[n]);
+            }
+        }
+
+        final long pixels = (long) Math.max(1, leafOrder.length) * MAX_LEAF_PIXELS;
+        int z = 0;
+        while (z < ZOOM_LIMIT && (256L << z) < pixels) {
+            z++;
+        }
+        this.maxZoom = z;
+    }
+
+    /**
+     * Build from a hierarchy index.
+     *
+     * @param index Index of the hierarchy
+     * @return Layout
+     */
+    public static DendrogramLayout of(HierarchyIndex index) {
+        final int c = index.size();
+        final int [] parent = new int[c];
+        final double [] level = new double[c];
+        final int [] immediateLeafCount = new int[c];
+        for (int n = 0; n < c; n++) {
+            parent[n] = index.getParent(n);
+            level[n] = index.getLevel(n);
+            immediateLeafCount[n] = index.getCluster(n).leaves().size();
+        }
+        return new DendrogramLayout(parent, level, immediateLeafCount, index.getLeafOrder());
+    }
+
+    /**
+     * Deepest zoom level.
+     *
+     * A leaf is at least {@value #MAX_LEAF_PIXELS} pixels high on 256 pixel tiles at this level, unless the level is
+     * limited to {@value #ZOOM_LIMIT}.
+     *
+     * @return Max zoom level
+     */
+    public int getMaxZoom() {
+        return this.maxZoom;
+    }
+
+    /**
+     * Horizontal position of a cluster.
+     *
+     * @param node Cluster in preorder
+     * @return Position in the unit square
+     */
+    public double getX(int node) {
+        return this.x[node];
+    }
+
+    /**
+     * Vertical position of a cluster.
+     *
+     * @param node Cluster in preorder
+     * @return Position in leaf units; leaf order position {@code p} is centered at {@code p + 0.5}
+     */
+    public double getY(int node) {
+        return this.y[node];
+    }
+
+    /**
+     * Render a tile.
+     *
+     * @param z Zoom level
+     * @param tx Tile column
+     * @param ty Tile row
+     * @param tileSize Tile width and height in pixels
+     * @return Rendered tile
+     * @throws IllegalArgumentException when the tile is outside of the pyramid
+     */
+    public BufferedImage renderTile(int z, int tx, int ty, int tileSize) {
+        if (z < 0 || z > this.maxZoom) {
+            throw new IllegalArgumentException("Zoom level " + z + " not in [0, " + this.maxZoom + "]");
+        }
+        if (tx < 0 || ty < 0 || tx >= (1 << z) || ty >= (1 << z)) {
+            throw new IllegalArgumentException("Tile " + tx + ", " + ty + " not in zoom level " + z);
+        }
+        final BufferedImage ret = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = ret.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, tileSize, tileSize);
+            g.setColor(Color.BLACK);
+            new Tile(g, z, tx, ty, tileSize).paint();
+        } finally {
+            g.dispose();
+        }
+        return ret;
+    }
+
+    /**
+     * Painting of a single tile.
+     */
+    private final class Tile {
+
+        private final Graphics2D g;
+
+        /**
+         * Width and height of the whole layout in pixels.
+         */
+        private final double world;
+
+        /**
+         * Pixel per leaf.
+         */
+        private final double leafPixels;
+
+        /**
+         * Left of the tile in layout pixels.
+         */
+        private final double left;
+
+        /**
+         * Top of the tile in layout pixels.
+         */
+        private final double top;
+
+        /**
+         * First leaf order position touching the tile.
+         */
+        private final int firstLeaf;
+
+        /**
+         * Leaf order position after the last one touching the tile.
+         */
+        private final int lastLeaf;
+
+        private final int tileSize;
+
+        Tile(Graphics2D g, int z, int tx, int ty, int tileSize) {
+            this.g = g;
+            this.tileSize = tileSize;
+            this.world = (double) tileSize * (1L << z);
+            this.leafPixels = this.world / Math.max(1, leafOrder.length);
+            this.left = (double) tx * tileSize;
+            this.top = (double) ty * tileSize;
+            this.firstLeaf = (int) Math.max(0, Math.floor(this.top / this.leafPixels) - 1);
+            this.lastLeaf = (int) Math.min(leafOrder.length, Math.ceil((this.top + tileSize) / this.leafPixels) + 1);
+        }
+
+        private int px(double ux) {
+            return (int) Math.floor(ux * this.world - this.left);
+        }
+
+        private int py(double leafY) {
+            return (int) Math.floor(leafY * this.leafPixels - this.top);
+        }
+
+        private boolean visible(int start, int count) {
+            return start < this.lastLeaf && start + count > this.firstLeaf;
+        }
+
+        void paint() {
+            final int c = subtreeSize.length;
+            final boolean labels = this.leafPixels >= LABEL_LEAF_PIXELS;
+            if (labels) {
+                this.g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, (int) Math.min(this.leafPixels * 0.7, 14)));
+            }
+            int n = 0;
+            while (n < c) {
+                if (!visible(leafStart[n], subtreeLeafCount[n]) || px(subtreeX[n]) >= this.tileSize) {
+                    n += subtreeSize[n];
+                    continue;
+                }
+                final int xn = px(x[n]);
+                if (subtreeLeafCount[n] * this.leafPixels < 1) {
+                    // thinner than a pixel; the whole subtree is a single line
+                    this.g.drawLine(xn, py(y[n]), px(LEAVES_X), py(y[n]));
+                    n += subtreeSize[n];
+                    continue;
+                }
+
+                // horizontal lines to the visible immediate leaves, at most one per pixel row
+                final int leaves = immediateLeafCount[n];
+                final int lFrom = Math.max(leafStart[n], this.firstLeaf);
+                final int lTo = Math.min(leafStart[n] + leaves, this.lastLeaf);
+                int drawn = Integer.MIN_VALUE;
+                for (int l = lFrom; l < lTo; l++) {
+                    final int yl = py(l + 0.5);
+                    if (yl == drawn) {
+                        continue;
+                    }
+                    drawn = yl;
+                    this.g.drawLine(xn, yl, px(LEAVES_X), yl);
+                    if (labels) {
+                        this.g.drawString(Integer.toString(leafOrder[l]), px(LEAVES_X) + 3,
+                            (int) (yl + this.leafPixels * 0.3));
+                    }
+                }
+
+                // horizontal lines to the visible child clusters
+                for (int k = n + 1; k < n + subtreeSize[n] && leafStart[k] < this.lastLeaf; k += subtreeSize[k]) {
+                    if (visible(leafStart[k], subtreeLeafCount[k])) {
+                        this.g.drawLine(xn, py(y[k]), px(x[k]), py(y[k]));
+                    }
+                }
+
+                // vertical line spanning all children, clipped to the tile
+                final int yFirst = Math.max(py(firstChildY[n]), -1);
+                final int yLast = Math.min(py(lastChildY[n]), this.tileSize);
+                if (yFirst <= yLast) {
+                    this.g.drawLine(xn, yFirst, xn, yLast);
+                }
+                n++;
+            }
+        }
+    }
+}
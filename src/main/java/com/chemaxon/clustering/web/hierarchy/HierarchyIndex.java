@@ -0,0 +1,322 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import com.chemaxon.clustering.common.IDBasedAssigner;
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+/**
+ * Flattened, immutable index of a clustering hierarchy.
+ *
+ * Clusters are numbered as nodes in depth first preorder; every subtree is a contiguous node range starting at its
+ * root. For each node the parent, the subtree leaf count and the min/max cluster level of the subtree are stored, so
+ * collapsed subtrees can be summarized in constant time. Cluster IDs are mapped to nodes by a dense array.
+ *
+ * <p>Leaves are stored in dendrogram order: the immediate leaves of each node in preorder. The leaves of a subtree
+ * are a contiguous range starting at {@link #getLeafStart(int)} of length {@link #getLeafCount(int)}, so membership
+ * and member listing of any cluster are array slices.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class HierarchyIndex {
+
+    /**
+     * Clusters by node.
+     */
+    private final IDBasedHierarchicCluster [] clusters;
+
+    /**
+     * Parent node by node; -1 for roots.
+     */
+    private final int [] parent;
+
+    /**
+     * Node count of the subtree by node, including the node itself.
+     */
+    private final int [] subtreeSize;
+
+    /**
+     * Leaf count of the subtree by node.
+     */
+    private final int [] leafCount;
+
+    /**
+     * Cluster level by node.
+     */
+    private final double [] level;
+
+    /**
+     * Lowest cluster level in the subtree by node.
+     */
+    private final double [] minLevel;
+
+    /**
+     * Highest cluster level in the subtree by node.
+     */
+    private final double [] maxLevel;
+
+    /**
+     * Node by cluster ID; -1 for unused IDs.
+     */
+    private final int [] nodeOfId;
+
+    /**
+     * Root nodes.
+     */
+    private final int [] roots;
+
+    /**
+     * First position of the subtree leaves in {@link #leafOrder} by node.
+     */
+    private final int [] leafStart;
+
+    /**
+     * Leaves in dendrogram order.
+     */
+    private final int [] leafOrder;
+
+    /**
+     * Build the index.
+     *
+     * @param clustering Hierarchy to index
+     * @param assigner Level assigner
+     */
+    public HierarchyIndex(IDBasedHierarchicClustering clustering, IDBasedAssigner assigner) {
+        // count clusters first to allocate exact arrays
+        int count = 0;
+        final Deque<IDBasedHierarchicCluster> stack = new ArrayDeque<>();
+        for (IDBasedHierarchicCluster r : clustering.roots()) {
+            stack.push(r);
+        }
+        while (!stack.isEmpty()) {
+            count++;
+            for (IDBasedHierarchicCluster c : stack.pop().clusters()) {
+                stack.push(c);
+            }
+        }
+
+        this.clusters = new IDBasedHierarchicCluster[count];
+        this.parent = new int[count];
+        this.subtreeSize = new int[count];
+        this.leafCount = new int[count];
+        this.level = new double[count];
+        this.minLevel = new double[count];
+        this.maxLevel = new double[count];
+        this.nodeOfId = new int[clustering.getMaxClusterID() + 1];
+        Arrays.fill(this.nodeOfId, -1);
+        this.roots = new int[clustering.roots().size()];
+
+        // preorder numbering; children are pushed in reverse to keep their order
+        final Deque<Integer> parents = new ArrayDeque<>();
+        for (int i = clustering.roots().size() - 1; i >= 0; i--) {
+            stack.push(clustering.roots().get(i));
+            parents.push(-1);
+        }
+        int node = 0;
+        int rootIndex = 0;
+        while (!stack.isEmpty()) {
+            final IDBasedHierarchicCluster c = stack.pop();
+            final int p = parents.pop();
+            if (p < 0) {
+                this.roots[rootIndex++] = node;
+            }
+            this.clusters[node] = c;
+            this.parent[node] = p;
+            this.subtreeSize[node] = 1;
+            this.leafCount[node] = c.leaves().size();
+            this.level[node] = assigner.clusterLevel(c);
+            this.minLevel[node] = this.level[node];
+            this.maxLevel[node] = this.level[node];
+            this.nodeOfId[c.getClusterID()] = node;
+            final Object [] children = c.clusters().toArray();
+            for (int i = children.length - 1; i >= 0; i--) {
+                stack.push((IDBasedHierarchicCluster) children[i]);
+                parents.push(node);
+            }
+            node++;
+        }
+
+        // immediate leaves in preorder; subtree leaves are contiguous
+        this.leafStart = new int[count];
+        int leaves = 0;
+        for (int n = 0; n < count; n++) {
+            this.leafStart[n] = leaves;
+            leaves += this.leafCount[n];
+        }
+        this.leafOrder = new int[leaves];
+        for (int n = 0, l = 0; n < count; n++) {
+            for (int leaf : this.clusters[n].leaves()) {
+                this.leafOrder[l++] = leaf;
+            }
+        }
+
+        // children follow their parents in preorder; aggregate bottom up
+        for (int n = count - 1; n >= 0; n--) {
+            final int p = this.parent[n];
+            if (p >= 0) {
+                this.subtreeSize[p] += this.subtreeSize[n];
+                this.leafCount[p] += this.leafCount[n];
+                this.minLevel[p] = Math.min(this.minLevel[p], this.minLevel[n]);
+                this.maxLevel[p] = Math.max(this.maxLevel[p], this.maxLevel[n]);
+            }
+        }
+    }
+
+    /**
+     * Number of indexed clusters.
+     *
+     * @return Node count
+     */
+    public int size() {
+        return this.clusters.length;
+    }
+
+    /**
+     * Root nodes.
+     *
+     * @return Root nodes in hierarchy order
+     */
+    public int [] getRoots() {
+        return this.roots.clone();
+    }
+
+    /**
+     * Look up a cluster.
+     *
+     * @param clusterId Cluster ID
+     * @return Node of the cluster
+     * @throws NoSuchElementException when no cluster has the given ID
+     */
+    public int nodeOf(int clusterId) {
+        if (clusterId < 0 || clusterId >= this.nodeOfId.length || this.nodeOfId[clusterId] < 0) {
+            throw new NoSuchElementException("Cluster " + clusterId + " not found");
+        }
+        return this.nodeOfId[clusterId];
+    }
+
+    /**
+     * Cluster of a node.
+     *
+     * @param node Node
+     * @return Cluster
+     */
+    public IDBasedHierarchicCluster getCluster(int node) {
+        return this.clusters[node];
+    }
+
+    /**
+     * Parent of a node.
+     *
+     * @param node Node
+     * @return Parent node or -1 for roots
+     */
+    public int getParent(int node) {
+        return this.parent[node];
+    }
+
+    /**
+     * Node count of a subtree; the subtree occupies nodes {@code node} to {@code node + getSubtreeSize(node) - 1}.
+     *
+     * @param node Subtree root node
+     * @return Node count including the root
+     */
+    public int getSubtreeSize(int node) {
+        return this.subtreeSize[node];
+    }
+
+    /**
+     * Leaf count of a subtree.
+     *
+     * @param node Subtree root node
+     * @return Number of leaves under the node
+     */
+    public int getLeafCount(int node) {
+        return this.leafCount[node];
+    }
+
+    /**
+     * Level of a cluster.
+     *
+     * @param node Node
+     * @return Cluster level
+     */
+    public double getLevel(int node) {
+        return this.level[node];
+    }
+
+    /**
+     * Lowest cluster level of a subtree.
+     *
+     * @param node Subtree root node
+     * @return Min cluster level
+     */
+    public double getMinLevel(int node) {
+        return this.minLevel[node];
+    }
+
+    /**
+     * Highest cluster level of a subtree.
+     *
+     * @param node Subtree root node
+     * @return Max cluster level
+     */
+    public double getMaxLevel(int node) {
+        return this.maxLevel[node];
+    }
+
+    /**
+     * First position of the subtree leaves in dendrogram order.
+     *
+     * @param node Subtree root node
+     * @return Position of the first leaf; the immediate leaves of the node come first
+     */
+    public int getLeafStart(int node) {
+        return this.leafStart[node];
+    }
+
+    /**
+     * All leaves in dendrogram order.
+     *
+     * @return Immediate leaves of the nodes in preorder
+     */
+    public int [] getLeafOrder() {
+        return this.leafOrder.clone();
+    }
+
+    /**
+     * Page of the leaves of a subtree in dendrogram order.
+     *
+     * @param node Subtree root node
+     * @param offset Number of leaves to skip
+     * @param limit Max number of leaves to return
+     * @return Leaves; empty when the offset is beyond the subtree
+     * @throws IllegalArgumentException when offset or limit is negative
+     */
+    public int [] getLeaves(int node, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Invalid page offset " + offset + ", limit " + limit);
+        }
+        final int from = Math.min(this.leafCount[node], offset);
+        final int to = (int) Math.min(this.leafCount[node], (long) from + limit);
+        return Arrays.copyOfRange(this.leafOrder, this.leafStart[node] + from, this.leafStart[node] + to);
+    }
+}
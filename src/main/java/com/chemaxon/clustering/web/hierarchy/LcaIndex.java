@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import java.util.Arrays;
+
+/**
+ * Constant time lowest common ancestor queries of a clustering hierarchy.
+ *
+ * Built on the preorder numbering of {@link HierarchyIndex}, which is the Euler tour of the clusters with the returns
+ * to the parents omitted: for distinct clusters {@code u} and {@code v} with {@code u} preceding {@code v} the lowest
+ * common ancestor is the parent of the shallowest cluster in the preorder range {@code (u, v]}. The shallowest
+ * clusters of all power of two ranges are kept in a sparse table, so a query is two table lookups. This needs half
+ * the table of a full Euler tour.
+ *
+ * <p>The cophenetic distance of two structures is the level of the lowest cluster containing both.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class LcaIndex {
+
+    /**
+     * Parent by cluster; -1 for roots.
+     */
+    private final int [] parent;
+
+    /**
+     * Level by cluster.
+     */
+    private final double [] level;
+
+    /**
+     * Depth by cluster; 0 for roots.
+     */
+    private final int [] depth;
+
+    /**
+     * Root by cluster.
+     */
+    private final int [] root;
+
+    /**
+     * Cluster holding each leaf as immediate leaf; -1 for unused leaf IDs.
+     */
+    private final int [] leafCluster;
+
+    /**
+     * Shallowest cluster of the preorder range {@code [i, i + 2^k)} at {@code [k][i]}.
+     */
+    private final int [][] table;
+
+    /**
+     * Construct from preorder columns.
+     *
+     * @param parent Parent cluster by cluster; -1 for roots. Clusters must be in preorder.
+     * @param level Level by cluster
+     * @param leafCluster Cluster holding each leaf as immediate leaf by leaf ID; -1 for unused leaf IDs
+     */
+    LcaIndex(int [] parent, double [] level, int [] leafCluster) {
+        final int c = parent.length;
+        this.parent = parent;
+        this.level = level;
+        this.leafCluster = leafCluster;
+        this.depth = new int[c];
+        this.root = new int[c];
+        for (int n = 0; n < c; n++) {
+            final int p = parent[n];
+            this.depth[n] = p < 0 ? 0 : this.depth[p] + 1;
+            this.root[n] = p < 0 ? n : this.root[p];
+        }
+
+        final int levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(c));
+        this.table = new int[levels][];
+        this.table[0] = new int[c];
+        for (int n = 0; n < c; n++) {
+            this.table[0][n] = n;
+        }
+        for (int k = 1; k < levels; k++) {
+            final int half = 1 << (k - 1);
+            final int [] prev = this.table[k - 1];
+            final int [] cur = new int[Math.max(0, c - (1 << k) + 1)];
+            for (int i = 0; i < cur.length; i++) {
+                cur[i] = shallower(prev[i], prev[i + half]);
+            }
+            this.table[k] = cur;
+        }
+    }
+
+    /**
+     * Build from a hierarchy index.
+     *
+     * @param index Index of the hierarchy
+     * @return LCA index
+     */
+    public static LcaIndex of(HierarchyIndex index) {
+        final int c = index.size();
+        final int [] parent = new int[c];
+        final double [] level = new double[c];
+        int maxLeaf = -1;
+        for (int n = 0; n < c; n++) {
+            parent[n] = index.getParent(n);
+            level[n] = index.getLevel(n);
+            for (int leaf : index.getCluster(n).leaves()) {
+                maxLeaf = Math.max(maxLeaf, leaf);
+            }
+        }
+        final int [] leafCluster = new int[maxLeaf + 1];
+        Arrays.fill(leafCluster, -1);
+        for (int n = 0; n < c; n++) {
+            for (int leaf : index.getCluster(n).leaves()) {
+                leafCluster[leaf] = n;
+            }
+        }
+        return new LcaIndex(parent, level, leafCluster);
+    }
+
+    /**
+     * Select the shallower of two clusters.
+     *
+     * @param a First cluster
+     * @param b Second cluster
+     * @return Cluster with the lower depth; the first one on ties
+     */
+    private int shallower(int a, int b) {
+        return this.depth[b] < this.depth[a] ? b : a;
+    }
+
+    /**
+     * Number of leaf IDs covered.
+     *
+     * @return Max leaf ID plus one
+     */
+    public int getLeafIdCount() {
+        return this.leafCluster.length;
+    }
+
+    /**
+     * Cluster holding a leaf as immediate leaf.
+     *
+     * @param leaf Leaf ID
+     * @return Cluster index in preorder
+     * @throws IllegalArgumentException when the leaf is not in the hierarchy
+     */
+    public int clusterOf(int leaf) {
+        if (leaf < 0 || leaf >= this.leafCluster.length || this.leafCluster[leaf] < 0) {
+            throw new IllegalArgumentException("Leaf " + leaf + " not found");
+        }
+        return this.leafCluster[leaf];
+    }
+
+    /**
+     * Lowest common ancestor of two clusters.
+     *
+     * @param a First cluster index in preorder
+     * @param b Second cluster index in preorder
+     * @return Lowest common ancestor cluster or -1 when the clusters are in different roots
+     */
+    public int lca(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        if (this.root[a] != this.root[b]) {
+            return -1;
+        }
+        final int u = Math.min(a, b);
+        final int v = Math.max(a, b);
+        // shallowest cluster of (u, v]
+        final int from = u + 1;
+        final int k = 31 - Integer.numberOfLeadingZeros(v - from + 1);
+        return this.parent[shallower(this.table[k][from], this.table[k][v - (1 << k) + 1])];
+    }
+
+    /**
+     * Lowest common ancestor of two leaves.
+     *
+     * @param a First leaf ID
+     * @param b Second leaf ID
+     * @return Lowest cluster containing both leaves or -1 when the leaves are in different roots
+     * @throws IllegalArgumentException when a leaf is not in the hierarchy
+     */
+    public int lcaOfLeaves(int a, int b) {
+        return lca(clusterOf(a), clusterOf(b));
+    }
+
+    /**
+     * Cophenetic distance of two leaves.
+     *
+     * @param a First leaf ID
+     * @param b Second leaf ID
+     * @return Level of the lowest cluster containing both; 0 for the same leaf, {@link Double#NaN} when the leaves are
+     * in different roots
+     * @throws IllegalArgumentException when a leaf is not in the hierarchy
+     */
+    public double cophenetic(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        final int l = lcaOfLeaves(a, b);
+        return l < 0 ? Double.NaN : this.level[l];
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.progress;
+
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the progress of an operation consisting of sequential stages.
+ *
+ * Stages are created when the operation enters them; work reported to a stage is recorded with a contended-friendly
+ * counter so reporting from hot loops and from multiple threads is cheap. Rate and ETA are derived on demand when the
+ * state is queried.
+ *
+ * <p>The tracker also carries the cancellation state of the operation. Stages report cancellation through
+ * {@link SubProgressObserver#isCancelled()} once {@link #cancel(java.lang.String)} was invoked or the deadline passed;
+ * calculations are expected to poll it at block granularity and abandon their work with a
+ * {@link CancellationException}.</p>
+ *
+ * @author Gabor Imre
+ */
+public final class ProgressTracker {
+
+    /**
+     * Stages in creation order.
+     */
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+    /**
+     * Set when the tracked operation is finished.
+     */
+    private volatile boolean finished;
+
+    /**
+     * Cancellation reason; {@code null} while not cancelled.
+     */
+    private volatile String cancelReason;
+
+    /**
+     * Deadline from {@link System#nanoTime()}; only valid when {@link #hasDeadline} is set.
+     */
+    private volatile long deadlineNanos;
+
+    /**
+     * Set when a deadline is specified.
+     */
+    private volatile boolean hasDeadline;
+
+    /**
+     * Start a new stage.
+     *
+     * @param name Stage name
+     * @return Observer to pass to the stage calculation
+     */
+    public Stage stage(String name) {
+        final Stage ret = new Stage(this, name);
+        this.stages.add(ret);
+        return ret;
+    }
+
+    /**
+     * Current stages.
+     *
+     * @return Stages in creation order
+     */
+    public List<Stage> getStages() {
+        return ImmutableList.copyOf(this.stages);
+    }
+
+    /**
+     * Mark the tracked operation finished.
+     */
+    public void finish() {
+        this.finished = true;
+    }
+
+    /**
+     * Check if the tracked operation is finished.
+     *
+     * @return {@code true} when {@link #finish()} was invoked
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Request cancellation.
+     *
+     * Has no effect when already cancelled.
+     *
+     * @param reason Reason to report
+     */
+    public synchronized void cancel(String reason) {
+        if (this.cancelReason == null) {
+            this.cancelReason = reason;
+        }
+    }
+
+    /**
+     * Set a deadline after which the operation is considered cancelled.
+     *
+     * @param timeout Time allowed from now
+     * @param unit Unit of timeout
+     */
+    public void setDeadline(long timeout, TimeUnit unit) {
+        this.deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        this.hasDeadline = true;
+    }
+
+    /**
+     * Check if the operation is cancelled.
+     *
+     * Cheap enough to be polled from calculation blocks.
+     *
+     * @return {@code true} when cancellation was requested or the deadline passed
+     */
+    public boolean isCancelled() {
+        if (this.cancelReason != null) {
+            return true;
+        }
+        if (this.hasDeadline && System.nanoTime() - this.deadlineNanos >= 0) {
+            cancel("Deadline exceeded");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reason of cancellation.
+     *
+     * @return Reason or {@code null} when not cancelled
+     */
+    public String getCancelReason() {
+        return isCancelled() ? this.cancelReason : null;
+    }
+
+    /**
+     * Abandon the operation when cancelled.
+     *
+     * Meant to be invoked between stages and after library calls which might return early on cancellation.
+     *
+     * @throws CancellationException when cancelled
+     */
+    public void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException(this.cancelReason);
+        }
+    }
+
+    /**
+     * A single stage of the tracked operation.
+     */
+    public static final class Stage implements SubProgressObserver {
+
+        /**
+         * Owning tracker.
+         */
+        private final ProgressTracker tracker;
+
+        /**
+         * Stage name.
+         */
+        private final String name;
+
+        /**
+         * Start time from {@link System#nanoTime()}.
+         */
+        private final long startNanos;
+
+        /**
+         * Work units done.
+         */
+        private final LongAdder worked = new LongAdder();
+
+        /**
+         * Total work units; negative when indeterminate.
+         */
+        private volatile long totalWork = -1;
+
+        /**
+         * Finish time from {@link System#nanoTime()}; zero while running.
+         */
+        private volatile long doneNanos;
+
+        /**
+         * Construct.
+         *
+         * @param tracker Owning tracker
+         * @param name Stage name
+         */
+        Stage(ProgressTracker tracker, String name) {
+            this.tracker = tracker;
+            this.name = name;
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void switchToIndeterminate() {
+            this.totalWork = -1;
+        }
+
+        @Override
+        public void switchToDeterminate(long totalWork) {
+            this.totalWork = totalWork;
+        }
+
+        @Override
+        public void worked(long work) {
+            this.worked.add(work);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.tracker.isCancelled();
+        }
+
+        @Override
+        public void done() {
+            if (this.doneNanos == 0) {
+                this.doneNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void close() {
+            done();
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Total work.
+         *
+         * @return Total work units or a negative value when indeterminate
+         */
+        public long getTotalWork() {
+            return this.totalWork;
+        }
+
+        /**
+         * Work done.
+         *
+         * @return Work units done so far
+         */
+        public long getWorked() {
+            return this.worked.sum();
+        }
+
+        /**
+         * Check if the stage is finished.
+         *
+         * @return {@code true} when {@link #done()} was invoked
+         */
+        public boolean isDone() {
+            return this.doneNanos != 0;
+        }
+
+        /**
+         * Elapsed time.
+         *
+         * @return Time spent in this stage in milliseconds
+         */
+        public long getElapsedTime() {
+            final long end = this.doneNanos != 0 ? this.doneNanos : System.nanoTime();
+            return TimeUnit.NANOSECONDS.toMillis(end - this.startNanos);
+        }
+
+        /**
+         * Average processing rate.
+         *
+         * @return Work units per second; zero when no time elapsed yet
+         */
+        public double getRate() {
+            final long end = this.doneNanos != 0 ? this.doneNanos : System.nanoTime();
+            final long nanos = end - this.startNanos;
+            return nanos <= 0 ? 0 : getWorked() * 1e9 / nanos;
+        }
+
+        /**
+         * Estimated remaining time based on the average rate.
+         *
+         * @return Remaining time in milliseconds; zero when done, negative when unknown
+         */
+        public long getEta() {
+            if (isDone()) {
+                return 0;
+            }
+            final long total = this.totalWork;
+            final double rate = getRate();
+            if (total < 0 || rate <= 0) {
+                return -1;
+            }
+            return Math.round(Math.max(0, total - getWorked()) * 1000 / rate);
+        }
+    }
+}
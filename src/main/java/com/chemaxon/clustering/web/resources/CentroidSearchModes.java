@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.resources;
+
+import com.chemaxon.clustering.web.algorithms.NearestCentroidSearch;
+
+/**
+ * Applicable nearest centroid search modes.
+ *
+ * Declared constants are directly used by the REST API resource implementation as query parameters.
+ *
+ * @author Gabor Imre
+ */
+public enum CentroidSearchModes {
+    bruteforce {
+        @Override
+        public NearestCentroidSearch.Mode getMode() {
+            return NearestCentroidSearch.Mode.BRUTE_FORCE;
+        }
+    }, bitbound {
+        @Override
+        public NearestCentroidSearch.Mode getMode() {
+            return NearestCentroidSearch.Mode.BIT_BOUND;
+        }
+    };
+
+    public abstract NearestCentroidSearch.Mode getMode();
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.resources;
+
+import com.chemaxon.clustering.web.entities.Clustering;
+import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.chemaxon.clustering.web.services.ClusteringService;
+
+/**
+ * Applicable hierarchic clustering engines.
+ *
+ * Declared constants are directly used by the REST API resource implementation as query parameters.
+ *
+ * @author Gabor Imre
+ */
+public enum ClusteringEngines {
+    /**
+     * Generic Lance-Williams implementation.
+     */
+    lancewilliams {
+        @Override
+        public Clustering invoke(
+            ClusteringService service,
+            LanceWilliamsAlgorithms algorithm,
+            Molfile molfile,
+            String idSuggestion,
+            ProgressTracker progress
+        ) {
+            return service.invokeLanceWilliams(molfile, algorithm.getMerge(), idSuggestion, progress);
+        }
+    },
+    /**
+     * Nearest neighbor chain engine; quadratic time for all supported algorithms.
+     */
+    nnchain {
+        @Override
+        public Clustering invoke(
+            ClusteringService service,
+            LanceWilliamsAlgorithms algorithm,
+            Molfile molfile,
+            String idSuggestion,
+            ProgressTracker progress
+        ) {
+            return service.invokeNearestNeighborChain(molfile, algorithm.getLinkage(), idSuggestion, progress);
+        }
+    },
+    /**
+     * Minimum spanning tree engine with linear memory; single linkage only.
+     */
+    mst {
+        @Override
+        public Clustering invoke(
+            ClusteringService service,
+            LanceWilliamsAlgorithms algorithm,
+            Molfile molfile,
+            String idSuggestion,
+            ProgressTracker progress
+        ) {
+            if (algorithm != LanceWilliamsAlgorithms.singlelinkage) {
+                throw new IllegalArgumentException(
+                    "Engine " + this + " supports single linkage only, not " + algorithm);
+            }
+            return service.invokeSingleLinkage(molfile, idSuggestion, progress);
+        }
+    };
+
+    /**
+     * Execute the clustering.
+     *
+     * @param service Service executing the clustering
+     * @param algorithm Algorithm to use
+     * @param molfile Structures to be clustered
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report to
+     * @return Executed clustering
+     */
+    public abstract Clustering invoke(
+        ClusteringService service,
+        LanceWilliamsAlgorithms algorithm,
+        Molfile molfile,
+        String idSuggestion,
+        ProgressTracker progress
+    );
+}
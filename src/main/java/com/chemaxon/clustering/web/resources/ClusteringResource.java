@@ -16,26 +16,53 @@
  */
 package com.chemaxon.clustering.web.resources;
 
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.web.algorithms.CopheneticCorrelation;
+import com.chemaxon.clustering.web.application.Cached;
+import com.chemaxon.clustering.web.dto.ClusterMembersInfo;
 import com.chemaxon.clustering.web.dto.ClusteringInfo;
 import com.chemaxon.clustering.web.dto.ClusteringsInfo;
+import com.chemaxon.clustering.web.dto.CopheneticCorrelationInfo;
+import com.chemaxon.clustering.web.dto.CopheneticInfo;
+import com.chemaxon.clustering.web.dto.CutCurveInfo;
 import com.chemaxon.clustering.web.dto.Deleted;
 import com.chemaxon.clustering.web.dto.HierarchicClustering;
+import com.chemaxon.clustering.web.dto.HierarchicClusteringWriter;
+import com.chemaxon.clustering.web.dto.TilesInfo;
 import com.chemaxon.clustering.web.entities.Clustering;
+import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.hierarchy.ColumnarHierarchy;
+import com.chemaxon.clustering.web.hierarchy.CutIndex;
+import com.chemaxon.clustering.web.hierarchy.HierarchyIndex;
+import com.chemaxon.clustering.web.hierarchy.LcaIndex;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
 import com.chemaxon.clustering.web.services.ClusteringService;
+import com.chemaxon.clustering.web.services.ImageCache;
+import com.chemaxon.clustering.web.services.MolfilesService;
+import com.chemaxon.clustering.web.services.ProgressService;
+import com.chemaxon.clustering.web.services.TileService;
 import com.chemaxon.clustering.cli.DetailedClusteringRendering;
 import com.google.common.base.Function;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.chemaxon.calculations.common.ProgressObservers;
 import java.io.IOException;
 
 
@@ -51,9 +78,26 @@ import java.io.IOException;
 @Path("/clusterings")
 public class ClusteringResource {
 
+    /**
+     * Width of the cluster area of the whole hierarchy image in pixels.
+     */
+    private static final int HIERARCHY_IMAGE_CLUSTER_AREA = 800;
+
     @Autowired
     private ClusteringService clusteringService;
 
+    @Autowired
+    private ProgressService progressService;
+
+    @Autowired
+    private MolfilesService molfilesService;
+
+    @Autowired
+    private TileService tileService;
+
+    @Autowired
+    private ImageCache imageCache;
+
 
     /**
      * List available clusterings.
@@ -80,35 +124,294 @@ public class ClusteringResource {
     /**
      * Get clustering hierarchy description.
      *
+     * The representation of {@link HierarchicClustering} is streamed directly from the clustering. When a root or a
+     * depth is specified only the subtree of the root down to the given depth is written; clusters at the depth limit
+     * are summarized by their leaf count and level range. Cost is proportional to the returned part.
+     *
      * @param clustering Clustering
+     * @param rootId ID of the cluster to start from; all roots when not specified
+     * @param depth Expanded levels below the starting cluster(s); unlimited when not specified
      * @return Hierarchic description
      */
     @GET
+    @Cached
     @Path("{clustering}/hierarchy")
     @Produces(MediaType.APPLICATION_JSON)
-    public HierarchicClustering getHierarchicClustering(
+    public StreamingOutput getHierarchicClustering(
+            @PathParam("clustering") Clustering clustering,
+            @QueryParam("root") Integer rootId,
+            @QueryParam("depth") Integer depth
+    ) {
+        final String id = this.clusteringService.getClusteringId(clustering);
+        final String url = "/rest/clusterings/" + id;
+        if (rootId == null && depth == null) {
+            return new HierarchicClusteringWriter(
+                    clustering.getClustering(),
+                    clustering.getAssigner(),
+                    id,
+                    url,
+                    clustering.getElapsedTime(),
+                    clustering.getAlgorithmDescription());
+        }
+        if (depth != null && depth < 0) {
+            throw new IllegalArgumentException("Invalid depth specified: " + depth);
+        }
+
+        final HierarchyIndex index = clustering.getHierarchyIndex();
+        final List<IDBasedHierarchicCluster> roots = rootId == null
+                ? clustering.getClustering().roots()
+                : ImmutableList.of(index.getCluster(index.nodeOf(rootId)));
+        return new HierarchicClusteringWriter(
+                roots,
+                index,
+                depth == null ? Integer.MAX_VALUE : depth,
+                clustering.getAssigner(),
+                id,
+                url,
+                clustering.getElapsedTime(),
+                clustering.getAlgorithmDescription());
+    }
+
+    
+    /**
+     * Get clustering hierarchy in the compact columnar binary format.
+     *
+     * See {@link ColumnarHierarchy} for the layout.
+     *
+     * @param clustering Clustering
+     * @return Binary hierarchy
+     */
+    @GET
+    @Cached
+    @Path("{clustering}/hierarchy-binary")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public StreamingOutput getHierarchyBinary(
             @PathParam("clustering") Clustering clustering
     ) {
-    final HierarchicClustering ret = new HierarchicClustering();
-        ret.setClustering(clustering.getClustering(), clustering.getAssigner());
+        final ColumnarHierarchy ret = ColumnarHierarchy.of(
+                clustering.getClustering(),
+                clustering.getHierarchyIndex(),
+                clustering.getElapsedTime(),
+                clustering.getAlgorithmDescription());
+        return ret::writeTo;
+    }
 
-        ret.algorithmDescription = clustering.getAlgorithmDescription();
-        ret.elapsedTime = clustering.getElapsedTime();
+
+    /**
+     * Get the cluster count of hierarchy cuts for each distinct level.
+     *
+     * Served from the precomputed cut index of the clustering.
+     *
+     * @param clustering Clustering
+     * @return Level to cluster count curve
+     */
+    @GET
+    @Cached
+    @Path("{clustering}/cut-curve")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CutCurveInfo getCutCurve(
+            @PathParam("clustering") Clustering clustering
+    ) {
+        final CutIndex index = clustering.getCutIndex();
+        final CutCurveInfo ret = new CutCurveInfo();
         ret.id = this.clusteringService.getClusteringId(clustering);
         ret.url = "/rest/clusterings/" + ret.id;
+        ret.leafCount = index.getLeafCount();
+        ret.levels = index.getLevels();
+        ret.clusterCounts = index.getClusterCounts();
+        return ret;
+    }
+
+
+    /**
+     * Get a page of the members of a cluster.
+     *
+     * Members are the leaves of the subtree of the cluster in dendrogram order; served as a slice of the hierarchy
+     * index.
+     *
+     * @param clustering Clustering
+     * @param clusterId Cluster ID
+     * @param offset Number of members to skip
+     * @param limit Max number of members to return
+     * @return Members page
+     */
+    @GET
+    @Cached
+    @Path("{clustering}/clusters/{cluster}/members")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ClusterMembersInfo getClusterMembers(
+            @PathParam("clustering") Clustering clustering,
+            @PathParam("cluster") int clusterId,
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("limit") @DefaultValue("1000") int limit
+    ) {
+        final HierarchyIndex index = clustering.getHierarchyIndex();
+        final int node = index.nodeOf(clusterId);
 
+        final ClusterMembersInfo ret = new ClusterMembersInfo();
+        ret.id = this.clusteringService.getClusteringId(clustering);
+        ret.url = "/rest/clusterings/" + ret.id;
+        ret.clusterId = clusterId;
+        ret.size = index.getLeafCount(node);
+        ret.offset = offset;
+        ret.members = index.getLeaves(node, offset, limit);
         return ret;
     }
 
-    
+
+    /**
+     * Get the cophenetic distance of two structures.
+     *
+     * Served from the lowest common ancestor index of the clustering in constant time.
+     *
+     * @param clustering Clustering
+     * @param a First structure index
+     * @param b Second structure index
+     * @return Cophenetic distance
+     */
     @GET
+    @Path("{clustering}/cophenetic")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CopheneticInfo getCopheneticDistance(
+            @PathParam("clustering") Clustering clustering,
+            @QueryParam("a") Integer a,
+            @QueryParam("b") Integer b
+    ) {
+        if (a == null || b == null) {
+            throw new IllegalArgumentException("Both structures a and b must be specified");
+        }
+        final LcaIndex lca = clustering.getLcaIndex();
+        final int node = lca.lcaOfLeaves(a, b);
+
+        final CopheneticInfo ret = new CopheneticInfo();
+        ret.id = this.clusteringService.getClusteringId(clustering);
+        ret.url = "/rest/clusterings/" + ret.id;
+        ret.a = a;
+        ret.b = b;
+        ret.distance = lca.cophenetic(a, b);
+        ret.lcaClusterId = node < 0 ? -1 : clustering.getHierarchyIndex().getCluster(node).getClusterID();
+        return ret;
+    }
+
+    /**
+     * Calculate the cophenetic correlation of a clustering.
+     *
+     * @param clustering Clustering
+     * @param molfileId Clustered structures providing the dissimilarities
+     * @return Correlation
+     */
+    @POST
+    @Path("{clustering}/cophenetic-correlation")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public CopheneticCorrelationInfo getCopheneticCorrelation(
+            @PathParam("clustering") Clustering clustering,
+            @FormParam("molfile") String molfileId
+    ) {
+        if (molfileId == null) {
+            throw new IllegalArgumentException("No molfile specified");
+        }
+        final Molfile molfile = this.molfilesService.getMolfile(molfileId);
+        final String id = this.clusteringService.getClusteringId(clustering);
+
+        // progress is tracked only while the request is served
+        final ProgressTracker progress = new ProgressTracker();
+        final String progressId = this.progressService.register("cophenetic-" + id, progress);
+        try {
+            final Stopwatch time = Stopwatch.createStarted();
+            final CopheneticCorrelation cc = this.clusteringService.copheneticCorrelation(
+                    clustering, molfile, progress);
+
+            final CopheneticCorrelationInfo ret = new CopheneticCorrelationInfo();
+            ret.id = id;
+            ret.url = "/rest/clusterings/" + id;
+            ret.molfile = molfileId;
+            ret.correlation = cc.getCorrelation();
+            ret.pairs = cc.getPairs();
+            ret.elapsedTime = time.elapsed(TimeUnit.MILLISECONDS);
+            return ret;
+        } finally {
+            progress.finish();
+            this.progressService.unregister(progressId);
+        }
+    }
+
+
+    /**
+     * Describe the dendrogram tile pyramid of a clustering.
+     *
+     * @param clustering Clustering
+     * @return Pyramid description
+     */
+    @GET
+    @Path("{clustering}/tiles")
+    @Produces(MediaType.APPLICATION_JSON)
+    public TilesInfo getTilesInfo(
+            @PathParam("clustering") Clustering clustering
+    ) {
+        final TilesInfo ret = new TilesInfo();
+        ret.id = this.clusteringService.getClusteringId(clustering);
+        ret.url = "/rest/clusterings/" + ret.id;
+        ret.tileUrl = ret.url + "/tiles/{z}/{x}/{y}.png";
+        ret.tileSize = TileService.TILE_SIZE;
+        ret.maxZoom = clustering.getDendrogramLayout().getMaxZoom();
+        return ret;
+    }
+
+    /**
+     * Get a dendrogram tile.
+     *
+     * The layout is computed once per clustering; tiles are rendered on demand and kept in a disk backed cache.
+     *
+     * @param clustering Clustering
+     * @param z Zoom level
+     * @param x Tile column
+     * @param y Tile row
+     * @return Tile in PNG format
+     */
+    @GET
+    @Path("{clustering}/tiles/{z}/{x}/{y}.png")
+    @Produces("image/png")
+    public byte [] getTile(
+            @PathParam("clustering") Clustering clustering,
+            @PathParam("z") int z,
+            @PathParam("x") int x,
+            @PathParam("y") int y
+    ) {
+        return this.tileService.getTile(clustering, z, x, y);
+    }
+
+
+    /**
+     * Render the whole hierarchy as one image.
+     *
+     * Rendered images are kept in the {@link ImageCache}, so the response cache records their ETags only.
+     *
+     * @param clustering Clustering
+     * @return Image in PNG format
+     * @throws IOException propagated from the rendering
+     */
+    @GET
+    @Cached(content = false)
     @Path("{clustering}/hierarchy-image")
     @Produces("image/png")
     public byte[] getClusteringHierarchyAsPng(
             @PathParam("clustering") Clustering clustering
     ) throws IOException {
+        return this.imageCache.get(clustering, 0, HIERARCHY_IMAGE_CLUSTER_AREA, 0, "levelAware",
+            () -> renderHierarchyImage(clustering));
+    }
+
+    /**
+     * Render the whole hierarchy as one PNG image.
+     *
+     * @param clustering Clustering
+     * @return Image in PNG format
+     * @throws IOException propagated from the rendering
+     */
+    private byte[] renderHierarchyImage(Clustering clustering) throws IOException {
         final DetailedClusteringRendering rendering = new DetailedClusteringRendering(clustering.getClustering())
-                .levelAware(800, clustering.getAssigner());
+                .levelAware(HIERARCHY_IMAGE_CLUSTER_AREA, clustering.getAssigner());
         /*
                 .leafImageSize(of(10, 10))
                 .leafImage((leafid, renderer, area) -> renderer
@@ -119,10 +422,17 @@ public class ClusteringResource {
                 )
                 .writeToPngImage(out, outpo);
         */
+        // rendering progress is tracked only while the image is rendered
+        final ProgressTracker progress = new ProgressTracker();
+        final String progressId = this.progressService.register(
+                "render-" + this.clusteringService.getClusteringId(clustering), progress);
         try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            rendering.writeToPngImage(baos, ProgressObservers.nullProgressObserver());
+            rendering.writeToPngImage(baos, progress.stage("Rendering"));
             return baos.toByteArray();
-        } 
+        } finally {
+            progress.finish();
+            this.progressService.unregister(progressId);
+        }
     }
     
     
@@ -16,6 +16,7 @@
  */
 package com.chemaxon.clustering.web.resources;
 
+import com.chemaxon.clustering.web.application.Cached;
 import com.chemaxon.clustering.web.dto.Deleted;
 import com.chemaxon.clustering.web.dto.GroupingInfo;
 import com.chemaxon.clustering.web.dto.GroupingsInfo;
@@ -64,6 +65,7 @@ public class GroupingResource {
      * @return Details
      */
     @GET
+    @Cached
     @Path("{grouping}/all")
     @Produces(MediaType.APPLICATION_JSON)
     public NonhierarchicClustering getGrouping(
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.resources;
+
+import com.chemaxon.clustering.web.application.Status;
+import com.chemaxon.clustering.web.dto.JobInfo;
+import com.chemaxon.clustering.web.dto.JobsInfo;
+import com.chemaxon.clustering.web.entities.Job;
+import com.chemaxon.clustering.web.services.GroupingService;
+import com.chemaxon.clustering.web.services.JobService;
+import com.chemaxon.clustering.web.services.MolfilesService;
+import java.util.stream.Collectors;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * REST API endpoints for launching calculations in the background and tracking them.
+ *
+ * Launch endpoints accept the same parameters as their counterparts in {@link LaunchClusteringResource} and
+ * {@link LaunchGroupingResource} but return immediately with {@code 202 ACCEPTED} and the submitted job. Referenced
+ * molfiles and groupings are checked on submission; other parameters are validated when the job is executed. Results
+ * are registered as usual and referenced by {@link JobInfo#resultUrl} when the job succeeds.
+ *
+ * <p>Every launch endpoint accepts an optional {@code timeout} in seconds; a job exceeding it is cancelled. Jobs can also
+ * be cancelled explicitly by {@code DELETE}.</p>
+ *
+ * @author Gabor Imre
+ */
+@Component
+@Path("/jobs")
+public class JobsResource {
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private MolfilesService molfilesService;
+
+    @Autowired
+    private GroupingService groupingService;
+
+    @Autowired
+    private LaunchClusteringResource launchClusteringResource;
+
+    @Autowired
+    private LaunchGroupingResource launchGroupingResource;
+
+    /**
+     * List known jobs.
+     *
+     * @return List of known jobs
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JobsInfo listJobs() {
+        final JobsInfo ret = new JobsInfo();
+        ret.jobs = this.jobService.getAllJobs().values().stream().map(this::jobInfo).collect(Collectors.toList());
+        return ret;
+    }
+
+    /**
+     * Current state of a job.
+     *
+     * @param job Job to describe
+     * @return Description
+     */
+    @GET
+    @Path("{job}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JobInfo jobInfo(
+            @PathParam("job") Job job
+    ) {
+        final JobInfo ret = new JobInfo();
+        ret.id = this.jobService.getJobId(job);
+        ret.url = "/rest/jobs/" + ret.id;
+        ret.description = job.getDescription();
+        ret.state = job.getState().name();
+        ret.submitTime = job.getSubmitTime();
+        ret.startTime = job.getStartTime();
+        ret.finishTime = job.getFinishTime();
+        ret.resultUrl = job.getResultUrl();
+        ret.error = job.getError();
+        ret.progressUrl = "/rest/progress/" + ret.id;
+        return ret;
+    }
+
+    /**
+     * Cancel a job.
+     *
+     * A queued job is cancelled immediately; a running job stops when its calculation notices the request, which is
+     * reflected by a later state query. Finished jobs are not affected; they are kept.
+     *
+     * @param job Job to cancel
+     * @return Description after requesting cancellation
+     */
+    @DELETE
+    @Path("{job}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JobInfo cancelJob(
+            @PathParam("job") Job job
+    ) {
+        this.jobService.cancel(job);
+        return jobInfo(job);
+    }
+
+    /**
+     * Submit Lance-Williams clustering on a molfile.
+     *
+     * @param molfileId Structures to cluster
+     * @param algorithm Algorithm to use
+     * @param engine Engine executing the algorithm
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchClusteringResource#invokeLanceWilliamsOnMolfile(java.lang.String, LanceWilliamsAlgorithms,
+     * ClusteringEngines, long)
+     */
+    @POST
+    @Path("launch-clustering/invoke-lance-williams-on-molfile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitLanceWilliamsOnMolfile(
+            @FormParam("molfile") String molfileId,
+            @FormParam("algorithm") @DefaultValue("wards") LanceWilliamsAlgorithms algorithm,
+            @FormParam("engine") @DefaultValue("lancewilliams") ClusteringEngines engine,
+            @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        return jobInfo(this.jobService.submit(
+            "Lance-Williams " + algorithm + " clustering of " + molfileId + " by " + engine,
+            timeout,
+            progress -> this.launchClusteringResource.invokeLanceWilliamsOnMolfile(
+                molfileId, algorithm, engine, progress).url));
+    }
+
+    /**
+     * Submit two-stage clustering on a molfile.
+     *
+     * @param molfileId Structures to cluster
+     * @param algorithm Algorithm to use on the representatives
+     * @param radius Dissimilarity radius of representative selection
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchClusteringResource#invokeTwoStageOnMolfile(java.lang.String, LanceWilliamsAlgorithms, double,
+     * long)
+     */
+    @POST
+    @Path("launch-clustering/invoke-two-stage-on-molfile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitTwoStageOnMolfile(
+            @FormParam("molfile") String molfileId,
+            @FormParam("algorithm") @DefaultValue("wards") LanceWilliamsAlgorithms algorithm,
+            @FormParam("radius") @DefaultValue("0.4") double radius,
+            @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        return jobInfo(this.jobService.submit(
+            "Two-stage " + algorithm + " clustering of " + molfileId + " with radius " + radius,
+            timeout,
+            progress -> this.launchClusteringResource.invokeTwoStageOnMolfile(
+                molfileId, algorithm, radius, progress).url));
+    }
+
+    /**
+     * Submit random clustering.
+     *
+     * @param molfileId Structures to cluster
+     * @param count Max cluster count
+     * @param resnameSuggestion Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchGroupingResource#invokRandomClusteringOnMolfile(java.lang.String, int, java.lang.String)
+     */
+    @POST
+    @Path("launch-grouping/invoke-random-clustering-on-molfile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitRandomClusteringOnMolfile(
+            @FormParam("molfile") String molfileId,
+            @FormParam("count") @DefaultValue("10") int count,
+            @FormParam("resname") String resnameSuggestion,
+            @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        return jobInfo(this.jobService.submit(
+            "Random clustering of " + molfileId + " into " + count + " clusters",
+            timeout,
+            progress -> this.launchGroupingResource.invokRandomClusteringOnMolfile(
+                molfileId, count, resnameSuggestion).url));
+    }
+
+    /**
+     * Submit random selection.
+     *
+     * @param molfileId Structures to cluster
+     * @param count Max element count to select
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchGroupingResource#invokRandomSelectionOnMolfile(java.lang.String, int, java.lang.String)
+     */
+    @POST
+    @Path("launch-grouping/invoke-random-selection-on-molfile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitRandomSelectionOnMolfile(
+            @FormParam("molfile") String molfileId,
+            @FormParam("count") @DefaultValue("100") int count,
+            @FormParam("resname") String resnameSuggestion,
+            @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        return jobInfo(this.jobService.submit(
+            "Random selection of " + count + " from " + molfileId,
+            timeout,
+            progress -> this.launchGroupingResource.invokRandomSelectionOnMolfile(
+                molfileId, count, resnameSuggestion).url));
+    }
+
+    /**
+     * Submit sphere exclusion centroid filtering.
+     *
+     * @param molfileId Associated molfile
+     * @param groupingId Source grouping where members refer to the associated molfile
+     * @param groupIndex Group index from the source grouping
+     * @param radius A dissimilarity radius
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchGroupingResource#invokeSphexCentroidFiltering(java.lang.String, java.lang.String, int, double,
+     *      java.lang.String, long)
+     */
+    @POST
+    @Path("launch-grouping/invoke-sphex-centroid-filtering")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitSphexCentroidFiltering(
+        @FormParam("molfile") String molfileId,
+        @FormParam("grouping") String groupingId,
+        @FormParam("groupindex") @DefaultValue("0") int groupIndex,
+        @FormParam("radius") @DefaultValue("0.1") double radius,
+        @FormParam("resname") String resnameSuggestion,
+        @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        checkGrouping(groupingId);
+        return jobInfo(this.jobService.submit(
+            "Sphere exclusion centroid filtering of " + groupingId + ":" + groupIndex + " with radius " + radius,
+            timeout,
+            progress -> this.launchGroupingResource.invokeSphexCentroidFiltering(
+                molfileId, groupingId, groupIndex, radius, resnameSuggestion, progress).url));
+    }
+
+    /**
+     * Submit sphere exclusion clustering.
+     *
+     * @param molfileId Structures to cluster
+     * @param mode Clustering mode
+     * @param radius Dissimilarity radius for fixed mode
+     * @param minCount Min cluster count for adaptive mode
+     * @param maxCount Max cluster count for adaptive mode
+     * @param maxRadius Max dissimilarity radius for adaptive mode
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchGroupingResource#invokeSphexClustering(java.lang.String, SphexModes, double, int, int, double,
+     *      java.lang.String, long)
+     */
+    @POST
+    @Path("launch-grouping/invoke-sphex-clustering")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitSphexClustering(
+        @FormParam("molfile") String molfileId,
+        @FormParam("mode") @DefaultValue("fixed") SphexModes mode,
+        @FormParam("radius") @DefaultValue("0.4") double radius,
+        @FormParam("mincount") @DefaultValue("5") int minCount,
+        @FormParam("maxcount") @DefaultValue("10") int maxCount,
+        @FormParam("maxradius") @DefaultValue("0.6") double maxRadius,
+        @FormParam("resname") String resnameSuggestion,
+        @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        return jobInfo(this.jobService.submit(
+            "Sphere exclusion clustering (" + mode + ") of " + molfileId,
+            timeout,
+            progress -> this.launchGroupingResource.invokeSphexClustering(
+                molfileId, mode, radius, minCount, maxCount, maxRadius, resnameSuggestion, progress).url));
+    }
+
+    /**
+     * Submit nearest neighbor association.
+     *
+     * @param molfileId Associated molfile
+     * @param groupingId Source grouping where members refer to the associated molfile; memebers will be used as centroids
+     * @param groupIndex Group index from the source grouping
+     * @param search Centroid search mode; all modes give the same assignments
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Submitted job
+     * @see LaunchGroupingResource#invokeNearestNeighborAssociation(java.lang.String, java.lang.String, int,
+     *      CentroidSearchModes, java.lang.String, long)
+     */
+    @POST
+    @Path("launch-grouping/invoke-nearest-neighbor-association")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Status(Status.ACCEPTED) // on success override 200 OK with 202 ACCEPTED by StatusFilter
+    public JobInfo submitNearestNeighborAssociation(
+        @FormParam("molfile") String molfileId,
+        @FormParam("grouping") String groupingId,
+        @FormParam("groupindex") @DefaultValue("0") int groupIndex,
+        @FormParam("search") @DefaultValue("bitbound") CentroidSearchModes search,
+        @FormParam("resname") String resnameSuggestion,
+        @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        checkMolfile(molfileId);
+        checkGrouping(groupingId);
+        return jobInfo(this.jobService.submit(
+            "Nearest neighbor association of " + molfileId + " by " + groupingId + ":" + groupIndex,
+            timeout,
+            progress -> this.launchGroupingResource.invokeNearestNeighborAssociation(
+                molfileId, groupingId, groupIndex, search, resnameSuggestion, progress).url));
+    }
+
+    /**
+     * Check that a referenced molfile exists.
+     *
+     * @param molfileId Molfile ID
+     * @throws IllegalArgumentException when no ID specified
+     * @throws java.util.NoSuchElementException when ID not found
+     */
+    private void checkMolfile(String molfileId) {
+        if (molfileId == null) {
+            throw new IllegalArgumentException("No molfile specified");
+        }
+        this.molfilesService.getMolfile(molfileId);
+    }
+
+    /**
+     * Check that a referenced grouping exists.
+     *
+     * @param groupingId Grouping ID
+     * @throws IllegalArgumentException when no ID specified
+     * @throws java.util.NoSuchElementException when ID not found
+     */
+    private void checkGrouping(String groupingId) {
+        if (groupingId == null) {
+            throw new IllegalArgumentException("No grouping specified");
+        }
+        this.groupingService.getGrouping(groupingId);
+    }
+
+}
@@ -18,11 +18,13 @@ package com.chemaxon.clustering.web.resources;
 
 import com.chemaxon.clustering.wards.LanceWilliamsMerge;
 import com.chemaxon.clustering.wards.LanceWilliamsMerges;
+import com.chemaxon.clustering.web.algorithms.NearestNeighborChain;
 
 /**
  * Applicable clustering algorithms.
  *
- * Declared constants are directly used by the REST API resource implementation as query parameters.
+ * Declared constants are directly used by the REST API resource implementation as query parameters. The engine
+ * executing the algorithm is selected separately, see {@link ClusteringEngines}.
  *
  * @author Gabor Imre
  */
@@ -32,23 +34,55 @@ public enum LanceWilliamsAlgorithms {
         public LanceWilliamsMerge getMerge() {
             return new LanceWilliamsMerges.Wards();
         }
+
+        @Override
+        public NearestNeighborChain.Linkage getLinkage() {
+            return NearestNeighborChain.Linkage.WARD;
+        }
     }, singlelinkage {
         @Override
         public LanceWilliamsMerge getMerge() {
             return new LanceWilliamsMerges.SingleLinkage();
         }
+
+        @Override
+        public NearestNeighborChain.Linkage getLinkage() {
+            return NearestNeighborChain.Linkage.SINGLE;
+        }
     }, completelinkage {
         @Override
         public LanceWilliamsMerge getMerge() {
             return new LanceWilliamsMerges.CompleteLinkage();
         }
+
+        @Override
+        public NearestNeighborChain.Linkage getLinkage() {
+            return NearestNeighborChain.Linkage.COMPLETE;
+        }
     }, averagelinkage {
         @Override
         public LanceWilliamsMerge getMerge() {
             return new LanceWilliamsMerges.AverageLinkage();
         }
+
+        @Override
+        public NearestNeighborChain.Linkage getLinkage() {
+            return NearestNeighborChain.Linkage.AVERAGE;
+        }
     };
 
+    /**
+     * Equivalent Lance-Williams merge rule.
+     *
+     * @return Merge rule
+     */
     public abstract LanceWilliamsMerge getMerge();
 
+    /**
+     * Equivalent linkage of the nearest neighbor chain engine.
+     *
+     * @return Linkage
+     */
+    public abstract NearestNeighborChain.Linkage getLinkage();
+
 }
@@ -19,7 +19,9 @@ package com.chemaxon.clustering.web.resources;
 import com.chemaxon.clustering.web.dto.ClusteringInfo;
 import com.chemaxon.clustering.web.entities.Clustering;
 import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
 import com.chemaxon.clustering.web.services.ClusteringService;
+import com.chemaxon.clustering.web.services.JobService;
 import com.chemaxon.clustering.web.services.MolfilesService;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
@@ -49,11 +51,16 @@ public class LaunchClusteringResource {
     @Autowired
     private ClusteringResource clusteringResource;
 
+    @Autowired
+    private JobService jobService;
+
     /**
      * Invoke Lance-Williams clustering on a molfile.
      *
      * @param molfileId Structures to cluster
      * @param algorithm Algorithm to use
+     * @param engine Engine executing the algorithm
+     * @param timeout Max execution time in seconds; 0 for the configured default
      * @return Clustering info
      */
     @POST
@@ -63,7 +70,28 @@ public class LaunchClusteringResource {
     public ClusteringInfo invokeLanceWilliamsOnMolfile(
             //@QueryParam("molfile") Molfile molfile,
             @FormParam("molfile") String molfileId,
-            @FormParam("algorithm") @DefaultValue("wards") LanceWilliamsAlgorithms algorithm
+            @FormParam("algorithm") @DefaultValue("wards") LanceWilliamsAlgorithms algorithm,
+            @FormParam("engine") @DefaultValue("lancewilliams") ClusteringEngines engine,
+            @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        return this.jobService.invoke("lance-williams-" + molfileId, timeout,
+                progress -> invokeLanceWilliamsOnMolfile(molfileId, algorithm, engine, progress));
+    }
+
+    /**
+     * Invoke Lance-Williams clustering on a molfile with progress tracking.
+     *
+     * @param molfileId Structures to cluster
+     * @param algorithm Algorithm to use
+     * @param engine Engine executing the algorithm
+     * @param progress Tracker to report to
+     * @return Clustering info
+     */
+    ClusteringInfo invokeLanceWilliamsOnMolfile(
+            String molfileId,
+            LanceWilliamsAlgorithms algorithm,
+            ClusteringEngines engine,
+            ProgressTracker progress
     ) {
         if (molfileId == null) {
             throw new IllegalArgumentException("No molfile specified");
@@ -74,8 +102,72 @@ public class LaunchClusteringResource {
             throw new IllegalArgumentException("No algorithm specified");
         }
 
-        final Clustering clus = this.clusteringService.invokeLanceWilliams(
-                molfile, algorithm.getMerge(), this.molfilesService.getMolfileId(molfile) + "-" + algorithm);
+        if (engine == null) {
+            throw new IllegalArgumentException("No engine specified");
+        }
+
+        final Clustering clus = engine.invoke(this.clusteringService, algorithm, molfile,
+                this.molfilesService.getMolfileId(molfile) + "-" + algorithm, progress);
+
+        return this.clusteringResource.clusteringInfo(clus);
+    }
+
+    /**
+     * Invoke two-stage clustering on a molfile.
+     *
+     * Representatives selected by sphere exclusion are clustered; every other structure is grafted under its most
+     * similar representative.
+     *
+     * @param molfileId Structures to cluster
+     * @param algorithm Algorithm to use on the representatives
+     * @param radius Dissimilarity radius of representative selection
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Clustering info
+     */
+    @POST
+    @Path("invoke-two-stage-on-molfile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public ClusteringInfo invokeTwoStageOnMolfile(
+            @FormParam("molfile") String molfileId,
+            @FormParam("algorithm") @DefaultValue("wards") LanceWilliamsAlgorithms algorithm,
+            @FormParam("radius") @DefaultValue("0.4") double radius,
+            @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        return this.jobService.invoke("two-stage-" + molfileId, timeout,
+                progress -> invokeTwoStageOnMolfile(molfileId, algorithm, radius, progress));
+    }
+
+    /**
+     * Invoke two-stage clustering on a molfile with progress tracking.
+     *
+     * @param molfileId Structures to cluster
+     * @param algorithm Algorithm to use on the representatives
+     * @param radius Dissimilarity radius of representative selection
+     * @param progress Tracker to report to
+     * @return Clustering info
+     */
+    ClusteringInfo invokeTwoStageOnMolfile(
+            String molfileId,
+            LanceWilliamsAlgorithms algorithm,
+            double radius,
+            ProgressTracker progress
+    ) {
+        if (molfileId == null) {
+            throw new IllegalArgumentException("No molfile specified");
+        }
+        final Molfile molfile = this.molfilesService.getMolfile(molfileId);
+
+        if (algorithm == null) {
+            throw new IllegalArgumentException("No algorithm specified");
+        }
+
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Invalid radius specified: " + radius);
+        }
+
+        final Clustering clus = this.clusteringService.invokeTwoStage(molfile, radius, algorithm.getMerge(),
+                this.molfilesService.getMolfileId(molfile) + "-" + algorithm + "-two-stage-r-" + radius, progress);
 
         return this.clusteringResource.clusteringInfo(clus);
     }
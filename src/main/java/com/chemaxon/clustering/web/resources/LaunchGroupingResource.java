@@ -17,9 +17,13 @@
 package com.chemaxon.clustering.web.resources;
 
 import com.chemaxon.clustering.web.dto.GroupingInfo;
+import com.chemaxon.clustering.web.entities.Clustering;
 import com.chemaxon.clustering.web.entities.Grouping;
 import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.chemaxon.clustering.web.services.ClusteringService;
 import com.chemaxon.clustering.web.services.GroupingService;
+import com.chemaxon.clustering.web.services.JobService;
 import com.chemaxon.clustering.web.services.MolfilesService;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
@@ -49,6 +53,12 @@ public class LaunchGroupingResource {
     @Autowired
     private GroupingResource groupingResource;
 
+    @Autowired
+    private ClusteringService clusteringService;
+
+    @Autowired
+    private JobService jobService;
+
     /**
      * Invoke random clustering.
      *
@@ -142,6 +152,7 @@ public class LaunchGroupingResource {
      * @param groupIndex Group index from the source grouping
      * @param radius A dissimilarity radius
      * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
      * @return The filtered grouping
      */
     @POST
@@ -153,7 +164,31 @@ public class LaunchGroupingResource {
         @FormParam("grouping") String groupingId,
         @FormParam("groupindex") @DefaultValue("0") int groupIndex,
         @FormParam("radius") @DefaultValue("0.1") double radius,
-        @FormParam("resname") String resnameSuggestion
+        @FormParam("resname") String resnameSuggestion,
+        @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        return this.jobService.invoke("sphex-centroid-filtering-" + molfileId, timeout, progress ->
+            invokeSphexCentroidFiltering(molfileId, groupingId, groupIndex, radius, resnameSuggestion, progress));
+    }
+
+    /**
+     * Invoke sphere exclusion centroid filtering with progress tracking.
+     *
+     * @param molfileId Associated molfile
+     * @param groupingId Source grouping where members refer to the associated molfile
+     * @param groupIndex Group index from the source grouping
+     * @param radius A dissimilarity radius
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param progress Tracker to report to
+     * @return The filtered grouping
+     */
+    GroupingInfo invokeSphexCentroidFiltering(
+        String molfileId,
+        String groupingId,
+        int groupIndex,
+        double radius,
+        String resnameSuggestion,
+        ProgressTracker progress
     ) {
         if (molfileId == null) {
             throw new IllegalArgumentException("No molfile specified");
@@ -175,12 +210,112 @@ public class LaunchGroupingResource {
             molfile,
             groupIndex,
             radius,
-            resnameSuggestion
+            resnameSuggestion,
+            progress
         );
 
         return this.groupingResource.groupingInfo(grp);
     }
 
+    /**
+     * Invoke sphere exclusion clustering.
+     *
+     * In fixed mode the specified radius is used. In adaptive mode a radius not larger than the max radius is searched
+     * which yields a cluster count in the specified range.
+     *
+     * @param molfileId Structures to cluster
+     * @param mode Clustering mode
+     * @param radius Dissimilarity radius for fixed mode
+     * @param minCount Min cluster count for adaptive mode
+     * @param maxCount Max cluster count for adaptive mode
+     * @param maxRadius Max dissimilarity radius for adaptive mode
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @return Grouping info
+     */
+    @POST
+    @Path("invoke-sphex-clustering")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public GroupingInfo invokeSphexClustering(
+        @FormParam("molfile") String molfileId,
+        @FormParam("mode") @DefaultValue("fixed") SphexModes mode,
+        @FormParam("radius") @DefaultValue("0.4") double radius,
+        @FormParam("mincount") @DefaultValue("5") int minCount,
+        @FormParam("maxcount") @DefaultValue("10") int maxCount,
+        @FormParam("maxradius") @DefaultValue("0.6") double maxRadius,
+        @FormParam("resname") String resnameSuggestion,
+        @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        return this.jobService.invoke("sphex-" + molfileId, timeout, progress ->
+            invokeSphexClustering(molfileId, mode, radius, minCount, maxCount, maxRadius, resnameSuggestion, progress));
+    }
+
+    /**
+     * Invoke sphere exclusion clustering with progress tracking.
+     *
+     * @param molfileId Structures to cluster
+     * @param mode Clustering mode
+     * @param radius Dissimilarity radius for fixed mode
+     * @param minCount Min cluster count for adaptive mode
+     * @param maxCount Max cluster count for adaptive mode
+     * @param maxRadius Max dissimilarity radius for adaptive mode
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param progress Tracker to report to
+     * @return Grouping info
+     */
+    GroupingInfo invokeSphexClustering(
+        String molfileId,
+        SphexModes mode,
+        double radius,
+        int minCount,
+        int maxCount,
+        double maxRadius,
+        String resnameSuggestion,
+        ProgressTracker progress
+    ) {
+        if (molfileId == null) {
+            throw new IllegalArgumentException("No molfile specified");
+        }
+        final Molfile molfile = this.molfilesService.getMolfile(molfileId);
+
+        final Grouping grp;
+        switch (mode) {
+            case fixed:
+                if (radius < 0) {
+                    throw new IllegalArgumentException("Invalid radius specified: " + radius);
+                }
+                if (resnameSuggestion == null || resnameSuggestion.isEmpty()) {
+                    resnameSuggestion = this.molfilesService.getMolfileId(molfile) + "-sphex-r-" + radius;
+                }
+                grp = this.groupingService.invokeSphexClustering(molfile, radius, resnameSuggestion, progress);
+                break;
+            case adaptive:
+                if (minCount <= 0 || maxCount < minCount) {
+                    throw new IllegalArgumentException("Invalid cluster count range specified: " + minCount + " - " + maxCount);
+                }
+                if (maxRadius <= 0) {
+                    throw new IllegalArgumentException("Invalid max radius specified: " + maxRadius);
+                }
+                if (resnameSuggestion == null || resnameSuggestion.isEmpty()) {
+                    resnameSuggestion = this.molfilesService.getMolfileId(molfile) + "-sphex-" + minCount + "-" + maxCount;
+                }
+                grp = this.groupingService.invokeAdaptiveSphexClustering(
+                    molfile,
+                    minCount,
+                    maxCount,
+                    maxRadius,
+                    resnameSuggestion,
+                    progress
+                );
+                break;
+            default:
+                throw new AssertionError(mode);
+        }
+
+        return this.groupingResource.groupingInfo(grp);
+    }
+
     /**
      * Invoke nearest neighbor association.
      *
@@ -190,7 +325,9 @@ public class LaunchGroupingResource {
      * @param molfileId Associated molfile
      * @param groupingId Source grouping where members refer to the associated molfile; memebers will be used as centroids
      * @param groupIndex Group index from the source grouping
+     * @param search Centroid search mode; all modes give the same assignments
      * @param resnameSuggestion  Resource name suggestion for the result
+     * @param timeout Max execution time in seconds; 0 for the configured default
      * @return The filtered grouping
      */
     @POST
@@ -201,7 +338,32 @@ public class LaunchGroupingResource {
         @FormParam("molfile") String molfileId,
         @FormParam("grouping") String groupingId,
         @FormParam("groupindex") @DefaultValue("0") int groupIndex,
-        @FormParam("resname") String resnameSuggestion
+        @FormParam("search") @DefaultValue("bitbound") CentroidSearchModes search,
+        @FormParam("resname") String resnameSuggestion,
+        @FormParam("timeout") @DefaultValue("0") long timeout
+    ) {
+        return this.jobService.invoke("nearest-neighbor-association-" + molfileId, timeout, progress ->
+            invokeNearestNeighborAssociation(molfileId, groupingId, groupIndex, search, resnameSuggestion, progress));
+    }
+
+    /**
+     * Invoke nearest neighbor association with progress tracking.
+     *
+     * @param molfileId Associated molfile
+     * @param groupingId Source grouping where members refer to the associated molfile; memebers will be used as centroids
+     * @param groupIndex Group index from the source grouping
+     * @param search Centroid search mode; all modes give the same assignments
+     * @param resnameSuggestion  Resource name suggestion for the result
+     * @param progress Tracker to report to
+     * @return The filtered grouping
+     */
+    GroupingInfo invokeNearestNeighborAssociation(
+        String molfileId,
+        String groupingId,
+        int groupIndex,
+        CentroidSearchModes search,
+        String resnameSuggestion,
+        ProgressTracker progress
     ) {
         if (molfileId == null) {
             throw new IllegalArgumentException("No molfile specified");
@@ -221,10 +383,58 @@ public class LaunchGroupingResource {
             srcgrp,
             molfile,
             groupIndex,
-            resnameSuggestion
+            search.getMode(),
+            resnameSuggestion,
+            progress
         );
 
         return this.groupingResource.groupingInfo(grp);
     }
 
+    /**
+     * Cut a hierarchic clustering into a grouping.
+     *
+     * Either a cut level or a max cluster count must be specified; for a count the lowest level reaching it is used.
+     *
+     * @param clusteringId Clustering to cut
+     * @param level Cut level
+     * @param count Max cluster count
+     * @param representatives When set a single group of the cluster representants is created for nearest neighbor
+     * association
+     * @param resnameSuggestion Resource name suggestion for the result
+     * @return Grouping info
+     */
+    @POST
+    @Path("invoke-hierarchy-cut")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public GroupingInfo invokeHierarchyCut(
+        @FormParam("clustering") String clusteringId,
+        @FormParam("level") Double level,
+        @FormParam("count") Integer count,
+        @FormParam("representatives") @DefaultValue("false") boolean representatives,
+        @FormParam("resname") String resnameSuggestion
+    ) {
+        if (clusteringId == null) {
+            throw new IllegalArgumentException("No clustering specified");
+        }
+        final Clustering clustering = this.clusteringService.getClustering(clusteringId);
+
+        if ((level == null) == (count == null)) {
+            throw new IllegalArgumentException("Exactly one of level and count must be specified");
+        }
+        if (count != null && count <= 0) {
+            throw new IllegalArgumentException("Invalid count specified: " + count);
+        }
+        final double cutLevel = level != null ? level : clustering.getCutIndex().levelForCount(count);
+
+        if (resnameSuggestion == null || resnameSuggestion.isEmpty()) {
+            resnameSuggestion = clusteringId + (level != null ? "-cut-l-" + level : "-cut-n-" + count)
+                + (representatives ? "-reps" : "");
+        }
+
+        final Grouping grp = this.groupingService.invokeHierarchyCut(
+            clustering, cutLevel, representatives, resnameSuggestion);
+        return this.groupingResource.groupingInfo(grp);
+    }
 }
@@ -17,10 +17,20 @@
 package com.chemaxon.clustering.web.resources;
 
 import com.chemaxon.clustering.web.dto.Deleted;
+import com.chemaxon.clustering.web.dto.FingerprintCacheInfo;
+import com.chemaxon.clustering.web.dto.ImageCacheInfo;
+import com.chemaxon.clustering.web.dto.MatrixCacheInfo;
+import com.chemaxon.clustering.web.dto.MemoryBudgetInfo;
 import com.chemaxon.clustering.web.services.ClusteringService;
+import com.chemaxon.clustering.web.services.FingerprintService;
 import com.chemaxon.clustering.web.services.GroupingService;
+import com.chemaxon.clustering.web.services.ImageCache;
+import com.chemaxon.clustering.web.services.MatrixService;
+import com.chemaxon.clustering.web.services.MemoryGovernor;
 import com.chemaxon.clustering.web.services.MolfilesService;
+import com.google.common.cache.CacheStats;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -46,6 +56,18 @@ public class ManageResource {
     @Autowired
     private ClusteringService clusteringService;
 
+    @Autowired
+    private FingerprintService fingerprintService;
+
+    @Autowired
+    private MatrixService matrixService;
+
+    @Autowired
+    private MemoryGovernor memoryGovernor;
+
+    @Autowired
+    private ImageCache imageCache;
+
     @POST
     @Path("remove-all")
     @Produces(MediaType.APPLICATION_JSON)
@@ -59,5 +81,86 @@ public class ManageResource {
 
     }
 
+    /**
+     * Shared fingerprint cache statistics.
+     *
+     * @return Cache hit/miss/eviction counters and current size
+     */
+    @GET
+    @Path("fingerprint-cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public FingerprintCacheInfo fingerprintCacheInfo() {
+        final CacheStats stats = this.fingerprintService.getCacheStats();
+        final FingerprintCacheInfo ret = new FingerprintCacheInfo();
+        ret.hitCount = stats.hitCount();
+        ret.missCount = stats.missCount();
+        ret.hitRate = stats.hitRate();
+        ret.evictionCount = stats.evictionCount();
+        ret.entryCount = this.fingerprintService.getCachedCount();
+        ret.sizeInBytes = this.fingerprintService.getCachedBytes();
+        return ret;
+    }
+
+    /**
+     * Shared dissimilarity matrix cache statistics.
+     *
+     * @return Cache hit/miss/eviction counters and current size
+     */
+    @GET
+    @Path("matrix-cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public MatrixCacheInfo matrixCacheInfo() {
+        final CacheStats stats = this.matrixService.getCacheStats();
+        final MatrixCacheInfo ret = new MatrixCacheInfo();
+        ret.hitCount = stats.hitCount();
+        ret.missCount = stats.missCount();
+        ret.hitRate = stats.hitRate();
+        ret.evictionCount = stats.evictionCount();
+        ret.entryCount = this.matrixService.getCachedCount();
+        ret.sizeInBytes = this.matrixService.getCachedBytes();
+        return ret;
+    }
+
+    /**
+     * Rendered image cache statistics.
+     *
+     * @return Cache hit/miss/eviction counters, current size and spill counters
+     */
+    @GET
+    @Path("image-cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ImageCacheInfo imageCacheInfo() {
+        final CacheStats stats = this.imageCache.getCacheStats();
+        final ImageCacheInfo ret = new ImageCacheInfo();
+        ret.hitCount = stats.hitCount();
+        ret.missCount = stats.missCount();
+        ret.hitRate = stats.hitRate();
+        ret.evictionCount = stats.evictionCount();
+        ret.entryCount = this.imageCache.getCachedCount();
+        ret.sizeInBytes = this.imageCache.getCachedBytes();
+        ret.spillHitCount = this.imageCache.getSpillHitCount();
+        ret.spillCount = this.imageCache.getSpillCount();
+        ret.spilledBytes = this.imageCache.getSpilledBytes();
+        return ret;
+    }
+
+    /**
+     * Shared memory budget state.
+     *
+     * @return Budget, reserved memory and calculation counts
+     */
+    @GET
+    @Path("memory-budget")
+    @Produces(MediaType.APPLICATION_JSON)
+    public MemoryBudgetInfo memoryBudgetInfo() {
+        final MemoryBudgetInfo ret = new MemoryBudgetInfo();
+        ret.budgetBytes = this.memoryGovernor.getBudget();
+        ret.setAsideBytes = this.memoryGovernor.getSetAside();
+        ret.reservedBytes = this.memoryGovernor.getReserved() - ret.setAsideBytes;
+        ret.activeCount = this.memoryGovernor.getActiveCount();
+        ret.waitingCount = this.memoryGovernor.getWaitingCount();
+        return ret;
+    }
+
 
 }
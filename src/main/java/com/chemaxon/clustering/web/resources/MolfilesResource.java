@@ -19,11 +19,13 @@ package com.chemaxon.clustering.web.resources;
 
 import chemaxon.formats.MolExporter;
 import chemaxon.struc.Molecule;
+import com.chemaxon.clustering.web.application.Cached;
 import com.chemaxon.clustering.web.application.Status;
 import com.chemaxon.clustering.web.dto.Deleted;
 import com.chemaxon.clustering.web.dto.MolfileInfo;
 import com.chemaxon.clustering.web.dto.MolfilesInfo;
 import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.services.ImageCache;
 import com.chemaxon.clustering.web.services.MolfilesService;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -62,6 +64,9 @@ public class MolfilesResource {
     @Autowired
     private MolfilesService molfilesService;
 
+    @Autowired
+    private ImageCache imageCache;
+
     /**
      * List available molfiles.
      *
@@ -160,6 +165,7 @@ public class MolfilesResource {
      * @throws IOException propagated
      */
     @GET
+    @Cached
     @Path("{molfile}/{index}/sdf")
     @Produces("chemical/x-mdl-sdfile")
     public Response getSdf(
@@ -185,6 +191,7 @@ public class MolfilesResource {
      * @throws IOException propagated
      */
     @GET
+    @Cached
     @Path("{molfile}/{index}/smiles")
     @Produces("chemical/x-daylight-smiles")
     public Response getSmiles(
@@ -213,6 +220,7 @@ public class MolfilesResource {
      * @throws IOException propagated from underlying {@link MolExporter}
      */
     @GET
+    @Cached(content = false)
     @Path("{molfile}/{index}/png")
     @Produces("image/png")
     public byte [] getPng(
@@ -224,10 +232,10 @@ public class MolfilesResource {
         if (w < 1 || h < 1) {
             throw new IllegalArgumentException("Invalid image dimensions w: " + w + " h: " + h);
         }
-        // Just grab the structure and convert to 2D on the fly
-        // Caching, timeout, handling clean2d failure is not handled
-        final Molecule mol = molfile.getMolecule(index);
-        return MolExporter.exportToBinFormat(mol, "png:w" + w + "h" + h);
+        // Just grab the structure and convert to 2D on the fly; rendered images are kept in the image cache
+        // Timeout, handling clean2d failure is not handled
+        return this.imageCache.get(molfile, index, w, h, "png",
+            () -> MolExporter.exportToBinFormat(molfile.getMolecule(index), "png:w" + w + "h" + h));
     }
 
 
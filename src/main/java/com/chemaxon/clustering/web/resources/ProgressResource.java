@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.resources;
+
+import com.chemaxon.clustering.web.dto.ProgressInfo;
+import com.chemaxon.clustering.web.dto.ProgressStageInfo;
+import com.chemaxon.clustering.web.dto.ProgressesInfo;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.chemaxon.clustering.web.services.ProgressService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Query the progress of running operations.
+ *
+ * Trackers of background jobs are registered with the ID of the job; hierarchy image renderings are registered while
+ * running. Progress can be polled or followed as a Server-Sent Events stream. Event streams do not hold request
+ * threads; events of all subscribers are written by a single scheduler thread.
+ *
+ * @author Gabor Imre
+ */
+@Component
+@Path("/progress")
+public class ProgressResource {
+
+    /**
+     * Interval of progress events in milliseconds.
+     */
+    private static final long EVENT_INTERVAL = 1000;
+
+    /**
+     * Serializes event payloads.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private ProgressService progressService;
+
+    /**
+     * Writes progress events.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "progress-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * List tracked operations.
+     *
+     * @return Progress of all tracked operations
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public ProgressesInfo listProgress() {
+        final ProgressesInfo ret = new ProgressesInfo();
+        ret.trackers = new ArrayList<>();
+        for (Map.Entry<String, ProgressTracker> e : this.progressService.getAllTrackers().entrySet()) {
+            ret.trackers.add(progressInfo(e.getKey(), e.getValue()));
+        }
+        return ret;
+    }
+
+    /**
+     * Current progress of an operation.
+     *
+     * @param id Tracker ID
+     * @return Progress of the stages entered so far
+     */
+    @GET
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ProgressInfo getProgress(
+            @PathParam("id") String id
+    ) {
+        return progressInfo(id, this.progressService.getTracker(id));
+    }
+
+    /**
+     * Follow the progress of an operation.
+     *
+     * A {@code progress} event with the same payload as {@link #getProgress(java.lang.String)} is sent periodically.
+     * The stream ends after the event reporting the finished operation, or when the tracker is removed.
+     *
+     * @param id Tracker ID
+     * @return Event stream
+     */
+    @GET
+    @Path("{id}/events")
+    @Produces("text/event-stream")
+    public ChunkedOutput<String> getProgressEvents(
+            @PathParam("id") String id
+    ) {
+        final ProgressTracker tracker = this.progressService.getTracker(id);
+        final ChunkedOutput<String> out = new ChunkedOutput<>(String.class);
+        final AtomicReference<ScheduledFuture<?>> task = new AtomicReference<>();
+        task.set(this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                final boolean finished = tracker.isFinished();
+                final String data = MAPPER.writeValueAsString(progressInfo(id, tracker));
+                // fails with IOException when the client disconnected
+                out.write("event: progress\ndata: " + data + "\n\n");
+                if (finished || !this.progressService.getAllTrackers().containsKey(id)) {
+                    out.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // client already gone
+                }
+            }
+            if (out.isClosed()) {
+                // the first run may precede the assignment; the next run cancels then
+                final ScheduledFuture<?> f = task.get();
+                if (f != null) {
+                    f.cancel(false);
+                }
+            }
+        }, 0, EVENT_INTERVAL, TimeUnit.MILLISECONDS));
+        return out;
+    }
+
+    /**
+     * Stop the event writer on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Describe a tracker.
+     *
+     * @param id Tracker ID
+     * @param tracker Tracker
+     * @return Progress description
+     */
+    private static ProgressInfo progressInfo(String id, ProgressTracker tracker) {
+        final ProgressInfo ret = new ProgressInfo();
+        ret.id = id;
+        ret.url = "/rest/progress/" + id;
+        ret.finished = tracker.isFinished();
+        final List<ProgressStageInfo> stages = new ArrayList<>();
+        for (ProgressTracker.Stage stage : tracker.getStages()) {
+            final ProgressStageInfo s = new ProgressStageInfo();
+            s.name = stage.getName();
+            s.done = stage.isDone();
+            s.totalWork = stage.getTotalWork();
+            s.worked = stage.getWorked();
+            s.elapsedTime = stage.getElapsedTime();
+            s.rate = stage.getRate();
+            s.eta = stage.getEta();
+            stages.add(s);
+        }
+        ret.stages = stages;
+        return ret;
+    }
+}
@@ -17,19 +17,25 @@
 
 package com.chemaxon.clustering.web.services;
 
-import com.chemaxon.calculations.common.ProgressObservers;
 import com.chemaxon.clustering.common.DissimilarityInput;
 import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
-import com.chemaxon.clustering.common.MolInputBuilder;
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.linkage.SingleLinkageMst;
 import com.chemaxon.clustering.wards.LanceWilliamsAlgorithm;
 import com.chemaxon.clustering.wards.LanceWilliamsMerge;
+import com.chemaxon.clustering.web.algorithms.CondensedDissimilarityMatrix;
+import com.chemaxon.clustering.web.algorithms.CopheneticCorrelation;
+import com.chemaxon.clustering.web.algorithms.NearestCentroidSearch;
+import com.chemaxon.clustering.web.algorithms.NearestNeighborChain;
+import com.chemaxon.clustering.web.algorithms.RepresentativeGrafting;
+import com.chemaxon.clustering.web.algorithms.SphereExclusionFilter;
 import com.chemaxon.clustering.web.dao.ClusteringDao;
 import com.chemaxon.clustering.web.entities.Clustering;
 import com.chemaxon.clustering.web.entities.Molfile;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpComparator;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpGenerator;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpParameters;
-import com.chemaxon.descriptors.metrics.BinaryMetrics;
+import com.chemaxon.clustering.web.hierarchy.LcaIndex;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,44 +49,328 @@ import org.springframework.stereotype.Service;
 @Service
 public class ClusteringService {
 
+    /**
+     * Estimated bytes per structure pair kept by the Lance-Williams implementation.
+     *
+     * The library keeps its own updatable matrix of doubles, filled from the input.
+     */
+    private static final long LANCE_WILLIAMS_BYTES_PER_PAIR = 8;
+
+    /**
+     * Estimated bytes per structure for cluster bookkeeping and the resulting hierarchy.
+     */
+    private static final long LANCE_WILLIAMS_BYTES_PER_STRUCTURE = 256;
+
+    /**
+     * Estimated bytes per structure of the minimum spanning tree single linkage engine and the resulting hierarchy.
+     */
+    private static final long SINGLE_LINKAGE_BYTES_PER_STRUCTURE = 320;
+
+    /**
+     * Estimated bytes per structure of the nearest neighbor chain engine and the resulting hierarchy.
+     */
+    private static final long NEAREST_NEIGHBOR_CHAIN_BYTES_PER_STRUCTURE = 320;
+
+    /**
+     * Estimated bytes per structure of the assignment and grafting stages of two-stage clustering.
+     */
+    private static final long TWO_STAGE_BYTES_PER_STRUCTURE = 96;
+
     @Autowired
     private ClusteringDao clusteringDao;
 
     @Autowired
     private MolfilesService molfilesService;
 
+    @Autowired
+    private FingerprintService fingerprintService;
+
+    @Autowired
+    private MatrixService matrixService;
+
+    @Autowired
+    private ComputeService computeService;
+
+    @Autowired
+    private MemoryGovernor memoryGovernor;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private ImageCache imageCache;
+
+    @Autowired
+    private TileService tileService;
+
+    /**
+     * Estimate the peak heap footprint of a Lance-Williams clustering.
+     *
+     * All supported merge rules operate on the same quadratic dissimilarity matrix of the library, so the estimate
+     * depends only on the structure count and the fingerprint length. The peak is the double matrix of the library
+     * next to the shared fingerprints.
+     *
+     * @param n Structure count
+     * @param words Fingerprint length in 64 bit words
+     * @return Estimated footprint in bytes
+     */
+    static long estimateLanceWilliamsBytes(int n, int words) {
+        final long pairs = CondensedDissimilarityMatrix.pairCount(n);
+        return pairs * LANCE_WILLIAMS_BYTES_PER_PAIR
+            + (long) n * (8L * words + LANCE_WILLIAMS_BYTES_PER_STRUCTURE);
+    }
+
     /**
      * Invoke a clustering.
      *
+     * The estimated footprint is reserved from the shared {@link MemoryGovernor} budget first; the calculation waits
+     * while other calculations hold the budget.
+     *
      * @param molfile Structures to be clustered
      * @param algorithm Clustering algorithm to be used
      * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting and merging stages to
      * @return Executed clustering
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     * @throws IllegalArgumentException when the estimated footprint exceeds the whole memory budget
      */
-    public Clustering invokeLanceWilliams(Molfile molfile, LanceWilliamsMerge algorithm, String idSuggestion) {
+    public Clustering invokeLanceWilliams(
+            Molfile molfile,
+            LanceWilliamsMerge algorithm,
+            String idSuggestion,
+            ProgressTracker progress
+    ) {
+        final long estimate = estimateLanceWilliamsBytes(molfile.size(), FingerprintSpec.CLUSTERING.words());
+        final long timeStart;
+        final long timeStop;
+        final IDBasedHierarchicClustering res;
+        try (MemoryGovernor.Reservation reservation = this.memoryGovernor.acquire(
+                "Lance-Williams clustering of " + molfile.size() + " structures", estimate, progress)) {
+
+            timeStart = System.currentTimeMillis();
+
+            // Tanimoto dissimilarities of shared cfp7-1 fingerprints, calculated on the fly while the library fills its
+            // own double matrix; a single precision matrix would be held next to it at the peak
+            final DissimilarityInput dissim = this.fingerprintService
+                    .getFingerprints(molfile, FingerprintSpec.CLUSTERING, progress.stage("Fingerprinting"))
+                    .asDissimilarityInput();
 
+            try (ProgressTracker.Stage merging = progress.stage("Merging")) {
+                res = LanceWilliamsAlgorithm.cluster(dissim, algorithm, merging);
+            }
+            // the library might return early on cancellation
+            progress.checkCancelled();
 
+            timeStop = System.currentTimeMillis();
+        }
+
+        final Clustering clustering = new Clustering(this.clusteringDao.toStorable(res), timeStop - timeStart,
+                algorithm.toString());
+
+        this.clusteringDao.add(idSuggestion, clustering);
+
+        return clustering;
+    }
+
+
+    /**
+     * Invoke single linkage clustering.
+     *
+     * The minimum spanning tree engine calculates dissimilarities from the shared fingerprints on the fly, its footprint
+     * is linear in the structure count. The result is equivalent to Lance-Williams single linkage.
+     *
+     * @param molfile Structures to be clustered
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting and merging stages to
+     * @return Executed clustering
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     * @throws IllegalArgumentException when the molfile is empty or the estimated footprint exceeds the whole memory
+     * budget
+     */
+    public Clustering invokeSingleLinkage(Molfile molfile, String idSuggestion, ProgressTracker progress) {
+        if (molfile.size() == 0) {
+            throw new IllegalArgumentException("No structures to cluster in the molfile");
+        }
+        final long estimate = (long) molfile.size()
+                * (8L * FingerprintSpec.CLUSTERING.words() + SINGLE_LINKAGE_BYTES_PER_STRUCTURE);
+        final long timeStart;
+        final long timeStop;
+        final IDBasedHierarchicClustering res;
+        try (MemoryGovernor.Reservation reservation = this.memoryGovernor.acquire(
+                "Single linkage clustering of " + molfile.size() + " structures", estimate, progress)) {
+
+            timeStart = System.currentTimeMillis();
+
+            final DissimilarityInput dissim = this.fingerprintService
+                    .getFingerprints(molfile, FingerprintSpec.CLUSTERING, progress.stage("Fingerprinting"))
+                    .asDissimilarityInput();
+
+            res = SingleLinkageMst.cluster(dissim, this.computeService.getPool(), progress.stage("Merging"));
+
+            timeStop = System.currentTimeMillis();
+        }
+
+        final Clustering clustering = new Clustering(this.clusteringDao.toStorable(res), timeStop - timeStart,
+                "Single linkage (minimum spanning tree)");
+
+        this.clusteringDao.add(idSuggestion, clustering);
+
+        return clustering;
+    }
+
+
+    /**
+     * Invoke clustering of a reducible linkage with the nearest neighbor chain engine.
+     *
+     * The engine updates a private copy of the shared dissimilarity matrix in place; the copy is the only quadratic
+     * allocation. It is reserved from the {@link MemoryGovernor} budget when kept on the heap, like a shared matrix not
+     * covered by the matrix cache capacity.
+     *
+     * @param molfile Structures to be clustered
+     * @param linkage Linkage to be used
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting, matrix, copying and merging stages to
+     * @return Executed clustering
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     * @throws IllegalArgumentException when the molfile is empty or the estimated footprint exceeds the whole memory
+     * budget
+     */
+    public Clustering invokeNearestNeighborChain(
+            Molfile molfile,
+            NearestNeighborChain.Linkage linkage,
+            String idSuggestion,
+            ProgressTracker progress
+    ) {
+        final int n = molfile.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("No structures to cluster in the molfile");
+        }
+        final long copyBytes = this.matrixService.storageFor(n) == CondensedDissimilarityMatrix.Storage.HEAP
+                ? CondensedDissimilarityMatrix.sizeInBytes(n)
+                : 0;
+        final long estimate = copyBytes + this.matrixService.uncachedHeapBytes(n)
+                + (long) n * (8L * FingerprintSpec.CLUSTERING.words() + NEAREST_NEIGHBOR_CHAIN_BYTES_PER_STRUCTURE);
+        final long timeStart;
+        final long timeStop;
+        final IDBasedHierarchicClustering res;
+        try (MemoryGovernor.Reservation reservation = this.memoryGovernor.acquire(
+                "Nearest neighbor chain clustering of " + n + " structures", estimate, progress)) {
+
+            timeStart = System.currentTimeMillis();
+
+            final CondensedDissimilarityMatrix shared =
+                    this.matrixService.getMatrix(molfile, FingerprintSpec.CLUSTERING, progress);
+            final CondensedDissimilarityMatrix matrix;
+            try (ProgressTracker.Stage copying = progress.stage("Copying matrix")) {
+                matrix = this.matrixService.copyOf(shared);
+            }
+
+            res = NearestNeighborChain.cluster(
+                    matrix, linkage, this.computeService.getPool(), progress.stage("Merging"));
+
+            timeStop = System.currentTimeMillis();
+        }
+
+        final Clustering clustering = new Clustering(this.clusteringDao.toStorable(res), timeStop - timeStart,
+                "Nearest neighbor chain " + linkage.toString().toLowerCase(Locale.ROOT) + " linkage");
+
+        this.clusteringDao.add(idSuggestion, clustering);
+
+        return clustering;
+    }
+
+
+    /**
+     * Invoke two-stage clustering.
+     *
+     * Representatives are selected by sphere exclusion; every other structure is assigned to its most similar
+     * representative. Only the representatives are clustered by Lance-Williams, the assigned structures are grafted
+     * under their representatives. The quadratic footprint depends on the representative count only, which is
+     * controlled by the radius.
+     *
+     * <p>The linear footprint of fingerprinting and representative selection is reserved from the
+     * {@link MemoryGovernor} budget first. It is released before the footprint of the remaining stages, known only
+     * after the selection, is reserved, so a waiting calculation does not hold memory.</p>
+     *
+     * @param molfile Structures to be clustered
+     * @param radius Tanimoto dissimilarity radius of representative selection
+     * @param algorithm Clustering algorithm to be used on the representatives
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting, filtering, association and merging stages to
+     * @return Executed clustering
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     * @throws IllegalArgumentException when the molfile is empty or the estimated footprint exceeds the whole memory
+     * budget
+     */
+    public Clustering invokeTwoStage(
+            Molfile molfile,
+            double radius,
+            LanceWilliamsMerge algorithm,
+            String idSuggestion,
+            ProgressTracker progress
+    ) {
+        final int n = molfile.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("No structures to cluster in the molfile");
+        }
         final long timeStart = System.currentTimeMillis();
 
-        // Acquire descriptor generator and comparator (fingerprint and metric) to be used
-        // Use cfp7-1
-        final CfpGenerator gen = CfpParameters.createNewBuilder()
-                .length(1024)
-                .bitsPerPattern(1)
-                .bondCount(7)
-                .build().getDescriptorGenerator();
-        // With tanimoto
-        final CfpComparator cmp = gen.forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO);
+        final long selectionEstimate =
+                (long) n * (8L * FingerprintSpec.CLUSTERING.words() + TWO_STAGE_BYTES_PER_STRUCTURE);
+        final PackedFingerprints fp;
+        final SphereExclusionFilter.Result filtered;
+        try (MemoryGovernor.Reservation reservation = this.memoryGovernor.acquire(
+                "Representative selection of " + n + " structures", selectionEstimate, progress)) {
+            fp = this.fingerprintService
+                    .getFingerprints(molfile, FingerprintSpec.CLUSTERING, progress.stage("Fingerprinting")).packed();
+            filtered = new SphereExclusionFilter(fp)
+                    .filter(radius, this.computeService.getPool(), progress.stage("Filtering"));
+        }
+        final int [] reps = new int[filtered.getKeptCount()];
+        final int [] queries = new int[n - reps.length];
+        final int [] assignment = new int[n];
+        for (int i = 0, r = 0, q = 0; i < n; i++) {
+            if (filtered.isKept(i)) {
+                assignment[i] = r;
+                reps[r++] = i;
+            } else {
+                queries[q++] = i;
+            }
+        }
+
+        final long estimate = CondensedDissimilarityMatrix.pairCount(reps.length) * LANCE_WILLIAMS_BYTES_PER_PAIR
+                + (long) reps.length * LANCE_WILLIAMS_BYTES_PER_STRUCTURE
+                + selectionEstimate;
+        final IDBasedHierarchicClustering res;
+        try (MemoryGovernor.Reservation reservation = this.memoryGovernor.acquire(
+                "Two-stage clustering of " + n + " structures", estimate, progress)) {
 
-        // Create dissimilarity input
-        final DissimilarityInput dissim = new MolInputBuilder(molfile.getAllMolecules()).build(gen, cmp);
+            final PackedFingerprints fpreps = fp.select(reps);
+            final NearestCentroidSearch.Result nearest = new NearestCentroidSearch(fpreps).search(
+                    fp, queries, NearestCentroidSearch.Mode.BIT_BOUND, this.computeService.getPool(),
+                    progress.stage("Association"));
+            final double [] dissimilarity = new double[n];
+            for (int q = 0; q < queries.length; q++) {
+                final int r = nearest.nearest(q);
+                assignment[queries[q]] = r;
+                dissimilarity[queries[q]] = fp.dissimilarity(queries[q], fp, reps[r]);
+            }
 
-        // Launch clustering with no progress observing
-        final IDBasedHierarchicClustering res = LanceWilliamsAlgorithm.cluster(dissim, algorithm, ProgressObservers.nullProgressObserver());
+            IDBasedHierarchicClustering representatives = null;
+            if (reps.length > 1) {
+                try (ProgressTracker.Stage merging = progress.stage("Merging")) {
+                    representatives = LanceWilliamsAlgorithm.cluster(fpreps.asDissimilarityInput(), algorithm, merging);
+                }
+                // the library might return early on cancellation
+                progress.checkCancelled();
+            }
 
-        final long timeStop = System.currentTimeMillis();
+            res = RepresentativeGrafting.graft(representatives, reps, assignment, dissimilarity);
+        }
 
-        final Clustering clustering = new Clustering(res, timeStop - timeStart, algorithm.toString());
+        final Clustering clustering = new Clustering(this.clusteringDao.toStorable(res),
+                System.currentTimeMillis() - timeStart,
+                "Two-stage " + algorithm + " on " + reps.length + " representatives of radius " + radius);
 
         this.clusteringDao.add(idSuggestion, clustering);
 
@@ -88,6 +378,36 @@ public class ClusteringService {
     }
 
 
+    /**
+     * Calculate the cophenetic correlation of a clustering.
+     *
+     * Tanimoto dissimilarities of the fingerprints used for clustering are compared to the cophenetic distances of all
+     * structure pairs.
+     *
+     * @param clustering Clustering to evaluate
+     * @param molfile Clustered structures
+     * @param progress Tracker to report the fingerprinting and correlation stages to
+     * @return Correlation result
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     * @throws IllegalArgumentException when the structures are not the leaves of the clustering
+     */
+    public CopheneticCorrelation copheneticCorrelation(
+            Clustering clustering,
+            Molfile molfile,
+            ProgressTracker progress
+    ) {
+        final LcaIndex lca = clustering.getLcaIndex();
+        if (molfile.size() != lca.getLeafIdCount()) {
+            throw new IllegalArgumentException("Molfile size " + molfile.size() + " does not match the leaf count "
+                    + lca.getLeafIdCount() + " of the clustering");
+        }
+        final DissimilarityInput dissim = this.fingerprintService
+                .getFingerprints(molfile, FingerprintSpec.CLUSTERING, progress.stage("Fingerprinting"))
+                .asDissimilarityInput();
+        return new CopheneticCorrelation(dissim, lca, this.computeService.getPool(), progress.stage("Correlation"));
+    }
+
+
     /**
      * Retrieve Clustering by ID.
      *
@@ -128,7 +448,11 @@ public class ClusteringService {
      * @param clustering Instance
      */
     public void deleteClustering(Clustering clustering) {
+        final String id = getClusteringId(clustering);
         this.clusteringDao.delete(clustering);
+        this.responseCache.invalidate("clusterings/" + id);
+        this.tileService.invalidate(clustering);
+        this.imageCache.invalidate(clustering);
     }
 
     /**
@@ -136,6 +460,9 @@ public class ClusteringService {
      */
     public void deleteAllClusterings() {
         this.clusteringDao.deleteAll();
+        this.responseCache.invalidate("clusterings");
+        this.tileService.invalidateAll();
+        this.imageCache.invalidateAll(Clustering.class);
     }
 
 
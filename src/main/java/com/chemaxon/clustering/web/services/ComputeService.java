@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides the fork-join pools used by the data parallel stages of the operations.
+ *
+ * Parallelism is configurable; a non positive value uses all available processors. Background jobs run their stages on
+ * a separate, smaller pool so they can not occupy every core while interactive requests are served. Thread priorities
+ * can not be used for this since they are ignored by the scheduler on Linux.
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class ComputeService {
+
+    /**
+     * Pool to execute data parallel stages on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Pool to execute data parallel stages of background jobs on.
+     */
+    private final ForkJoinPool jobPool;
+
+    /**
+     * Marks threads executing a background job.
+     */
+    private final ThreadLocal<Boolean> inJob = new ThreadLocal<>();
+
+    /**
+     * Construct.
+     *
+     * @param parallelism Worker thread count; non positive value means available processor count
+     * @param jobParallelism Worker thread count for background jobs; non positive value means half of the available
+     * processors
+     */
+    @Autowired
+    public ComputeService(
+        @Value("${compute.parallelism:0}") int parallelism,
+        @Value("${compute.jobs-parallelism:0}") int jobParallelism
+    ) {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : processors);
+        this.jobPool = new ForkJoinPool(jobParallelism > 0 ? jobParallelism : Math.max(1, processors / 2));
+    }
+
+    /**
+     * Retrieve the pool for the calling thread.
+     *
+     * @return Job pool when called from a background job or from its pool, shared pool otherwise
+     */
+    public ForkJoinPool getPool() {
+        final Thread current = Thread.currentThread();
+        final boolean jobWorker = current instanceof ForkJoinWorkerThread
+            && ((ForkJoinWorkerThread) current).getPool() == this.jobPool;
+        if (jobWorker || Boolean.TRUE.equals(this.inJob.get())) {
+            return this.jobPool;
+        }
+        return this.pool;
+    }
+
+    /**
+     * Execute a background job body.
+     *
+     * Data parallel stages started by the operation run on the job pool.
+     *
+     * @param <T> Result type
+     * @param operation Operation to execute
+     * @return Result of the operation
+     */
+    public <T> T runAsJob(Supplier<T> operation) {
+        this.inJob.set(Boolean.TRUE);
+        try {
+            return operation.get();
+        } finally {
+            this.inJob.remove();
+        }
+    }
+
+    /**
+     * Stop worker threads on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.pool.shutdownNow();
+        this.jobPool.shutdownNow();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.calculations.common.ProgressObservers;
+import com.chemaxon.calculations.common.SubProgressObserver;
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.fingerprints.MolfileFingerprints;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides shared fingerprints for the clustering and grouping operations.
+ *
+ * Fingerprints are calculated once for each (molfile, fingerprint spec) pair and kept in a size bounded cache. Entries
+ * of a molfile are dropped when the molfile is deleted. Entries not accessed for a configurable time are also evicted.
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class FingerprintService {
+
+    /**
+     * Cached fingerprints.
+     *
+     * Entries are weighted by their approximate size in kilobytes.
+     */
+    private final Cache<Key, MolfileFingerprints> cache;
+
+    @Autowired
+    private ComputeService computeService;
+
+    /**
+     * Construct.
+     *
+     * @param maxKbytes Max total size of cached fingerprints in kilobytes
+     * @param expireAfterAccessMinutes Evict entries not accessed for this time
+     */
+    @Autowired
+    public FingerprintService(
+        @Value("${fingerprints.cache.max-kbytes:524288}") long maxKbytes,
+        @Value("${fingerprints.cache.expire-after-access-minutes:60}") long expireAfterAccessMinutes
+    ) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxKbytes)
+            .weigher((Key k, MolfileFingerprints v) -> (int) Math.min(Integer.MAX_VALUE, 1 + v.sizeInBytes() / 1024))
+            .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Retrieve fingerprints of a molfile.
+     *
+     * Fingerprints are calculated on the first access, on the shared compute pool; concurrent requests for the same key
+     * wait for a single calculation.
+     *
+     * @param molfile Structures to fingerprint
+     * @param spec Fingerprint spec
+     * @return Fingerprints of all structures of the molfile
+     */
+    public MolfileFingerprints getFingerprints(Molfile molfile, FingerprintSpec spec) {
+        return getFingerprints(molfile, spec, ProgressObservers.nullProgressObserver());
+    }
+
+    /**
+     * Retrieve fingerprints of a molfile with progress tracking.
+     *
+     * @param molfile Structures to fingerprint
+     * @param spec Fingerprint spec
+     * @param po Observer to track progress of the calculation. Method {@link SubProgressObserver#done()} will be
+     * invoked, also when the fingerprints are already cached or calculated by a concurrent request. Cancellation
+     * abandons the calculation and nothing is cached; concurrent requests waiting for the same calculation are not
+     * cancelled, they start a new calculation instead.
+     * @return Fingerprints of all structures of the molfile
+     * @throws java.util.concurrent.CancellationException when the calculation is cancelled
+     */
+    public MolfileFingerprints getFingerprints(Molfile molfile, FingerprintSpec spec, SubProgressObserver po) {
+        try {
+            while (true) {
+                try {
+                    return this.cache.get(new Key(molfile, spec), () -> MolfileFingerprints.generate(
+                        molfile.getAllMolecules(),
+                        spec,
+                        this.computeService.getPool(),
+                        po));
+                } catch (ExecutionException | UncheckedExecutionException e) {
+                    if (e.getCause() instanceof CancellationException && !po.isCancelled()) {
+                        // the calculation of a concurrent request was cancelled; retry under our observer
+                        continue;
+                    }
+                    Throwables.throwIfUnchecked(e.getCause());
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            po.done();
+        }
+    }
+
+    /**
+     * Drop all cached fingerprints of a molfile.
+     *
+     * @param molfile Molfile
+     */
+    public void invalidate(Molfile molfile) {
+        this.cache.asMap().keySet().removeIf(k -> k.molfile == molfile);
+    }
+
+    /**
+     * Drop all cached fingerprints.
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Cache hit/miss/eviction statistics.
+     *
+     * @return Current statistics snapshot
+     */
+    public CacheStats getCacheStats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Cached entry count.
+     *
+     * @return Entry count
+     */
+    public long getCachedCount() {
+        return this.cache.size();
+    }
+
+    /**
+     * Total approximate size of cached fingerprints.
+     *
+     * @return Size in bytes
+     */
+    public long getCachedBytes() {
+        return this.cache.asMap().values().stream().mapToLong(MolfileFingerprints::sizeInBytes).sum();
+    }
+
+    /**
+     * Cache key.
+     *
+     * Molfiles are compared by identity.
+     */
+    private static final class Key {
+
+        /**
+         * Fingerprinted molfile.
+         */
+        private final Molfile molfile;
+
+        /**
+         * Fingerprint spec.
+         */
+        private final FingerprintSpec spec;
+
+        /**
+         * Construct.
+         *
+         * @param molfile Fingerprinted molfile
+         * @param spec Fingerprint spec
+         */
+        Key(Molfile molfile, FingerprintSpec spec) {
+            this.molfile = molfile;
+            this.spec = spec;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.molfile == other.molfile && this.spec.equals(other.spec);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.molfile) + this.spec.hashCode();
+        }
+    }
+
+}
@@ -16,31 +16,27 @@
  */
 package com.chemaxon.clustering.web.services;
 
-import chemaxon.struc.Molecule;
+import com.chemaxon.calculations.common.SubProgressObserver;
 import com.chemaxon.clustering.common.IDBasedClusterBuilder;
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.web.algorithms.NearestCentroidSearch;
+import com.chemaxon.clustering.web.algorithms.NeighborGraph;
+import com.chemaxon.clustering.web.algorithms.SphereExclusionFilter;
 import com.chemaxon.clustering.web.dao.GroupingDao;
+import com.chemaxon.clustering.web.entities.Clustering;
 import com.chemaxon.clustering.web.entities.Grouping;
 import com.chemaxon.clustering.web.entities.Molfile;
-import com.chemaxon.descriptors.common.BinaryVectorDescriptor;
-import com.chemaxon.descriptors.common.unguarded.UnguardedContext;
-import com.chemaxon.descriptors.common.unguarded.UnguardedDissimilarityCalculator;
-import com.chemaxon.descriptors.common.unguarded.UnguardedExtractor;
-import com.chemaxon.descriptors.fingerprints.cfp.Cfp;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpGenerator;
-import com.chemaxon.descriptors.fingerprints.cfp.CfpParameters;
-import com.chemaxon.descriptors.metrics.BinaryMetrics;
-import com.chemaxon.overlap.io.StandardizerWrapper;
-import com.chemaxon.overlap.io.StandardizerWrappers;
+import com.chemaxon.clustering.web.fingerprints.MolfileFingerprints;
+import com.chemaxon.clustering.web.hierarchy.CutIndex;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
 import com.google.common.base.Stopwatch;
-import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -51,12 +47,32 @@ import org.springframework.stereotype.Service;
 @Service
 public class GroupingService {
 
+    /**
+     * Max number of radius evaluations for adaptive sphere exclusion.
+     */
+    private static final int ADAPTIVE_SPHEX_MAX_ITERATIONS = 32;
+
     @Autowired
     private GroupingDao groupingDao;
 
     @Autowired
     private MolfilesService molfilesService;
 
+    @Autowired
+    private FingerprintService fingerprintService;
+
+    @Autowired
+    private ComputeService computeService;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    /**
+     * Max number of neighbor pairs stored for adaptive sphere exclusion.
+     */
+    @Value("${sphex.neighbor-graph.max-edges:20000000}")
+    private long neighborGraphMaxEdges;
+
 
     /**
      * Invoke a random grouping of structures into approximately equal sized clusters.
@@ -139,81 +155,105 @@ public class GroupingService {
 
     }
 
-    public Grouping invokeNearestNeighborAssociation(Grouping grouping, Molfile molfile, int groupId, String idSuggestion) {
+    /**
+     * Cut a hierarchic clustering into a flat grouping.
+     *
+     * Uses the precomputed {@link CutIndex} of the clustering; cost is linear in the structure count.
+     *
+     * @param clustering Clustering to cut
+     * @param level Cut level; maximal subtrees not above this level are kept as groups
+     * @param representatives When set a single group of the group representants is created, which can be used as
+     * centroids for nearest neighbor association; otherwise a group for each cut group
+     * @param idSuggestion Suggestion for ID of the result
+     * @return Executed grouping
+     */
+    public Grouping invokeHierarchyCut(
+        Clustering clustering,
+        double level,
+        boolean representatives,
+        String idSuggestion
+    ) {
         final Stopwatch totalTime =  Stopwatch.createStarted();
+        final CutIndex.Cut cut = clustering.getCutIndex().cut(level);
 
-        final CfpGenerator gen = CfpParameters.createNewBuilder()
-            .length(1024)
-            .bitsPerPattern(2)
-            .bondCount(7)
-            .build().getDescriptorGenerator();
-
-        final StandardizerWrapper std = StandardizerWrappers.aromatizeBasic();
+        final IDBasedClusterBuilder b = new IDBasedClusterBuilder();
+        if (representatives) {
+            final int clusterIndex = b.addNewCluster();
+            for (int g = 0; g < cut.getGroupCount(); g++) {
+                b.addStructureToCluster(cut.getRepresentant(g), clusterIndex);
+            }
+            if (cut.getGroupCount() > 0) {
+                b.updateRepresentant(cut.getRepresentant(0), clusterIndex);
+            }
+        } else {
+            for (int g = 0; g < cut.getGroupCount(); g++) {
+                final int clusterIndex = b.addNewCluster();
+                for (int member : cut.getMembers(g)) {
+                    b.addStructureToCluster(member, clusterIndex);
+                }
+                b.updateRepresentant(cut.getRepresentant(g), clusterIndex);
+            }
+        }
+        totalTime.stop();
 
-        final UnguardedContext<BinaryVectorDescriptor, long []> uc =
-            gen.comparisonContextFactory().forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO).unguardedContext();
+        final Grouping g = new Grouping(
+            b.build(),
+            totalTime.elapsed(TimeUnit.MILLISECONDS),
+            (representatives ? "Representatives of hierarchy cut at level " : "Hierarchy cut at level ") + level
+        );
 
-        final UnguardedExtractor<BinaryVectorDescriptor, long []> ue = uc.unguardedExtractor();
-        final UnguardedDissimilarityCalculator<long []> udc = uc.unguardedComparator();
+        g.addMessage(
+            "Hierarchy cut",
+            "  Clustering:          " + clustering.getAlgorithmDescription(),
+            "  Level:               " + level,
+            "  Clusters:            " + cut.getGroupCount(),
+            "  Representatives:     " + representatives,
+            "  Total time:          " + totalTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  ID suggestion:       " + idSuggestion
+        );
 
+        this.groupingDao.add(idSuggestion, g);
 
-        final List<long[]> fp = new ArrayList<>();
+        return g;
+    }
 
+    /**
+     * Invoke nearest neighbor association.
+     *
+     * Every structure of the molfile is assigned to the cluster of its most similar centroid.
+     *
+     * @param grouping Source grouping where members refer to the molfile
+     * @param molfile Structures to assign
+     * @param groupId Index of the group in the source grouping which members are used as centroids
+     * @param mode Centroid search mode; all modes give the same result
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting and association stages to
+     * @return Executed grouping
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     */
+    public Grouping invokeNearestNeighborAssociation(
+        Grouping grouping,
+        Molfile molfile,
+        int groupId,
+        NearestCentroidSearch.Mode mode,
+        String idSuggestion,
+        ProgressTracker progress
+    ) {
+        final Stopwatch totalTime =  Stopwatch.createStarted();
 
         final Stopwatch fpgenTime = Stopwatch.createStarted();
-        for (int molIndex = 0; molIndex < molfile.size(); molIndex++) {
-            final Molecule mol = molfile.getMolecule(molIndex).clone();
-            std.standardize(mol);
-            final Cfp cfp = gen.generateDescriptor(mol);
-            final long [] fpbits = ue.apply(cfp);
-            fp.add(fpbits);
-        }
+        final MolfileFingerprints fp = this.fingerprintService
+            .getFingerprints(molfile, FingerprintSpec.GROUPING, progress.stage("Fingerprinting"));
+        final PackedFingerprints fpmols = fp.packed();
         fpgenTime.stop();
 
 
-        final List<Integer> centroids = grouping.getGrouping().clusters().get(groupId).members();
-
+        final int [] centroids = toIntArray(grouping.getGrouping().clusters().get(groupId).members());
 
-        // add clusters for each centroids; add centroids
-        final Set<Integer> centroidIndices = new HashSet<>();
         final IDBasedClusterBuilder b = new IDBasedClusterBuilder();
-        final int [] clusterIndices = new int [centroids.size()];
-        for (int i = 0; i < clusterIndices.length; i++) {
-            final int centroidIndex = centroids.get(i);
-            centroidIndices.add(centroidIndex);
-            final int clusterIndex = b.addNewCluster();
-            clusterIndices[i] = clusterIndex;
-            b.addStructureToCluster(centroidIndex, clusterIndex);
-            b.updateRepresentant(centroidIndex, clusterIndex);
-        }
-
         final Stopwatch comparisonTime = Stopwatch.createStarted();
-        // find closest centroids for all remaining molecules
-        for (int molIndex = 0; molIndex < molfile.size(); molIndex++) {
-            if (centroidIndices.contains(molIndex)) {
-                // centroids are already clustered
-                continue;
-            }
-
-            int bestCluster = -1;
-            double bestDissim = Double.MAX_VALUE;
-            final long [] fpmol = fp.get(molIndex);
-
-
-            for (int clusterIndex = 0; clusterIndex < centroids.size(); clusterIndex ++) {
-                final int centroidIndex = centroids.get(clusterIndex);
-                final long [] fpcent = fp.get(centroidIndex);
-
-                final double d = udc.dissimilarity(fpcent, fpmol);
-
-                if (d < bestDissim) {
-                    bestDissim = d;
-                    bestCluster = clusterIndex;
-                }
-            }
-
-            b.addStructureToCluster(molIndex, bestCluster);
-        }
+        final NearestCentroidSearch.Result nearest =
+            associate(b, fpmols, centroids, mode, progress.stage("Association"));
         comparisonTime.stop();
 
         totalTime.stop();
@@ -229,9 +269,13 @@ public class GroupingService {
         g.addMessage(
             "Nearest neighbor association",
             "  Molecules:           " + molfile.size(),
-            "  Centroids:           " + centroids.size(),
+            "  Centroids:           " + centroids.length,
             "  FP time:             " + fpgenTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Search mode:         " + mode,
+            "  Comparisons:         " + nearest.getComparisons(),
+            "  Pruned comparisons:  " + nearest.getPruned(),
             "  Comparison time:     " + comparisonTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Throughput:          " + comparisonsPerSecond(nearest.getComparisons(), comparisonTime) + " comparisons/s",
             "  Total time:          " + totalTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
             "  ID suggestion:       " + idSuggestion
         );
@@ -242,61 +286,40 @@ public class GroupingService {
     }
 
 
-    public Grouping invokeSphexCentroidFilter(Grouping grouping, Molfile molfile, int groupId, double radius, String idSuggestion) {
+    /**
+     * Invoke sphere exclusion centroid filtering.
+     *
+     * @param grouping Source grouping where members refer to the molfile
+     * @param molfile Structures referenced by the grouping
+     * @param groupId Index of the group in the source grouping to filter
+     * @param radius Tanimoto dissimilarity radius
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting and filtering stages to
+     * @return Executed grouping
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     */
+    public Grouping invokeSphexCentroidFilter(
+        Grouping grouping,
+        Molfile molfile,
+        int groupId,
+        double radius,
+        String idSuggestion,
+        ProgressTracker progress
+    ) {
         final Stopwatch totalTime =  Stopwatch.createStarted();
 
-        final CfpGenerator gen = CfpParameters.createNewBuilder()
-            .length(1024)
-            .bitsPerPattern(2)
-            .bondCount(7)
-            .build().getDescriptorGenerator();
-
-        final StandardizerWrapper std = StandardizerWrappers.aromatizeBasic();
-
-        final UnguardedContext<BinaryVectorDescriptor, long []> uc =
-            gen.comparisonContextFactory().forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO).unguardedContext();
-
-        final UnguardedExtractor<BinaryVectorDescriptor, long []> ue = uc.unguardedExtractor();
-        final UnguardedDissimilarityCalculator<long []> udc = uc.unguardedComparator();
-        final double radiusDenorm = udc.denormalize(radius);
-
-        final List<long[]> fp = new ArrayList<>();
-
-        final List<Integer> clusterMembers = grouping.getGrouping().clusters().get(groupId).members();
-
-
         final Stopwatch fpgenTime = Stopwatch.createStarted();
-        for (int molIndex : clusterMembers) {
-            final Molecule mol = molfile.getMolecule(molIndex).clone();
-            std.standardize(mol);
-            final Cfp cfp = gen.generateDescriptor(mol);
-            final long [] fpbits = ue.apply(cfp);
-            fp.add(fpbits);
-        }
+        final MolfileFingerprints fp = this.fingerprintService
+            .getFingerprints(molfile, FingerprintSpec.GROUPING, progress.stage("Fingerprinting"));
         fpgenTime.stop();
 
-        final BitSet clusterMemberIndicesToRemove = new BitSet();
-
+        final List<Integer> clusterMembers = grouping.getGrouping().clusters().get(groupId).members();
+        // gather member fingerprints into a contiguous block; row i belongs to clusterMembers.get(i)
+        final PackedFingerprints fpm = fp.packed().select(toIntArray(clusterMembers));
 
         final Stopwatch comparisonTime = Stopwatch.createStarted();
-        for (int i = 0; i < clusterMembers.size(); i++) {
-            if (clusterMemberIndicesToRemove.get(i)) {
-                continue;
-            }
-            final long [] fpi = fp.get(i);
-            for (int j = i + 1; j < clusterMembers.size(); j++) {
-                if (clusterMemberIndicesToRemove.get(j)) {
-                    continue;
-                }
-                final long [] fpj = fp.get(j);
-
-                final double d = udc.dissimilarity(fpi, fpj);
-
-                if (d < radiusDenorm) {
-                    clusterMemberIndicesToRemove.set(j);
-                }
-            }
-        }
+        final SphereExclusionFilter.Result filtered = new SphereExclusionFilter(fpm)
+            .filter(radius, this.computeService.getPool(), progress.stage("Filtering"));
         comparisonTime.stop();
 
 
@@ -304,7 +327,7 @@ public class GroupingService {
         final IDBasedClusterBuilder b = new IDBasedClusterBuilder();
         final int ci = b.addNewCluster();
         for (int i = 0; i < clusterMembers.size(); i++) {
-            if (clusterMemberIndicesToRemove.get(i)) {
+            if (!filtered.isKept(i)) {
                 continue;
             }
             b.addStructureToCluster(
@@ -331,11 +354,11 @@ public class GroupingService {
         g.addMessage(
             "Sphere exclusion centroid filtering",
             "  Radius:              " + radius,
-            "  Denoramlized radius: " + radiusDenorm,
             "  Input size:          " + clusterMembers.size(),
-            "  Removed count:       " + clusterMemberIndicesToRemove.cardinality(),
+            "  Removed count:       " + (clusterMembers.size() - filtered.getKeptCount()),
             "  Kept count:          " + g.getGrouping().clusters().get(0).memberCount(),
             "  FP time:             " + fpgenTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Comparisons:         " + filtered.getComparisons(),
             "  Comparison time:     " + comparisonTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
             "  Total time:          " + totalTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
             "  ID suggestion:       " + idSuggestion
@@ -347,6 +370,214 @@ public class GroupingService {
     }
 
 
+    /**
+     * Invoke sphere exclusion clustering with a fixed radius.
+     *
+     * Structures are visited in input order; a structure not yet excluded becomes a centroid and excludes every later
+     * structure closer than the radius. Every structure is then assigned to its most similar centroid.
+     *
+     * @param molfile Structures to cluster
+     * @param radius Tanimoto dissimilarity radius
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting, filtering and association stages to
+     * @return Executed grouping
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     */
+    public Grouping invokeSphexClustering(
+        Molfile molfile,
+        double radius,
+        String idSuggestion,
+        ProgressTracker progress
+    ) {
+        final Stopwatch totalTime =  Stopwatch.createStarted();
+
+        final Stopwatch fpgenTime = Stopwatch.createStarted();
+        final PackedFingerprints fpmols = this.fingerprintService
+            .getFingerprints(molfile, FingerprintSpec.GROUPING, progress.stage("Fingerprinting")).packed();
+        fpgenTime.stop();
+
+        final Stopwatch sphexTime = Stopwatch.createStarted();
+        final SphereExclusionFilter.Result filtered = new SphereExclusionFilter(fpmols)
+            .filter(radius, this.computeService.getPool(), progress.stage("Filtering"));
+        final int [] centroids = new int[filtered.getKeptCount()];
+        for (int i = 0, c = 0; i < fpmols.size(); i++) {
+            if (filtered.isKept(i)) {
+                centroids[c++] = i;
+            }
+        }
+        sphexTime.stop();
+
+        final IDBasedClusterBuilder b = new IDBasedClusterBuilder();
+        final Stopwatch comparisonTime = Stopwatch.createStarted();
+        final NearestCentroidSearch.Result nearest =
+            associate(b, fpmols, centroids, NearestCentroidSearch.Mode.BIT_BOUND, progress.stage("Association"));
+        comparisonTime.stop();
+
+        totalTime.stop();
+
+        final Grouping g = new Grouping(
+            b.build(),
+            totalTime.elapsed(TimeUnit.MILLISECONDS),
+            "Sphere exclusion clustering with radius " + radius
+        );
+
+        g.addMessage(
+            "Sphere exclusion clustering",
+            "  Radius:              " + radius,
+            "  Molecules:           " + molfile.size(),
+            "  Clusters:            " + centroids.length,
+            "  FP time:             " + fpgenTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Sphex comparisons:   " + filtered.getComparisons(),
+            "  Sphex time:          " + sphexTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  NN comparisons:      " + nearest.getComparisons(),
+            "  NN time:             " + comparisonTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Total time:          " + totalTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  ID suggestion:       " + idSuggestion
+        );
+
+        this.groupingDao.add(idSuggestion, g);
+
+        return g;
+    }
+
+    /**
+     * Invoke sphere exclusion clustering with an adaptive radius.
+     *
+     * Pairs closer than the max radius are calculated once; the radius is then bisected on these pairs until the
+     * centroid count falls into the specified range. Every structure is assigned to its most similar centroid.
+     *
+     * @param molfile Structures to cluster
+     * @param minCount Min cluster count
+     * @param maxCount Max cluster count
+     * @param maxRadius Largest Tanimoto dissimilarity radius to consider
+     * @param idSuggestion Suggestion for ID of the result
+     * @param progress Tracker to report the fingerprinting, neighbor graph and association stages to
+     * @return Executed grouping
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     */
+    public Grouping invokeAdaptiveSphexClustering(
+        Molfile molfile,
+        int minCount,
+        int maxCount,
+        double maxRadius,
+        String idSuggestion,
+        ProgressTracker progress
+    ) {
+        final Stopwatch totalTime =  Stopwatch.createStarted();
+
+        final Stopwatch fpgenTime = Stopwatch.createStarted();
+        final PackedFingerprints fpmols = this.fingerprintService
+            .getFingerprints(molfile, FingerprintSpec.GROUPING, progress.stage("Fingerprinting")).packed();
+        fpgenTime.stop();
+
+        final Stopwatch graphTime = Stopwatch.createStarted();
+        final NeighborGraph graph = new NeighborGraph(
+            fpmols,
+            maxRadius,
+            this.neighborGraphMaxEdges,
+            this.computeService.getPool(),
+            progress.stage("Neighbor graph"));
+        graphTime.stop();
+
+        final Stopwatch searchTime = Stopwatch.createStarted();
+        progress.checkCancelled();
+        final NeighborGraph.RadiusSearch search = graph.searchRadius(minCount, maxCount, ADAPTIVE_SPHEX_MAX_ITERATIONS);
+        searchTime.stop();
+
+        final IDBasedClusterBuilder b = new IDBasedClusterBuilder();
+        final Stopwatch comparisonTime = Stopwatch.createStarted();
+        final NearestCentroidSearch.Result nearest = associate(
+            b, fpmols, search.getCentroids(), NearestCentroidSearch.Mode.BIT_BOUND, progress.stage("Association"));
+        comparisonTime.stop();
+
+        totalTime.stop();
+
+        final Grouping g = new Grouping(
+            b.build(),
+            totalTime.elapsed(TimeUnit.MILLISECONDS),
+            "Adaptive sphere exclusion clustering into " + minCount + " - " + maxCount + " clusters"
+        );
+
+        g.addMessage(
+            "Adaptive sphere exclusion clustering",
+            "  Target clusters:     " + minCount + " - " + maxCount,
+            "  Max radius:          " + maxRadius,
+            "  Selected radius:     " + search.getRadius(),
+            "  Iterations:          " + search.getIterations(),
+            "  Molecules:           " + molfile.size(),
+            "  Clusters:            " + search.getCentroids().length,
+            "  FP time:             " + fpgenTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Neighbor pairs:      " + graph.getEdgeCount(),
+            "  Neighbor graph time: " + graphTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Radius search time:  " + searchTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  NN comparisons:      " + nearest.getComparisons(),
+            "  NN time:             " + comparisonTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  Total time:          " + totalTime.elapsed(TimeUnit.MILLISECONDS) + " ms",
+            "  ID suggestion:       " + idSuggestion
+        );
+
+        this.groupingDao.add(idSuggestion, g);
+
+        return g;
+    }
+
+    /**
+     * Assign structures to their most similar centroids.
+     *
+     * A cluster is added for each centroid with the centroid as its representant, in centroid order. Every other
+     * structure is added to the cluster of its most similar centroid.
+     *
+     * @param b Builder to add clusters to
+     * @param fpmols Fingerprints of all structures
+     * @param centroids Centroid structure indices
+     * @param mode Centroid search mode
+     * @param po Observer to track progress of the search
+     * @return Search result
+     */
+    private NearestCentroidSearch.Result associate(
+        IDBasedClusterBuilder b,
+        PackedFingerprints fpmols,
+        int [] centroids,
+        NearestCentroidSearch.Mode mode,
+        SubProgressObserver po
+    ) {
+        // add clusters for each centroids; add centroids
+        final boolean [] isCentroid = new boolean[fpmols.size()];
+        final int [] clusterIndices = new int [centroids.length];
+        for (int i = 0; i < clusterIndices.length; i++) {
+            final int centroidIndex = centroids[i];
+            isCentroid[centroidIndex] = true;
+            final int clusterIndex = b.addNewCluster();
+            clusterIndices[i] = clusterIndex;
+            b.addStructureToCluster(centroidIndex, clusterIndex);
+            b.updateRepresentant(centroidIndex, clusterIndex);
+        }
+
+        // centroids are already clustered; find closest centroids for all remaining molecules
+        // centroids may be listed multiple times, count the distinct ones
+        int queryCount = 0;
+        for (boolean c : isCentroid) {
+            if (!c) {
+                queryCount++;
+            }
+        }
+        final int [] queries = new int[queryCount];
+        for (int molIndex = 0, q = 0; molIndex < fpmols.size(); molIndex++) {
+            if (!isCentroid[molIndex]) {
+                queries[q++] = molIndex;
+            }
+        }
+
+        // gather centroid fingerprints into a contiguous block scanned for each molecule
+        final NearestCentroidSearch.Result nearest = new NearestCentroidSearch(fpmols.select(centroids))
+            .search(fpmols, queries, mode, this.computeService.getPool(), po);
+
+        for (int q = 0; q < queries.length; q++) {
+            b.addStructureToCluster(queries[q], clusterIndices[nearest.nearest(q)]);
+        }
+        return nearest;
+    }
+
     /**
      * Invoke a random selection.
      *
@@ -428,6 +659,32 @@ public class GroupingService {
 
 
 
+    /**
+     * Calculate throughput.
+     *
+     * @param comparisons Comparisons done
+     * @param time Elapsed time of the comparisons
+     * @return Comparisons per second, rounded
+     */
+    private static long comparisonsPerSecond(long comparisons, Stopwatch time) {
+        final long micros = Math.max(1, time.elapsed(TimeUnit.MICROSECONDS));
+        return Math.round(comparisons * 1e6 / micros);
+    }
+
+    /**
+     * Convert structure indices to a primitive array.
+     *
+     * @param indices Indices to convert
+     * @return Array of the indices in the same order
+     */
+    private static int [] toIntArray(List<Integer> indices) {
+        final int [] ret = new int[indices.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = indices.get(i);
+        }
+        return ret;
+    }
+
     /**
      * Retrieve grouping by ID.
      *
@@ -468,7 +725,9 @@ public class GroupingService {
      * @param grouping Instance
      */
     public void deleteGrouping(Grouping grouping) {
+        final String id = getGroupingId(grouping);
         this.groupingDao.delete(grouping);
+        this.responseCache.invalidate("groupings/" + id);
     }
 
     /**
@@ -476,6 +735,7 @@ public class GroupingService {
      */
     public void deleteAllGroupings() {
         this.groupingDao.deleteAll();
+        this.responseCache.invalidate("groupings");
     }
 
 
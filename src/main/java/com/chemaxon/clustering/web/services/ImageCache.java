@@ -0,0 +1,417 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Size bounded cache of rendered images.
+ *
+ * Images are keyed by the rendered entity, a structure index, the image dimensions and a rendering options string.
+ * Entities are compared by identity, since IDs of deleted entities can be reused. An image is rendered on the first
+ * access; concurrent requests for the same key wait for a single rendering. Entries are weighted by their size.
+ *
+ * <p>When a spill directory is configured, images evicted due to the size limit are written there and read back on
+ * their next access instead of rendering them again. Spilled files are evicted in least recently used order above a
+ * configurable total size.</p>
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class ImageCache {
+
+    /**
+     * Extension of spilled files.
+     */
+    private static final String EXTENSION = ".img";
+
+    /**
+     * Cached images.
+     *
+     * Entries are weighted by their size in kilobytes.
+     */
+    private final Cache<Key, byte []> cache;
+
+    /**
+     * Directory of spilled images; {@code null} when spilling is disabled.
+     */
+    private final File spillDirectory;
+
+    /**
+     * Max total size of spilled images in bytes.
+     */
+    private final long maxSpillBytes;
+
+    /**
+     * Sizes of the spilled files by file name in access order.
+     *
+     * Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Long> spilled = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Total size of the spilled files in bytes.
+     *
+     * Guarded by {@code this}.
+     */
+    private long spilledBytes;
+
+    /**
+     * File name prefixes of entities.
+     */
+    private final Map<Object, String> prefixes = new ConcurrentHashMap<>();
+
+    /**
+     * Source of file name prefixes.
+     */
+    private final AtomicLong nextPrefix = new AtomicLong();
+
+    /**
+     * Misses served from the spill directory.
+     */
+    private final AtomicLong spillHitCount = new AtomicLong();
+
+    /**
+     * Images written to the spill directory.
+     */
+    private final AtomicLong spillCount = new AtomicLong();
+
+    /**
+     * Construct; clear spilled files left in the directory.
+     *
+     * @param maxKbytes Max total size of cached images in kilobytes
+     * @param spillDirectory Directory of spilled images; empty to disable spilling
+     * @param maxSpillMbytes Max total size of spilled images in megabytes
+     * @throws IllegalStateException when the spill directory can not be created
+     */
+    @Autowired
+    public ImageCache(
+        @Value("${images.cache.max-kbytes:65536}") long maxKbytes,
+        @Value("${images.spill-directory:}") String spillDirectory,
+        @Value("${images.spill.max-mbytes:1024}") long maxSpillMbytes
+    ) {
+        this.maxSpillBytes = maxSpillMbytes * 1024 * 1024;
+        this.spillDirectory = spillDirectory.isEmpty() ? null : new File(spillDirectory);
+        if (this.spillDirectory != null) {
+            if (!this.spillDirectory.isDirectory() && !this.spillDirectory.mkdirs()) {
+                throw new IllegalStateException("Can not create image spill directory " + this.spillDirectory);
+            }
+            final File [] stale = this.spillDirectory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            for (File f : stale == null ? new File[0] : stale) {
+                if (!f.delete()) {
+                    throw new IllegalStateException("Can not delete stale spilled image " + f);
+                }
+            }
+        }
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxKbytes)
+            .weigher((Key k, byte [] v) -> 1 + v.length / 1024)
+            .removalListener(this::onRemoval)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Renders an image.
+     */
+    @FunctionalInterface
+    public interface Renderer {
+
+        /**
+         * Render.
+         *
+         * @return Encoded image
+         * @throws IOException propagated
+         */
+        byte [] render() throws IOException;
+    }
+
+    /**
+     * Retrieve an image, rendering it on a miss.
+     *
+     * @param entity Rendered entity, compared by identity
+     * @param index Structure index or 0 when not applicable
+     * @param w Image width in pixels, or 0 when determined by the rendering
+     * @param h Image height in pixels, or 0 when determined by the rendering
+     * @param options Other rendering options
+     * @param renderer Renders the image on a miss
+     * @return Encoded image; must not be modified
+     * @throws IOException propagated from the renderer
+     */
+    public byte [] get(Object entity, long index, int w, int h, String options, Renderer renderer) throws IOException {
+        final Key key = new Key(entity, index, w, h, options);
+        try {
+            return this.cache.get(key, () -> {
+                final byte [] spill = readSpilled(key);
+                return spill != null ? spill : renderer.render();
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Spill images evicted due to the size limit.
+     *
+     * @param notification Removal
+     */
+    private void onRemoval(RemovalNotification<Key, byte []> notification) {
+        if (this.spillDirectory == null || notification.getCause() != RemovalCause.SIZE) {
+            return;
+        }
+        final String prefix = this.prefixes.get(notification.getKey().entity);
+        if (prefix == null) {
+            // entity already invalidated
+            return;
+        }
+        final String name = prefix + notification.getKey().fileName();
+        final byte [] content = notification.getValue();
+        try {
+            Files.write(new File(this.spillDirectory, name).toPath(), content);
+        } catch (IOException e) {
+            return;
+        }
+        this.spillCount.incrementAndGet();
+        synchronized (this) {
+            final Long previous = this.spilled.put(name, (long) content.length);
+            this.spilledBytes += content.length - (previous == null ? 0 : previous);
+            final Iterator<Map.Entry<String, Long>> it = this.spilled.entrySet().iterator();
+            while (this.spilledBytes > this.maxSpillBytes && it.hasNext()) {
+                final Map.Entry<String, Long> eldest = it.next();
+                it.remove();
+                this.spilledBytes -= eldest.getValue();
+                deleteSpilled(eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Read back and remove a spilled image.
+     *
+     * @param key Key
+     * @return Content or {@code null} when not spilled
+     */
+    private byte [] readSpilled(Key key) {
+        if (this.spillDirectory == null) {
+            return null;
+        }
+        final String name = this.prefixes.computeIfAbsent(key.entity, e -> this.nextPrefix.getAndIncrement() + "-")
+            + key.fileName();
+        synchronized (this) {
+            final Long size = this.spilled.remove(name);
+            if (size == null) {
+                return null;
+            }
+            this.spilledBytes -= size;
+        }
+        final File f = new File(this.spillDirectory, name);
+        try {
+            final byte [] ret = Files.readAllBytes(f.toPath());
+            this.spillHitCount.incrementAndGet();
+            return ret;
+        } catch (IOException e) {
+            // render again
+            return null;
+        } finally {
+            deleteSpilled(name);
+        }
+    }
+
+    /**
+     * Delete a spilled file.
+     *
+     * @param name File name
+     */
+    private void deleteSpilled(String name) {
+        final File f = new File(this.spillDirectory, name);
+        if (!f.delete()) {
+            f.deleteOnExit();
+        }
+    }
+
+    /**
+     * Drop all images of an entity.
+     *
+     * @param entity Rendered entity
+     */
+    public void invalidate(Object entity) {
+        final String prefix = this.prefixes.remove(entity);
+        this.cache.asMap().keySet().removeIf(k -> k.entity == entity);
+        if (prefix == null) {
+            return;
+        }
+        synchronized (this) {
+            final Iterator<Map.Entry<String, Long>> it = this.spilled.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, Long> e = it.next();
+                if (e.getKey().startsWith(prefix)) {
+                    it.remove();
+                    this.spilledBytes -= e.getValue();
+                    deleteSpilled(e.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop all images of entities of a type.
+     *
+     * @param entityType Type of the rendered entities
+     */
+    public void invalidateAll(Class<?> entityType) {
+        this.prefixes.keySet().stream().filter(entityType::isInstance).forEach(this::invalidate);
+        this.cache.asMap().keySet().removeIf(k -> entityType.isInstance(k.entity));
+    }
+
+    /**
+     * Cache hit/miss/eviction statistics.
+     *
+     * Misses served from the spill directory are also counted as misses.
+     *
+     * @return Current statistics snapshot
+     */
+    public CacheStats getCacheStats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Cached entry count.
+     *
+     * @return Entry count
+     */
+    public long getCachedCount() {
+        return this.cache.size();
+    }
+
+    /**
+     * Total size of cached images.
+     *
+     * @return Size in bytes
+     */
+    public long getCachedBytes() {
+        return this.cache.asMap().values().stream().mapToLong(v -> v.length).sum();
+    }
+
+    /**
+     * Misses served from the spill directory.
+     *
+     * @return Count of images read back
+     */
+    public long getSpillHitCount() {
+        return this.spillHitCount.get();
+    }
+
+    /**
+     * Images written to the spill directory.
+     *
+     * @return Count of spilled images
+     */
+    public long getSpillCount() {
+        return this.spillCount.get();
+    }
+
+    /**
+     * Total size of currently spilled images.
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getSpilledBytes() {
+        return this.spilledBytes;
+    }
+
+    /**
+     * Cache key.
+     *
+     * Entities are compared by identity.
+     */
+    private static final class Key {
+
+        private final Object entity;
+        private final long index;
+        private final int w;
+        private final int h;
+        private final String options;
+
+        /**
+         * Construct.
+         *
+         * @param entity Rendered entity
+         * @param index Structure index
+         * @param w Image width
+         * @param h Image height
+         * @param options Other rendering options
+         */
+        Key(Object entity, long index, int w, int h, String options) {
+            this.entity = entity;
+            this.index = index;
+            this.w = w;
+            this.h = h;
+            this.options = options;
+        }
+
+        /**
+         * Spill file name after the entity prefix.
+         *
+         * @return File name
+         */
+        String fileName() {
+            return this.index + "-" + this.w + "x" + this.h + "-"
+                + Hashing.murmur3_128().hashString(this.options, StandardCharsets.UTF_8) + EXTENSION;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.entity == other.entity && this.index == other.index && this.w == other.w
+                && this.h == other.h && this.options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            int ret = System.identityHashCode(this.entity);
+            ret = 31 * ret + Long.hashCode(this.index);
+            ret = 31 * ret + this.w;
+            ret = 31 * ret + this.h;
+            return 31 * ret + this.options.hashCode();
+        }
+    }
+}
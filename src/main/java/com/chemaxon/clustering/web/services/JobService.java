@@ -0,0 +1,369 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.clustering.web.dao.JobDao;
+import com.chemaxon.clustering.web.entities.Job;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Executes long running operations in the background.
+ *
+ * Jobs are executed by a fixed number of worker threads; submissions beyond the configured queue capacity are rejected.
+ * Data parallel stages of jobs run on the separate, smaller job pool of {@link ComputeService} so interactive requests
+ * keep free cores.
+ *
+ * <p>Jobs can be cancelled and can have a deadline counted from the start of their execution. Both are signalled
+ * through the progress tracker of the job; calculations poll it at block granularity and abandon their work, so the
+ * worker and the pool threads are released in bounded time.</p>
+ *
+ * <p>A job which needs more memory than currently free in the {@link MemoryGovernor} budget does not wait on its
+ * worker: it is queued again and executed from the start when memory is released.</p>
+ *
+ * <p>Finished jobs are retained for a configured time and up to a configured count; evicted jobs are removed together
+ * with their progress trackers. Eviction happens on submission and on listing the jobs.</p>
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class JobService {
+
+    @Autowired
+    private JobDao jobDao;
+
+    @Autowired
+    private ProgressService progressService;
+
+    @Autowired
+    private ComputeService computeService;
+
+    @Autowired
+    private MemoryGovernor memoryGovernor;
+
+    /**
+     * Executes jobs.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Deadline in seconds for jobs submitted without one; 0 for none.
+     */
+    private final long defaultTimeout;
+
+    /**
+     * Time in milliseconds finished jobs are retained for.
+     */
+    private final long retentionMillis;
+
+    /**
+     * Max number of retained finished jobs.
+     */
+    private final int maxFinished;
+
+    /**
+     * IDs of the progress trackers registered for the jobs.
+     */
+    private final Map<Job, String> progressIds = new ConcurrentHashMap<>();
+
+    /**
+     * Construct.
+     *
+     * @param workers Number of jobs executed concurrently
+     * @param queueCapacity Max number of jobs waiting for execution
+     * @param defaultTimeout Deadline in seconds for jobs submitted without one; 0 for none
+     * @param retentionMinutes Time in minutes finished jobs are retained for
+     * @param maxFinished Max number of retained finished jobs
+     */
+    @Autowired
+    public JobService(
+        @Value("${jobs.workers:2}") int workers,
+        @Value("${jobs.queue-capacity:100}") int queueCapacity,
+        @Value("${jobs.default-timeout-seconds:0}") long defaultTimeout,
+        @Value("${jobs.retention-minutes:60}") long retentionMinutes,
+        @Value("${jobs.max-finished:1000}") int maxFinished
+    ) {
+        this.defaultTimeout = defaultTimeout;
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+        this.maxFinished = maxFinished;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            workers,
+            workers,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+                final Thread t = new Thread(r, "job-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /**
+     * Submit a job.
+     *
+     * @param description Operation description
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @param operation Operation to execute; reports progress to the passed tracker and returns the URL of its already
+     * registered result
+     * @return Submitted job; its progress is registered with the same ID in {@link ProgressService}
+     * @throws IllegalStateException when the job queue is full
+     * @throws IllegalArgumentException when timeout is negative
+     */
+    public Job submit(String description, long timeout, Function<ProgressTracker, String> operation) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Invalid timeout specified: " + timeout);
+        }
+        final long effectiveTimeout = timeout > 0 ? timeout : this.defaultTimeout;
+        evictFinished();
+        final Job job = new Job(description);
+        final String id = this.jobDao.add("job", job);
+        this.progressIds.put(job, this.progressService.register(id, job.getProgress()));
+        try {
+            this.executor.execute(new Execution(job, effectiveTimeout, operation));
+        } catch (RejectedExecutionException e) {
+            this.progressService.unregister(this.progressIds.remove(job));
+            this.jobDao.delete(job);
+            throw new IllegalStateException("Job queue is full, try again later", e);
+        }
+        return job;
+    }
+
+    /**
+     * Execute an operation on the calling thread.
+     *
+     * Used by synchronous endpoints: the progress of the operation is registered while it runs and it is subject to
+     * the same deadline as the jobs.
+     *
+     * @param <T> Result type
+     * @param idSuggestion Progress ID suggestion
+     * @param timeout Max execution time in seconds; 0 for the configured default
+     * @param operation Operation to execute; reports progress to the passed tracker
+     * @return Result of the operation
+     * @throws IllegalArgumentException when timeout is negative
+     * @throws CancellationException when the deadline is exceeded
+     */
+    public <T> T invoke(String idSuggestion, long timeout, Function<ProgressTracker, T> operation) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Invalid timeout specified: " + timeout);
+        }
+        final long effectiveTimeout = timeout > 0 ? timeout : this.defaultTimeout;
+        final ProgressTracker progress = new ProgressTracker();
+        if (effectiveTimeout > 0) {
+            progress.setDeadline(effectiveTimeout, TimeUnit.SECONDS);
+        }
+        final String progressId = this.progressService.register(idSuggestion, progress);
+        try {
+            return operation.apply(progress);
+        } finally {
+            progress.finish();
+            this.progressService.unregister(progressId);
+        }
+    }
+
+    /**
+     * Cancel a job.
+     *
+     * A queued job is cancelled immediately. A running job is cancelled when its calculation notices the request, its
+     * state is updated then. Finished jobs are not affected.
+     *
+     * @param job Job to cancel
+     */
+    public void cancel(Job job) {
+        job.getProgress().cancel("Cancelled on request");
+        if (job.getState() == Job.State.QUEUED) {
+            job.markCancelled("Cancelled on request");
+            job.getProgress().finish();
+        }
+    }
+
+    /**
+     * Retrieve job by ID.
+     *
+     * @param id ID of {@link Job} to retrieve
+     * @return Instance identified by the given ID.
+     * @throws NoSuchElementException when given ID not found.
+     */
+    public Job getJob(String id) {
+        return this.jobDao.get(id);
+    }
+
+    /**
+     * Retrieve all jobs.
+     *
+     * @return ID to job mapping.
+     */
+    public Map<String, Job> getAllJobs() {
+        evictFinished();
+        return this.jobDao.getAll();
+    }
+
+    /**
+     * Remove finished jobs beyond the retention time or count along with their progress trackers.
+     */
+    private synchronized void evictFinished() {
+        final long expiry = System.currentTimeMillis() - this.retentionMillis;
+        final List<Job> finished = this.jobDao.getAll().values().stream()
+            .filter(Job::isFinished)
+            .sorted(Comparator.comparingLong(Job::getFinishTime).reversed())
+            .collect(Collectors.toList());
+        for (int i = 0; i < finished.size(); i++) {
+            final Job job = finished.get(i);
+            if (i >= this.maxFinished || job.getFinishTime() < expiry) {
+                this.jobDao.delete(job);
+                final String progressId = this.progressIds.remove(job);
+                if (progressId != null) {
+                    this.progressService.unregister(progressId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve Job ID.
+     *
+     * @param job Instance
+     * @return ID of instance
+     * @throws NoSuchElementException when given ID not found for the specified instance
+     */
+    public String getJobId(Job job) {
+        return this.jobDao.getIdOf(job);
+    }
+
+    /**
+     * Execution of a job on the workers.
+     */
+    private final class Execution implements Runnable {
+
+        /**
+         * Executed job.
+         */
+        private final Job job;
+
+        /**
+         * Deadline in seconds counted from the first start; 0 for none.
+         */
+        private final long timeout;
+
+        /**
+         * Operation to execute.
+         */
+        private final Function<ProgressTracker, String> operation;
+
+        /**
+         * Set on the first start.
+         */
+        private boolean started;
+
+        /**
+         * Stage reporting the time spent waiting for memory; {@code null} when not waiting.
+         */
+        private ProgressTracker.Stage waiting;
+
+        /**
+         * Construct.
+         *
+         * @param job Executed job
+         * @param timeout Deadline in seconds counted from the first start; 0 for none
+         * @param operation Operation to execute
+         */
+        Execution(Job job, long timeout, Function<ProgressTracker, String> operation) {
+            this.job = job;
+            this.timeout = timeout;
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            final ProgressTracker progress = this.job.getProgress();
+            if (this.waiting != null) {
+                this.waiting.close();
+                this.waiting = null;
+            }
+            if (!this.job.markRunning()) {
+                // cancelled while queued
+                return;
+            }
+            if (!this.started) {
+                this.started = true;
+                if (this.timeout > 0) {
+                    progress.setDeadline(this.timeout, TimeUnit.SECONDS);
+                }
+            }
+            boolean deferred = false;
+            try {
+                progress.checkCancelled();
+                this.job.markSucceeded(memoryGovernor.deferring(
+                    () -> computeService.runAsJob(() -> this.operation.apply(progress))));
+            } catch (MemoryGovernor.AdmissionDeferredException e) {
+                // release the worker; executed again from the start when memory is released
+                deferred = true;
+                this.job.markQueued();
+                this.waiting = progress.stage("Waiting for memory");
+                memoryGovernor.whenAvailable(e.getBytes(), this::resubmit);
+            } catch (CancellationException e) {
+                final String reason = progress.getCancelReason();
+                this.job.markCancelled(reason != null ? reason : "Cancelled");
+            } catch (Throwable e) {
+                // Errors (out of memory, stack overflow) must not leave the job running forever
+                this.job.markFailed(e.getMessage() != null ? e.getMessage() : e.toString());
+            } finally {
+                if (!deferred) {
+                    progress.finish();
+                }
+            }
+        }
+
+        /**
+         * Queue the job again after waiting for memory.
+         */
+        private void resubmit() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                this.waiting.close();
+                this.job.markFailed("Job queue is full");
+                this.job.getProgress().finish();
+            }
+        }
+    }
+
+    /**
+     * Stop worker threads on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.web.algorithms.CondensedDissimilarityMatrix;
+import com.chemaxon.clustering.web.entities.Molfile;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides pairwise dissimilarity matrices for hierarchical clustering.
+ *
+ * Small matrices are kept on the heap; larger ones are allocated off the heap, the largest ones are mapped from
+ * temporary files. Thresholds are configurable.
+ *
+ * <p>Matrices are calculated once for each (molfile, fingerprint spec) pair and shared by subsequent clusterings, for
+ * example when different linkages of the nearest neighbor chain engine are compared. The Lance-Williams library is
+ * not fed from these matrices: it fills its own double matrix from the input, a single precision copy held next to it
+ * would only raise the peak. Shared matrices are never modified; a calculation which needs to update dissimilarities
+ * works on its own copy, see
+ * {@link CondensedDissimilarityMatrix#copy(CondensedDissimilarityMatrix.Storage, java.io.File)}. Entries are evicted
+ * by total size and access time and dropped when their molfile is deleted.</p>
+ *
+ * <p>The cache is part of the {@link MemoryGovernor} budget: its capacity is a configured share of the budget, which
+ * is set aside for the lifetime of the service. Calculations do not reserve a heap matrix fitting into the capacity
+ * again, see {@link #uncachedHeapBytes(int)}. Mapped matrices are backed by files whose pages the operating system
+ * can reclaim; they are not counted against the capacity.</p>
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class MatrixService {
+
+    /**
+     * Cached matrices.
+     *
+     * Entries are weighted by their size in kilobytes.
+     */
+    private final Cache<Key, CondensedDissimilarityMatrix> cache;
+
+    @Autowired
+    private FingerprintService fingerprintService;
+
+    @Autowired
+    private ComputeService computeService;
+
+    /**
+     * Matrices larger than this are allocated off the heap, in bytes.
+     */
+    private final long directThreshold;
+
+    /**
+     * Matrices larger than this are mapped from a file, in bytes.
+     */
+    private final long mappedThreshold;
+
+    /**
+     * Directory of mapped matrix files.
+     */
+    private final File mappedDirectory;
+
+    /**
+     * Cache capacity in bytes.
+     */
+    private final long capacity;
+
+    /**
+     * Construct.
+     *
+     * @param directThresholdMbytes Matrices larger than this are allocated off the heap, in megabytes
+     * @param mappedThresholdMbytes Matrices larger than this are mapped from a file, in megabytes
+     * @param mappedDirectory Directory of mapped matrix files
+     * @param budgetPercent Max total size of cached heap and off heap matrices in percents of the memory budget; less
+     * than 100 to leave memory for calculations
+     * @param expireAfterAccessMinutes Evict entries not accessed for this time
+     * @param memoryGovernor Governor of the memory budget
+     */
+    @Autowired
+    public MatrixService(
+        @Value("${matrix.direct-threshold-mbytes:256}") long directThresholdMbytes,
+        @Value("${matrix.mapped-threshold-mbytes:4096}") long mappedThresholdMbytes,
+        @Value("${matrix.mapped-directory:${java.io.tmpdir}}") String mappedDirectory,
+        @Value("${matrix.cache.budget-percent:25}") int budgetPercent,
+        @Value("${matrix.cache.expire-after-access-minutes:30}") long expireAfterAccessMinutes,
+        MemoryGovernor memoryGovernor
+    ) {
+        if (budgetPercent < 0 || budgetPercent >= 100) {
+            throw new IllegalArgumentException("Invalid matrix cache budget percent specified: " + budgetPercent);
+        }
+        this.directThreshold = directThresholdMbytes * 1024 * 1024;
+        this.mappedThreshold = mappedThresholdMbytes * 1024 * 1024;
+        this.mappedDirectory = new File(mappedDirectory);
+        this.capacity = memoryGovernor.getBudget() / 100 * budgetPercent;
+        memoryGovernor.setAside("Matrix cache", this.capacity);
+        this.cache = CacheBuilder.newBuilder()
+            // a single segment, so a matrix up to the whole capacity is retained
+            .concurrencyLevel(1)
+            .maximumWeight(this.capacity / 1024)
+            .weigher((Key k, CondensedDissimilarityMatrix v) ->
+                v.getStorage() == CondensedDissimilarityMatrix.Storage.MAPPED
+                    ? 1
+                    : (int) Math.min(Integer.MAX_VALUE, 1 + v.sizeInBytes() / 1024))
+            .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Storage used for a matrix.
+     *
+     * @param size Structure count
+     * @return Storage selected by the configured thresholds
+     */
+    public CondensedDissimilarityMatrix.Storage storageFor(int size) {
+        final long bytes = CondensedDissimilarityMatrix.sizeInBytes(size);
+        if (bytes > this.mappedThreshold) {
+            return CondensedDissimilarityMatrix.Storage.MAPPED;
+        } else if (bytes > this.directThreshold) {
+            return CondensedDissimilarityMatrix.Storage.DIRECT;
+        } else {
+            return CondensedDissimilarityMatrix.Storage.HEAP;
+        }
+    }
+
+    /**
+     * Heap footprint of a matrix not covered by the cache capacity.
+     *
+     * A heap matrix fitting into the capacity, which is set aside from the {@link MemoryGovernor} budget, is held by
+     * the cache anyway; a larger one is evicted right away and has to be reserved by the calculation using it.
+     *
+     * @param size Structure count
+     * @return Size of the matrix in bytes when kept on the heap and larger than the capacity; 0 otherwise
+     */
+    public long uncachedHeapBytes(int size) {
+        final long bytes = CondensedDissimilarityMatrix.sizeInBytes(size);
+        return storageFor(size) == CondensedDissimilarityMatrix.Storage.HEAP && bytes > this.capacity ? bytes : 0;
+    }
+
+    /**
+     * Retrieve the dissimilarity matrix of a molfile.
+     *
+     * The matrix is calculated on the first access; concurrent requests for the same key wait for a single
+     * calculation. A cancelled calculation is not cached; concurrent requests waiting for it are not cancelled, they
+     * start a new calculation instead.
+     *
+     * @param molfile Structures
+     * @param spec Fingerprint spec
+     * @param progress Tracker to report the fingerprinting and matrix stages to; stages are reported only when the
+     * matrix is calculated
+     * @return Shared matrix; must not be modified
+     * @throws java.util.concurrent.CancellationException when the tracker is cancelled
+     */
+    public CondensedDissimilarityMatrix getMatrix(Molfile molfile, FingerprintSpec spec, ProgressTracker progress) {
+        while (true) {
+            try {
+                return this.cache.get(new Key(molfile, spec), () -> {
+                    final PackedFingerprints fp = this.fingerprintService
+                        .getFingerprints(molfile, spec, progress.stage("Fingerprinting")).packed();
+                    final CondensedDissimilarityMatrix ret =
+                        new CondensedDissimilarityMatrix(fp.size(), storageFor(fp.size()), this.mappedDirectory);
+                    ret.compute(fp, this.computeService.getPool(), progress.stage("Matrix"));
+                    return ret;
+                });
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                if (e.getCause() instanceof CancellationException && !progress.isCancelled()) {
+                    // the calculation of a concurrent request was cancelled; retry under our tracker
+                    continue;
+                }
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Private copy of a matrix for calculations updating dissimilarities.
+     *
+     * @param matrix Matrix to copy, typically a shared one
+     * @return Copy with the storage selected by the configured thresholds
+     */
+    public CondensedDissimilarityMatrix copyOf(CondensedDissimilarityMatrix matrix) {
+        return matrix.copy(storageFor(matrix.size()), this.mappedDirectory);
+    }
+
+    /**
+     * Drop the cached matrices of a molfile.
+     *
+     * @param molfile Molfile
+     */
+    public void invalidate(Molfile molfile) {
+        this.cache.asMap().keySet().removeIf(k -> k.molfile == molfile);
+    }
+
+    /**
+     * Drop all cached matrices.
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Cache hit/miss/eviction statistics.
+     *
+     * @return Current statistics snapshot
+     */
+    public CacheStats getCacheStats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Cached entry count.
+     *
+     * @return Entry count
+     */
+    public long getCachedCount() {
+        return this.cache.size();
+    }
+
+    /**
+     * Total size of cached matrices.
+     *
+     * @return Size in bytes
+     */
+    public long getCachedBytes() {
+        return this.cache.asMap().values().stream().mapToLong(CondensedDissimilarityMatrix::sizeInBytes).sum();
+    }
+
+    /**
+     * Cache key.
+     *
+     * Molfiles are compared by identity.
+     */
+    private static final class Key {
+
+        /**
+         * Source molfile.
+         */
+        private final Molfile molfile;
+
+        /**
+         * Fingerprint spec.
+         */
+        private final FingerprintSpec spec;
+
+        /**
+         * Construct.
+         *
+         * @param molfile Source molfile
+         * @param spec Fingerprint spec
+         */
+        Key(Molfile molfile, FingerprintSpec spec) {
+            this.molfile = molfile;
+            this.spec = spec;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.molfile == other.molfile && this.spec.equals(other.spec);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.molfile) + this.spec.hashCode();
+        }
+    }
+}
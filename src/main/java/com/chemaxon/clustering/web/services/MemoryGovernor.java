@@ -0,0 +1,398 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Shares a heap budget among memory hungry calculations.
+ *
+ * Calculations reserve their estimated peak footprint before allocating. A reservation which does not fit into the free
+ * part of the budget waits until earlier reservations are released; waiting calculations are admitted in arrival order
+ * so large ones are not starved. A reservation larger than the budget not set aside permanently is rejected up front,
+ * since it could never be admitted.
+ *
+ * <p>Background jobs do not wait on their worker thread: a reservation made inside {@link #deferring(Supplier)} which
+ * can not be admitted immediately fails with {@link AdmissionDeferredException}. The job is executed again when
+ * memory is released, see {@link #whenAvailable(long, Runnable)}.</p>
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class MemoryGovernor {
+
+    /**
+     * Interval of cancellation checks while waiting, in milliseconds.
+     */
+    private static final long WAIT_POLL = 500;
+
+    /**
+     * Total budget in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Waiting reservations in arrival order.
+     */
+    private final ArrayDeque<Reservation> waiting = new ArrayDeque<>();
+
+    /**
+     * Actions of deferred calculations waiting for memory, in arrival order.
+     */
+    private final ArrayDeque<Deferred> deferred = new ArrayDeque<>();
+
+    /**
+     * Marks threads on which waiting reservations are deferred.
+     */
+    private final ThreadLocal<Boolean> deferrable = new ThreadLocal<>();
+
+    /**
+     * Sum of the permanently set aside parts of the budget in bytes.
+     */
+    private long permanent;
+
+    /**
+     * Sum of admitted reservations, including the permanent ones, in bytes.
+     */
+    private long reserved;
+
+    /**
+     * Number of admitted reservations.
+     */
+    private int active;
+
+    /**
+     * Construct.
+     *
+     * @param budgetMbytes Budget in megabytes; 0 to use half of the max heap size
+     */
+    @Autowired
+    public MemoryGovernor(
+        @Value("${memory.budget-mbytes:0}") long budgetMbytes
+    ) {
+        this.budget = budgetMbytes > 0 ? budgetMbytes * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * Reserve memory, waiting for other calculations when necessary.
+     *
+     * Time spent waiting is reported to the tracker as a separate stage; no stage is added when the reservation is
+     * admitted immediately.
+     *
+     * @param description Calculation description used in the error message
+     * @param bytes Estimated peak footprint
+     * @param progress Tracker of the calculation; waiting is abandoned when it is cancelled
+     * @return Admitted reservation; must be closed when the memory is no longer used
+     * @throws IllegalArgumentException when the estimate exceeds the budget not set aside permanently
+     * @throws CancellationException when the tracker is cancelled while waiting
+     * @throws AdmissionDeferredException when invoked inside {@link #deferring(Supplier)} and the reservation can not
+     * be admitted immediately
+     */
+    public Reservation acquire(String description, long bytes, ProgressTracker progress) {
+        final Reservation ret = new Reservation(bytes);
+        synchronized (this) {
+            if (bytes > this.budget - this.permanent) {
+                throw new IllegalArgumentException(description + " needs an estimated " + megabytes(bytes)
+                    + " MB of memory which exceeds the available budget of " + megabytes(this.budget - this.permanent)
+                    + " MB");
+            }
+            if (this.waiting.isEmpty() && this.reserved + bytes <= this.budget) {
+                admit(ret);
+                return ret;
+            }
+            if (Boolean.TRUE.equals(this.deferrable.get())) {
+                throw new AdmissionDeferredException(bytes);
+            }
+            this.waiting.add(ret);
+            try (ProgressTracker.Stage stage = progress.stage("Waiting for memory")) {
+                while (this.waiting.peek() != ret || this.reserved + bytes > this.budget) {
+                    progress.checkCancelled();
+                    wait(WAIT_POLL);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for memory");
+            } finally {
+                // admitted or given up; let the next one check
+                this.waiting.remove(ret);
+                notifyAll();
+            }
+            admit(ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Set aside a part of the budget for the lifetime of the application.
+     *
+     * Used by caches whose capacity is part of the budget. Calculations are admitted against the remaining part only.
+     *
+     * @param description Owner description used in the error message
+     * @param bytes Size to set aside
+     * @throws IllegalArgumentException when the size does not fit into the free part of the budget
+     */
+    public synchronized void setAside(String description, long bytes) {
+        if (this.reserved + bytes > this.budget) {
+            throw new IllegalArgumentException(description + " needs " + megabytes(bytes)
+                + " MB of memory which exceeds the free budget of " + megabytes(this.budget - this.reserved) + " MB");
+        }
+        this.permanent += bytes;
+        this.reserved += bytes;
+    }
+
+    /**
+     * Execute an operation whose reservations are deferred instead of waiting.
+     *
+     * @param <T> Result type
+     * @param operation Operation to execute
+     * @return Result of the operation
+     * @throws AdmissionDeferredException when a reservation of the operation can not be admitted immediately
+     */
+    public <T> T deferring(Supplier<T> operation) {
+        this.deferrable.set(Boolean.TRUE);
+        try {
+            return operation.get();
+        } finally {
+            this.deferrable.remove();
+        }
+    }
+
+    /**
+     * Execute an action when memory is available.
+     *
+     * Deferred actions are executed in arrival order on the thread releasing the memory, or immediately on the calling
+     * thread when the memory is free already. Admission is not guaranteed, the action has to reserve the memory itself.
+     *
+     * @param bytes Memory needed by the action
+     * @param action Action to execute; expected to return quickly, for example by submitting a task
+     */
+    public void whenAvailable(long bytes, Runnable action) {
+        synchronized (this) {
+            this.deferred.add(new Deferred(bytes, action));
+        }
+        runAvailable();
+    }
+
+    /**
+     * Record an admitted reservation.
+     *
+     * @param reservation Reservation to admit
+     */
+    private void admit(Reservation reservation) {
+        this.reserved += reservation.bytes;
+        this.active++;
+    }
+
+    /**
+     * Execute the deferred actions fitting into the free memory.
+     */
+    private void runAvailable() {
+        final List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            // blocked calculations were there first
+            long free = this.waiting.isEmpty() ? this.budget - this.reserved : 0;
+            while (!this.deferred.isEmpty() && this.deferred.peek().bytes <= free) {
+                final Deferred d = this.deferred.poll();
+                free -= d.bytes;
+                actions.add(d.action);
+            }
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Release a reservation.
+     *
+     * @param reservation Reservation to release; releasing multiple times has no effect
+     */
+    private void release(Reservation reservation) {
+        synchronized (this) {
+            if (reservation.released) {
+                return;
+            }
+            reservation.released = true;
+            this.reserved -= reservation.bytes;
+            this.active--;
+            notifyAll();
+        }
+        runAvailable();
+    }
+
+    /**
+     * Total budget.
+     *
+     * @return Budget in bytes
+     */
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Permanently set aside part of the budget.
+     *
+     * @return Size in bytes
+     * @see #setAside(String, long)
+     */
+    public synchronized long getSetAside() {
+        return this.permanent;
+    }
+
+    /**
+     * Currently reserved memory.
+     *
+     * @return Sum of admitted reservations and the permanently set aside part in bytes
+     */
+    public synchronized long getReserved() {
+        return this.reserved;
+    }
+
+    /**
+     * Admitted calculation count.
+     *
+     * @return Number of admitted reservations not released yet
+     */
+    public synchronized int getActiveCount() {
+        return this.active;
+    }
+
+    /**
+     * Waiting calculation count.
+     *
+     * @return Number of reservations waiting for admission, including deferred ones
+     */
+    public synchronized int getWaitingCount() {
+        return this.waiting.size() + this.deferred.size();
+    }
+
+    /**
+     * Convert to megabytes for messages.
+     *
+     * @param bytes Size in bytes
+     * @return Size in megabytes, rounded up
+     */
+    private static long megabytes(long bytes) {
+        return (bytes + 1024 * 1024 - 1) / (1024 * 1024);
+    }
+
+    /**
+     * Signals a reservation deferred until memory is released.
+     *
+     * @see MemoryGovernor#deferring(Supplier)
+     */
+    public static final class AdmissionDeferredException extends RuntimeException {
+
+        private static final long serialVersionUID = 0L;
+
+        /**
+         * Requested size.
+         */
+        private final long bytes;
+
+        /**
+         * Construct.
+         *
+         * @param bytes Requested size
+         */
+        AdmissionDeferredException(long bytes) {
+            super("Waiting for " + megabytes(bytes) + " MB of memory");
+            this.bytes = bytes;
+        }
+
+        /**
+         * Requested size.
+         *
+         * @return Size in bytes
+         */
+        public long getBytes() {
+            return this.bytes;
+        }
+    }
+
+    /**
+     * A deferred action.
+     */
+    private static final class Deferred {
+
+        /**
+         * Memory needed by the action.
+         */
+        private final long bytes;
+
+        /**
+         * Action to execute.
+         */
+        private final Runnable action;
+
+        /**
+         * Construct.
+         *
+         * @param bytes Memory needed by the action
+         * @param action Action to execute
+         */
+        Deferred(long bytes, Runnable action) {
+            this.bytes = bytes;
+            this.action = action;
+        }
+    }
+
+    /**
+     * An admitted reservation.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        /**
+         * Reserved size.
+         */
+        private final long bytes;
+
+        /**
+         * Set when released; guarded by the governor.
+         */
+        private boolean released;
+
+        /**
+         * Construct.
+         *
+         * @param bytes Reserved size
+         */
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Reserved size.
+         *
+         * @return Size in bytes
+         */
+        public long getBytes() {
+            return this.bytes;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
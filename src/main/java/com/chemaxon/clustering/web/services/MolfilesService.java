@@ -38,6 +38,18 @@ public class MolfilesService {
     @Autowired
     private MolfilesDao molfilesDao;
 
+    @Autowired
+    private FingerprintService fingerprintService;
+
+    @Autowired
+    private MatrixService matrixService;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private ImageCache imageCache;
+
     /**
      * Add molecule file content.
      *
@@ -95,7 +107,12 @@ public class MolfilesService {
      * @param molfile Instance
      */
     public void deleteMolfile(Molfile molfile) {
+        final String id = getMolfileId(molfile);
         this.molfilesDao.delete(molfile);
+        this.fingerprintService.invalidate(molfile);
+        this.matrixService.invalidate(molfile);
+        this.responseCache.invalidate("molfiles/" + id);
+        this.imageCache.invalidate(molfile);
     }
 
     /**
@@ -103,6 +120,10 @@ public class MolfilesService {
      */
     public void deleteAllMolfiles() {
         this.molfilesDao.deleteAll();
+        this.fingerprintService.invalidateAll();
+        this.matrixService.invalidateAll();
+        this.responseCache.invalidate("molfiles");
+        this.imageCache.invalidateAll(Molfile.class);
     }
 
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.clustering.web.Util;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps progress trackers of running and finished operations accessible by ID.
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class ProgressService {
+
+    /**
+     * Registered trackers.
+     */
+    private final Map<String, ProgressTracker> trackers = new HashMap<>();
+
+    /**
+     * Register a tracker.
+     *
+     * @param idSuggestion ID suggestion. When already in use an added {@code -<NUMBER>} suffix is appended.
+     * @param tracker Tracker to register
+     * @return Associated ID
+     */
+    public synchronized String register(String idSuggestion, ProgressTracker tracker) {
+        final String id = Util.constructUniqueKey(this.trackers, idSuggestion);
+        this.trackers.put(id, tracker);
+        return id;
+    }
+
+    /**
+     * Remove a tracker.
+     *
+     * @param id ID of the tracker; ignored when not registered
+     */
+    public synchronized void unregister(String id) {
+        this.trackers.remove(id);
+    }
+
+    /**
+     * Retrieve a tracker.
+     *
+     * @param id Tracker ID
+     * @return Tracker
+     * @throws NoSuchElementException when no tracker with the specified ID found
+     */
+    public synchronized ProgressTracker getTracker(String id) {
+        final ProgressTracker ret = this.trackers.get(id);
+        if (ret == null) {
+            throw new NoSuchElementException("Progress ID not found " + id);
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieve all trackers.
+     *
+     * @return ID to tracker mapping
+     */
+    public synchronized Map<String, ProgressTracker> getAllTrackers() {
+        return ImmutableMap.copyOf(this.trackers);
+    }
+}
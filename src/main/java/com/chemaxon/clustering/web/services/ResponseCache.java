@@ -0,0 +1,261 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Remembers serialized responses of resources which never change once stored.
+ *
+ * Responses are keyed by their request path and query relative to the REST root. A strong ETag derived from the
+ * content is kept for every recorded response, so conditional requests can be answered without recomputation. The
+ * serialized content itself is kept in a size bounded cache when it fits. Entries of an entity are dropped when the
+ * entity is deleted, since its ID can be reused by a later entity.
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class ResponseCache {
+
+    /**
+     * Max number of remembered ETags.
+     */
+    private static final long MAX_ETAGS = 100000;
+
+    /**
+     * ETags by request key.
+     */
+    private final Cache<String, String> etags;
+
+    /**
+     * Serialized content by request key.
+     *
+     * Entries are weighted by their size in kilobytes.
+     */
+    private final Cache<String, Entry> entries;
+
+    /**
+     * Max size of the cached content in bytes.
+     */
+    private final long maxContentBytes;
+
+    /**
+     * Cache-Control header value of recorded responses.
+     */
+    private final String cacheControl;
+
+    /**
+     * Construct.
+     *
+     * @param maxKbytes Max total size of cached content in kilobytes; 0 to keep ETags only
+     * @param maxAgeSeconds Time clients may reuse a response without revalidation; 0 to always revalidate. IDs of
+     * deleted entities are reused, so clients may show the content of a deleted entity under its ID for this time
+     */
+    @Autowired
+    public ResponseCache(
+        @Value("${responses.cache.max-kbytes:65536}") long maxKbytes,
+        @Value("${responses.max-age-seconds:0}") long maxAgeSeconds
+    ) {
+        this.etags = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ETAGS)
+            .build();
+        this.entries = CacheBuilder.newBuilder()
+            .maximumWeight(maxKbytes)
+            .weigher((String k, Entry v) -> 1 + v.content.length / 1024)
+            .build();
+        this.maxContentBytes = maxKbytes * 1024;
+        this.cacheControl = maxAgeSeconds > 0 ? "public, max-age=" + maxAgeSeconds + ", immutable" : "no-cache";
+    }
+
+    /**
+     * Cache-Control header value to send with recorded responses.
+     *
+     * @return Header value
+     */
+    public String getCacheControl() {
+        return this.cacheControl;
+    }
+
+    /**
+     * Max size of a response whose content can be cached.
+     *
+     * Larger responses only get their ETag recorded, so there is no point in keeping their content around.
+     *
+     * @return Size in bytes; 0 when content is not cached
+     */
+    public long getMaxContentBytes() {
+        return this.maxContentBytes;
+    }
+
+    /**
+     * Look up the ETag of a recorded response.
+     *
+     * @param key Request key
+     * @return Quoted ETag or {@code null} when not recorded
+     */
+    public String getEtag(String key) {
+        return this.etags.getIfPresent(key);
+    }
+
+    /**
+     * Look up cached content.
+     *
+     * @param key Request key
+     * @return Cached entry or {@code null} when not cached
+     */
+    public Entry getEntry(String key) {
+        return this.entries.getIfPresent(key);
+    }
+
+    /**
+     * Record a response.
+     *
+     * @param key Request key
+     * @param sha256 SHA-256 hash of the serialized content
+     * @param mediaType Media type of the content
+     * @param headers Headers of the response to replay; ETag and Cache-Control are not copied
+     * @param content Serialized content or {@code null} to record the ETag only
+     * @return Quoted ETag of the content
+     */
+    public String put(String key, HashCode sha256, MediaType mediaType, MultivaluedMap<String, Object> headers,
+        byte [] content) {
+        final String etag = "\"" + sha256 + "\"";
+        this.etags.put(key, etag);
+        if (content == null) {
+            return etag;
+        }
+        final Map<String, List<Object>> replayed = new LinkedHashMap<>();
+        headers.forEach((name, values) -> {
+            if (!"ETag".equalsIgnoreCase(name) && !"Cache-Control".equalsIgnoreCase(name)) {
+                replayed.put(name, new ArrayList<>(values));
+            }
+        });
+        this.entries.put(key, new Entry(etag, mediaType, replayed, content));
+        return etag;
+    }
+
+    /**
+     * Drop the recorded responses of a resource and its sub resources.
+     *
+     * @param path Resource path relative to the REST root, for example {@code clusterings/<ID>}
+     */
+    public void invalidate(String path) {
+        this.etags.asMap().keySet().removeIf(k -> isUnder(k, path));
+        this.entries.asMap().keySet().removeIf(k -> isUnder(k, path));
+    }
+
+    /**
+     * Drop all recorded responses.
+     */
+    public void invalidateAll() {
+        this.etags.invalidateAll();
+        this.entries.invalidateAll();
+    }
+
+    /**
+     * Check if a request key belongs to a resource.
+     *
+     * @param key Request key
+     * @param path Resource path
+     * @return {@code true} when the key is the path, a sub resource or a query of it
+     */
+    private static boolean isUnder(String key, String path) {
+        if (!key.startsWith(path)) {
+            return false;
+        }
+        if (key.length() == path.length()) {
+            return true;
+        }
+        final char c = key.charAt(path.length());
+        return c == '/' || c == '?';
+    }
+
+    /**
+     * Cached serialized response.
+     */
+    public static final class Entry {
+
+        /**
+         * Quoted ETag.
+         */
+        private final String etag;
+
+        /**
+         * Media type.
+         */
+        private final MediaType mediaType;
+
+        /**
+         * Headers to replay.
+         */
+        private final Map<String, List<Object>> headers;
+
+        /**
+         * Serialized content.
+         */
+        private final byte [] content;
+
+        /**
+         * Construct.
+         *
+         * @param etag Quoted ETag
+         * @param mediaType Media type
+         * @param headers Headers to replay
+         * @param content Serialized content
+         */
+        Entry(String etag, MediaType mediaType, Map<String, List<Object>> headers, byte [] content) {
+            this.etag = etag;
+            this.mediaType = mediaType;
+            this.headers = headers;
+            this.content = content;
+        }
+
+        public String getEtag() {
+            return this.etag;
+        }
+
+        public MediaType getMediaType() {
+            return this.mediaType;
+        }
+
+        public Map<String, List<Object>> getHeaders() {
+            return this.headers;
+        }
+
+        /**
+         * Serialized content; must not be modified.
+         *
+         * @return Content bytes
+         */
+        @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "Content is shared by the cached responses.")
+        public byte [] getContent() {
+            return this.content;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.clustering.web.entities.Clustering;
+import com.google.common.base.Throwables;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides PNG tiles of the dendrogram pyramid of clusterings.
+ *
+ * Tiles are rendered on demand from the dendrogram layout of the clustering; requests for different tiles are rendered
+ * concurrently, concurrent requests for the same tile wait for a single rendering. Rendered tiles are kept as files in
+ * a directory, evicted in least recently used order above a configurable total size. Tiles of a clustering are dropped
+ * when the clustering is deleted.
+ *
+ * @author Gabor Imre
+ */
+@Service
+public class TileService {
+
+    /**
+     * Tile width and height in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Extension of tile files.
+     */
+    private static final String EXTENSION = ".png";
+
+    /**
+     * Directory of tile files.
+     */
+    private final File directory;
+
+    /**
+     * Max total size of tile files in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Sizes of the tile files by file name in access order.
+     *
+     * Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Total size of the tile files in bytes.
+     *
+     * Guarded by {@code this}.
+     */
+    private long totalBytes;
+
+    /**
+     * Tile renderings in progress by file name.
+     */
+    private final Map<String, CompletableFuture<byte []>> rendering = new ConcurrentHashMap<>();
+
+    /**
+     * File name prefixes of clusterings; IDs of deleted clusterings can be reused, instances can not.
+     */
+    private final Map<Clustering, String> prefixes = new ConcurrentHashMap<>();
+
+    /**
+     * Source of file name prefixes.
+     */
+    private final AtomicLong nextPrefix = new AtomicLong();
+
+    /**
+     * Construct; clear tile files left in the directory.
+     *
+     * @param directory Directory of tile files; empty to use a new temporary directory
+     * @param maxMbytes Max total size of tile files in megabytes
+     * @throws IllegalStateException when the directory can not be created
+     */
+    @Autowired
+    public TileService(
+        @Value("${tiles.directory:}") String directory,
+        @Value("${tiles.cache.max-mbytes:512}") long maxMbytes
+    ) {
+        this.maxBytes = maxMbytes * 1024 * 1024;
+        try {
+            this.directory = directory.isEmpty()
+                ? Files.createTempDirectory("jklustor-tiles-").toFile()
+                : new File(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error creating tiles directory: " + e.getMessage(), e);
+        }
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IllegalStateException("Can not create tiles directory " + this.directory);
+        }
+        final File [] stale = this.directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        for (File f : stale == null ? new File[0] : stale) {
+            if (!f.delete()) {
+                throw new IllegalStateException("Can not delete stale tile " + f);
+            }
+        }
+    }
+
+    /**
+     * Retrieve a tile.
+     *
+     * @param clustering Clustering
+     * @param z Zoom level
+     * @param x Tile column
+     * @param y Tile row
+     * @return PNG image
+     * @throws IllegalArgumentException when the tile is outside of the pyramid
+     * @throws IllegalStateException when the image can not be encoded
+     */
+    public byte [] getTile(Clustering clustering, int z, int x, int y) {
+        final String name = this.prefixes.computeIfAbsent(clustering, c -> this.nextPrefix.getAndIncrement() + "-")
+            + z + "-" + x + "-" + y + EXTENSION;
+        final byte [] cached = read(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        final CompletableFuture<byte []> own = new CompletableFuture<>();
+        final CompletableFuture<byte []> running = this.rendering.putIfAbsent(name, own);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        try {
+            final byte [] ret = render(clustering, z, x, y);
+            write(name, ret);
+            own.complete(ret);
+            return ret;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.rendering.remove(name);
+        }
+    }
+
+    /**
+     * Render a tile.
+     *
+     * @param clustering Clustering
+     * @param z Zoom level
+     * @param x Tile column
+     * @param y Tile row
+     * @return PNG image
+     */
+    private static byte [] render(Clustering clustering, int z, int x, int y) {
+        try (ByteArrayOutputStream ret = new ByteArrayOutputStream()) {
+            ImageIO.write(clustering.getDendrogramLayout().renderTile(z, x, y, TILE_SIZE), "png", ret);
+            return ret.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error encoding tile: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read a stored tile.
+     *
+     * @param name File name
+     * @return Content or {@code null} when not stored
+     */
+    private byte [] read(String name) {
+        synchronized (this) {
+            if (this.files.get(name) == null) {
+                return null;
+            }
+        }
+        try {
+            return Files.readAllBytes(new File(this.directory, name).toPath());
+        } catch (IOException e) {
+            // evicted concurrently or removed externally; render again
+            synchronized (this) {
+                final Long size = this.files.remove(name);
+                if (size != null) {
+                    this.totalBytes -= size;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store a tile, evicting least recently used tiles above the size limit.
+     *
+     * Storage failures are ignored; the tile is rendered again on the next request.
+     *
+     * @param name File name
+     * @param content Content
+     */
+    private void write(String name, byte [] content) {
+        try {
+            Files.write(new File(this.directory, name).toPath(), content);
+        } catch (IOException e) {
+            return;
+        }
+        synchronized (this) {
+            final Long previous = this.files.put(name, (long) content.length);
+            this.totalBytes += content.length - (previous == null ? 0 : previous);
+            final Iterator<Map.Entry<String, Long>> it = this.files.entrySet().iterator();
+            while (this.totalBytes > this.maxBytes && it.hasNext()) {
+                final Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(name)) {
+                    continue;
+                }
+                it.remove();
+                this.totalBytes -= eldest.getValue();
+                delete(eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Delete a tile file.
+     *
+     * @param name File name
+     */
+    private void delete(String name) {
+        final File f = new File(this.directory, name);
+        if (!f.delete()) {
+            f.deleteOnExit();
+        }
+    }
+
+    /**
+     * Drop all tiles of a clustering.
+     *
+     * @param clustering Clustering
+     */
+    public void invalidate(Clustering clustering) {
+        final String prefix = this.prefixes.remove(clustering);
+        if (prefix == null) {
+            return;
+        }
+        synchronized (this) {
+            final Iterator<Map.Entry<String, Long>> it = this.files.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, Long> e = it.next();
+                if (e.getKey().startsWith(prefix)) {
+                    it.remove();
+                    this.totalBytes -= e.getValue();
+                    delete(e.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop all tiles.
+     */
+    public void invalidateAll() {
+        this.prefixes.clear();
+        synchronized (this) {
+            for (String name : this.files.keySet()) {
+                delete(name);
+            }
+            this.files.clear();
+            this.totalBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.fingerprints;
+
+import java.util.Random;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link PackedFingerprints}.
+ *
+ * @author Gabor Imre
+ */
+public class PackedFingerprintsTest {
+
+    /**
+     * Create random sparse fingerprints; few bits are set to produce many ties.
+     *
+     * @param rnd Random source
+     * @param size Row count
+     * @param words Row length
+     * @return Fingerprints
+     */
+    public static PackedFingerprints randomFingerprints(Random rnd, int size, int words) {
+        final PackedFingerprints ret = new PackedFingerprints(size, words);
+        for (int i = 0; i < size; i++) {
+            final long [] fp = new long[words];
+            final int bits = rnd.nextInt(12);
+            for (int k = 0; k < bits; k++) {
+                final int b = rnd.nextInt(words * 16);
+                fp[b / 64] |= 1L << (b % 64);
+            }
+            ret.setRow(i, fp);
+        }
+        return ret;
+    }
+
+    @Test
+    public void tanimoto_of_rows() {
+        final PackedFingerprints p = new PackedFingerprints(3, 2);
+        p.setRow(0, new long [] { 0b1111L, 0L });
+        p.setRow(1, new long [] { 0b0011L, 1L << 63 });
+        p.setRow(2, new long [] { 0L, 0L });
+
+        assertThat(p.popcount(0), is(4));
+        assertThat(p.popcount(1), is(3));
+        assertThat(p.popcount(2), is(0));
+
+        assertThat(p.intersectionCount(0, p, 1), is(2));
+        assertThat(p.tanimoto(0, p, 1), is(2.0 / 5.0));
+        assertThat(p.dissimilarity(0, p, 0), is(0.0));
+        assertThat(p.dissimilarity(0, p, 2), is(1.0));
+        assertThat(p.dissimilarity(2, p, 2), is(0.0));
+    }
+
+    @Test
+    public void select_gathers_rows() {
+        final PackedFingerprints p = new PackedFingerprints(3, 1);
+        p.setRow(0, new long [] { 1L });
+        p.setRow(1, new long [] { 3L });
+        p.setRow(2, new long [] { 7L });
+
+        final PackedFingerprints s = p.select(new int [] { 2, 0 });
+        assertThat(s.size(), is(2));
+        assertThat(s.getRow(0)[0], is(7L));
+        assertThat(s.popcount(1), is(1));
+        assertThat(s.tanimoto(0, p, 1), is(2.0 / 3.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void row_length_is_checked() {
+        new PackedFingerprints(1, 2).setRow(0, new long [] { 1L });
+    }
+}
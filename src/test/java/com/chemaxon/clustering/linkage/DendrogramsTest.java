@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.linkage;
+
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.util.Arrays;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link Dendrograms}.
+ *
+ * @author Gabor Imre
+ */
+public class DendrogramsTest {
+
+    @Test
+    public void no_structures_give_no_roots() {
+        final IDBasedHierarchicClustering h = Dendrograms.build(0, new int[0], new int[0], new double[0]);
+        assertThat(h.roots().size(), is(0));
+    }
+
+    @Test
+    public void single_structure_is_a_root() {
+        final IDBasedHierarchicClustering h = Dendrograms.build(1, new int[0], new int[0], new double[0]);
+        assertThat(h.roots().size(), is(1));
+        assertThat(h.roots().get(0).leaves(), is(list(0)));
+    }
+
+    @Test
+    public void unmerged_structures_are_roots() {
+        final IDBasedHierarchicClustering h = Dendrograms.build(3, new int[0], new int[0], new double[0]);
+        assertThat(h.roots().size(), is(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(h.roots().get(i).leaves(), is(list(i)));
+            assertThat(h.roots().get(i).representant(), is(i));
+        }
+    }
+
+    @Test
+    public void unmerged_parts_are_roots() {
+        // (1, 3) merged, 0 and 2 not
+        final IDBasedHierarchicClustering h =
+            Dendrograms.build(4, new int [] {3}, new int [] {1}, new double [] {0.25});
+        final List<IDBasedHierarchicCluster> roots = h.roots();
+        assertThat(roots.size(), is(3));
+        assertThat(roots.get(0).leaves(), is(list(0)));
+        assertThat(roots.get(1).leaves(), is(list(2)));
+        assertThat(roots.get(2).leaves(), is(list(3, 1)));
+        assertThat(roots.get(2).representant(), is(1));
+        assertThat(h.getPreferredAssigner().clusterLevel(roots.get(2)), is(0.25));
+    }
+
+    @Test
+    public void merges_are_applied_in_level_order() {
+        // ((0, 1), 2) with the merges given in reverse order
+        final IDBasedHierarchicClustering h =
+            Dendrograms.build(3, new int [] {2, 0}, new int [] {1, 1}, new double [] {0.5, 0.1});
+        assertThat(h.roots().size(), is(1));
+        final IDBasedHierarchicCluster root = h.roots().get(0);
+        assertThat(h.getPreferredAssigner().clusterLevel(root), is(0.5));
+        assertThat(root.leaves(), is(list(2)));
+        assertThat(root.clusters().size(), is(1));
+        assertThat(root.clusters().get(0).leaves(), is(list(0, 1)));
+        assertThat(h.getPreferredAssigner().clusterLevel(root.clusters().get(0)), is(0.1));
+    }
+
+    /**
+     * Leaf list.
+     *
+     * @param leaves Leaves
+     * @return List of the leaves
+     */
+    private static List<Integer> list(Integer... leaves) {
+        return Arrays.asList(leaves);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.linkage;
+
+import com.chemaxon.clustering.common.DissimilarityInput;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.fingerprints.PackedFingerprintsTest;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link SingleLinkageMst}.
+ *
+ * @author Gabor Imre
+ */
+public class SingleLinkageMstTest {
+
+    @Test
+    public void merge_levels_match_sequential_prim() {
+        // large enough to trigger parallel updates
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(13), 5000, 2);
+        final DissimilarityInput input = fp.asDissimilarityInput();
+
+        final SingleLinkageMst mst =
+            new SingleLinkageMst(input, ForkJoinPool.commonPool(), new ProgressTracker().stage("mst"));
+
+        assertThat(mst.getMergeLevels(), is(prim(input)));
+    }
+
+    /**
+     * Minimum spanning tree edge weights by a plain sequential Prim's algorithm.
+     *
+     * @param input Dissimilarities
+     * @return Edge weights in ascending order
+     */
+    private static double [] prim(DissimilarityInput input) {
+        final int n = input.size();
+        final boolean [] inTree = new boolean[n];
+        final double [] dist = new double[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        final double [] ret = new double[n - 1];
+        int last = 0;
+        inTree[0] = true;
+        for (int e = 0; e < n - 1; e++) {
+            int best = -1;
+            for (int u = 0; u < n; u++) {
+                if (inTree[u]) {
+                    continue;
+                }
+                dist[u] = Math.min(dist[u], input.dissimilarity(last, u));
+                if (best < 0 || dist[u] < dist[best]) {
+                    best = u;
+                }
+            }
+            inTree[best] = true;
+            ret[e] = dist[best];
+            last = best;
+        }
+        Arrays.sort(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.fingerprints.PackedFingerprintsTest;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link CondensedDissimilarityMatrix}.
+ *
+ * @author Gabor Imre
+ */
+public class CondensedDissimilarityMatrixTest {
+
+    @Test
+    public void heap_matrix_matches_fingerprints() {
+        checkAgainstFingerprints(CondensedDissimilarityMatrix.Storage.HEAP);
+    }
+
+    @Test
+    public void direct_matrix_matches_fingerprints() {
+        checkAgainstFingerprints(CondensedDissimilarityMatrix.Storage.DIRECT);
+    }
+
+    @Test
+    public void mapped_matrix_matches_fingerprints() {
+        checkAgainstFingerprints(CondensedDissimilarityMatrix.Storage.MAPPED);
+    }
+
+    @Test
+    public void copy_is_independent() {
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(5), 300, 2);
+        final File dir = new File(System.getProperty("java.io.tmpdir"));
+        final CondensedDissimilarityMatrix m =
+            new CondensedDissimilarityMatrix(fp.size(), CondensedDissimilarityMatrix.Storage.DIRECT, dir);
+        m.compute(fp, ForkJoinPool.commonPool(), new ProgressTracker().stage("matrix"));
+
+        final CondensedDissimilarityMatrix c = m.copy(CondensedDissimilarityMatrix.Storage.HEAP, dir);
+        // copying twice must not depend on buffer positions
+        final CondensedDissimilarityMatrix c2 = m.copy(CondensedDissimilarityMatrix.Storage.MAPPED, dir);
+        assertThat(c.getStorage(), is(CondensedDissimilarityMatrix.Storage.HEAP));
+        for (int i = 0; i < fp.size(); i++) {
+            for (int j = i + 1; j < fp.size(); j++) {
+                assertThat(c.get(i, j), is(m.get(i, j)));
+                assertThat(c2.get(j, i), is(m.get(i, j)));
+            }
+        }
+    }
+
+    /**
+     * Compare every stored pair with the single precision dissimilarity of the fingerprints.
+     *
+     * @param storage Storage to check
+     */
+    private static void checkAgainstFingerprints(CondensedDissimilarityMatrix.Storage storage) {
+        // size is not a multiple of the tile size
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(3), 700, 2);
+        final CondensedDissimilarityMatrix m =
+            new CondensedDissimilarityMatrix(fp.size(), storage, new File(System.getProperty("java.io.tmpdir")));
+        final ProgressTracker.Stage po = new ProgressTracker().stage("matrix");
+        m.compute(fp, ForkJoinPool.commonPool(), po);
+
+        assertThat(po.getWorked(), is(CondensedDissimilarityMatrix.pairCount(700)));
+        assertThat(m.sizeInBytes(), is(4L * 700 * 699 / 2));
+        for (int i = 0; i < fp.size(); i++) {
+            for (int j = 0; j < fp.size(); j++) {
+                final float expected = i == j ? 0 : (float) fp.dissimilarity(i, fp, j);
+                assertThat(m.get(i, j), is(expected));
+                assertThat(m.asDissimilarityInput().dissimilarity(i, j), is((double) expected));
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.fingerprints.PackedFingerprintsTest;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.chemaxon.descriptors.common.unguarded.UnguardedDissimilarityCalculator;
+import com.chemaxon.descriptors.metrics.BinaryMetrics;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link NearestCentroidSearch}.
+ *
+ * @author Gabor Imre
+ */
+public class NearestCentroidSearchTest {
+
+    @Test
+    public void brute_force_matches_sequential_scan() {
+        checkAgainstSequentialScan(NearestCentroidSearch.Mode.BRUTE_FORCE);
+    }
+
+    @Test
+    public void bit_bound_matches_sequential_scan() {
+        checkAgainstSequentialScan(NearestCentroidSearch.Mode.BIT_BOUND);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelled_search_is_abandoned() {
+        final PackedFingerprints molecules = PackedFingerprintsTest.randomFingerprints(new Random(7), 1000, 2);
+        final ProgressTracker progress = new ProgressTracker();
+        progress.cancel("test");
+        new NearestCentroidSearch(molecules)
+            .search(molecules, new int [] { 0, 1, 2 }, NearestCentroidSearch.Mode.BRUTE_FORCE,
+                ForkJoinPool.commonPool(), progress.stage("search"));
+    }
+
+    @Test
+    public void brute_force_matches_library_metric_association() {
+        checkAgainstLibraryMetric(NearestCentroidSearch.Mode.BRUTE_FORCE);
+    }
+
+    @Test
+    public void bit_bound_matches_library_metric_association() {
+        checkAgainstLibraryMetric(NearestCentroidSearch.Mode.BIT_BOUND);
+    }
+
+    /**
+     * Compare search results with the association formerly done by the library metric.
+     *
+     * Fingerprints of the grouping spec are drawn from a narrow bit range to produce many equal dissimilarities;
+     * every tenth one is empty, so empty queries meet empty and non-empty centroids.
+     *
+     * @param mode Mode to check
+     */
+    private static void checkAgainstLibraryMetric(NearestCentroidSearch.Mode mode) {
+        final Random rnd = new Random(23);
+        final int words = FingerprintSpec.GROUPING.words();
+        final long [][] rows = new long[600][words];
+        final PackedFingerprints molecules = new PackedFingerprints(rows.length, words);
+        for (int i = 0; i < rows.length; i++) {
+            if (i % 10 != 0) {
+                final int bits = 1 + rnd.nextInt(12);
+                for (int k = 0; k < bits; k++) {
+                    final int b = rnd.nextInt(96);
+                    rows[i][b / 64] |= 1L << (b % 64);
+                }
+            }
+            molecules.setRow(i, rows[i]);
+        }
+        // every seventh structure is a centroid, including empty ones
+        final int [] centroids = new int[(rows.length + 6) / 7];
+        final int [] queries = new int[rows.length - centroids.length];
+        for (int i = 0, c = 0, q = 0; i < rows.length; i++) {
+            if (i % 7 == 0) {
+                centroids[c++] = i;
+            } else {
+                queries[q++] = i;
+            }
+        }
+
+        final NearestCentroidSearch.Result r = new NearestCentroidSearch(molecules.select(centroids))
+            .search(molecules, queries, mode, ForkJoinPool.commonPool(), new ProgressTracker().stage("search"));
+
+        final UnguardedDissimilarityCalculator<long []> udc = FingerprintSpec.GROUPING.createGenerator()
+            .comparisonContextFactory()
+            .forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO)
+            .unguardedContext()
+            .unguardedComparator();
+        for (int q = 0; q < queries.length; q++) {
+            int best = -1;
+            double bestDissim = Double.MAX_VALUE;
+            for (int c = 0; c < centroids.length; c++) {
+                final double d = udc.dissimilarity(rows[centroids[c]], rows[queries[q]]);
+                if (d < bestDissim) {
+                    bestDissim = d;
+                    best = c;
+                }
+            }
+            assertThat("query " + queries[q], r.nearest(q), is(best));
+        }
+    }
+
+    /**
+     * Compare search results with a plain sequential scan.
+     *
+     * @param mode Mode to check
+     */
+    private static void checkAgainstSequentialScan(NearestCentroidSearch.Mode mode) {
+        final Random rnd = new Random(42);
+        final PackedFingerprints molecules = PackedFingerprintsTest.randomFingerprints(rnd, 1000, 2);
+        final PackedFingerprints centroids = PackedFingerprintsTest.randomFingerprints(rnd, 700, 2);
+        final int [] queries = new int[molecules.size()];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = i;
+        }
+
+        final NearestCentroidSearch.Result r = new NearestCentroidSearch(centroids)
+            .search(molecules, queries, mode, ForkJoinPool.commonPool(), new ProgressTracker().stage("search"));
+
+        assertThat(r.getComparisons() + r.getPruned(), is(700000L));
+        for (int q = 0; q < queries.length; q++) {
+            int best = -1;
+            double bestDissim = Double.MAX_VALUE;
+            for (int c = 0; c < centroids.size(); c++) {
+                final double d = centroids.dissimilarity(c, molecules, q);
+                if (d < bestDissim) {
+                    bestDissim = d;
+                    best = c;
+                }
+            }
+            assertThat(r.nearest(q), is(best));
+        }
+    }
+}
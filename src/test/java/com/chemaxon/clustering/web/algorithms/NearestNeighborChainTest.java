@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link NearestNeighborChain}.
+ *
+ * @author Gabor Imre
+ */
+public class NearestNeighborChainTest {
+
+    @Test
+    public void merge_levels_match_closest_pair_clustering() {
+        for (NearestNeighborChain.Linkage linkage : NearestNeighborChain.Linkage.values()) {
+            final CondensedDissimilarityMatrix m = randomMatrix(new Random(17), 300);
+            final double [] expected = closestPair(m, linkage);
+
+            final NearestNeighborChain nnc = new NearestNeighborChain(
+                m.copy(CondensedDissimilarityMatrix.Storage.HEAP, null), linkage, ForkJoinPool.commonPool(),
+                new ProgressTracker().stage("nnc"));
+
+            final double [] actual = nnc.getMergeLevels();
+            assertThat(actual.length, is(expected.length));
+            for (int i = 0; i < expected.length; i++) {
+                assertThat(linkage + " merge " + i, actual[i], closeTo(expected[i], 1e-5));
+            }
+        }
+    }
+
+    /**
+     * Random dissimilarities.
+     *
+     * @param r Random to use
+     * @param n Size
+     * @return Matrix
+     */
+    private static CondensedDissimilarityMatrix randomMatrix(Random r, int n) {
+        final CondensedDissimilarityMatrix ret =
+            new CondensedDissimilarityMatrix(n, CondensedDissimilarityMatrix.Storage.HEAP, null);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                ret.set(i, j, r.nextFloat());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Merge levels by the plain cubic closest pair algorithm.
+     *
+     * @param input Dissimilarities; not modified
+     * @param linkage Linkage to use
+     * @return Merge levels in ascending order
+     */
+    private static double [] closestPair(CondensedDissimilarityMatrix input, NearestNeighborChain.Linkage linkage) {
+        final int n = input.size();
+        final CondensedDissimilarityMatrix m = input.copy(CondensedDissimilarityMatrix.Storage.HEAP, null);
+        final boolean [] merged = new boolean[n];
+        final int [] members = new int[n];
+        Arrays.fill(members, 1);
+        final double [] ret = new double[n - 1];
+        for (int e = 0; e < n - 1; e++) {
+            int bi = -1;
+            int bj = -1;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n && !merged[i]; j++) {
+                    if (!merged[j] && (bi < 0 || m.get(i, j) < m.get(bi, bj))) {
+                        bi = i;
+                        bj = j;
+                    }
+                }
+            }
+            ret[e] = m.get(bi, bj);
+            for (int k = 0; k < n; k++) {
+                if (merged[k] || k == bi || k == bj) {
+                    continue;
+                }
+                m.set(k, bi, (float) linkage.update(
+                    m.get(k, bi), m.get(k, bj), m.get(bi, bj), members[bi], members[bj], members[k]));
+            }
+            members[bi] += members[bj];
+            merged[bj] = true;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.fingerprints.PackedFingerprintsTest;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Exercise {@link NeighborGraph}.
+ *
+ * @author Gabor Imre
+ */
+public class NeighborGraphTest {
+
+    @Test
+    public void greedy_centroids_match_filter() {
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(11), 3000, 2);
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        final NeighborGraph graph =
+            new NeighborGraph(fp, 0.8, Long.MAX_VALUE, pool, new ProgressTracker().stage("build"));
+
+        for (double radius : new double [] { 0.0, 0.2, 0.5, 0.8 }) {
+            final SphereExclusionFilter.Result r =
+                new SphereExclusionFilter(fp).filter(radius, pool, new ProgressTracker().stage("filter"));
+            final int [] centroids = graph.greedyCentroids(radius);
+            assertThat(centroids.length, is(r.getKeptCount()));
+            for (int c : centroids) {
+                assertTrue(r.isKept(c));
+            }
+        }
+    }
+
+    @Test
+    public void radius_search_hits_range() {
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(13), 2000, 2);
+        final NeighborGraph graph =
+            new NeighborGraph(fp, 1.0, Long.MAX_VALUE, ForkJoinPool.commonPool(), new ProgressTracker().stage("build"));
+
+        final NeighborGraph.RadiusSearch s = graph.searchRadius(50, 80, 32);
+        assertTrue(s.getCentroids().length >= 50);
+        assertTrue(s.getCentroids().length <= 80);
+        assertThat(graph.greedyCentroids(s.getRadius()).length, is(s.getCentroids().length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void edge_limit_is_checked() {
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(17), 500, 2);
+        new NeighborGraph(fp, 1.0, 100, ForkJoinPool.commonPool(), new ProgressTracker().stage("build"));
+    }
+}
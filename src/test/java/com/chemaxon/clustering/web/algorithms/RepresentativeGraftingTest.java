@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.common.HierarchicClustering;
+import com.chemaxon.clustering.common.IDBasedAssigner;
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClusterBuidler;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link RepresentativeGrafting}.
+ *
+ * @author Gabor Imre
+ */
+public class RepresentativeGraftingTest {
+
+    /**
+     * Structure index of each representative.
+     */
+    private static final int [] REPS = {0, 3, 5};
+
+    /**
+     * Representative index of each structure.
+     */
+    private static final int [] ASSIGNMENT = {0, 0, 1, 1, 1, 2, 0};
+
+    /**
+     * Dissimilarity of each structure to its representative.
+     */
+    private static final double [] DISSIMILARITY = {0.0, 0.1, 0.2, 0.0, 0.3, 0.0, 0.05};
+
+    /**
+     * Dendrogram of the representatives.
+     *
+     * <pre>
+     *  0.8: (r0, 0.5: (r1, r2))
+     * </pre>
+     *
+     * @return Representative dendrogram; leaf IDs are representative indices
+     */
+    private static IDBasedHierarchicClustering representatives() {
+        return new IDBasedHierarchicClusterBuidler(HierarchicClustering.Alignment.LEAF_ALIGNED)
+            .newRootCluster().setLevel(0.8).setRepresentant(0).addImmediateLeaf(0)
+            .newChildCluster().setLevel(0.5).setRepresentant(1).addImmediateLeaves(1, 2)
+            .build();
+    }
+
+    @Test
+    public void grafted_clusters_extend_representative_clusters() {
+        final IDBasedHierarchicClustering representatives = representatives();
+        final IDBasedHierarchicClustering grafted =
+            RepresentativeGrafting.graft(representatives, REPS, ASSIGNMENT, DISSIMILARITY);
+
+        // each representative cluster keeps its level and covers the members of its representatives
+        final Set<String> expected = new TreeSet<>();
+        final IDBasedAssigner ra = representatives.getPreferredAssigner();
+        for (IDBasedHierarchicCluster c : clusters(representatives)) {
+            final Set<Integer> leaves = new TreeSet<>();
+            for (int r : leaves(c)) {
+                for (int i = 0; i < ASSIGNMENT.length; i++) {
+                    if (ASSIGNMENT[i] == r) {
+                        leaves.add(i);
+                    }
+                }
+            }
+            expected.add(ra.clusterLevel(c) + " " + leaves);
+        }
+        // representatives with members are replaced by a cluster at the largest member dissimilarity
+        expected.add("0.1 [0, 1, 6]");
+        expected.add("0.3 [2, 3, 4]");
+
+        final Set<String> actual = new TreeSet<>();
+        final IDBasedAssigner ga = grafted.getPreferredAssigner();
+        for (IDBasedHierarchicCluster c : clusters(grafted)) {
+            actual.add(ga.clusterLevel(c) + " " + new TreeSet<>(leaves(c)));
+        }
+
+        assertThat(actual, is(expected));
+        assertThat(clusters(grafted).size(), is(4));
+        assertThat(new TreeSet<>(leaves(grafted.roots().get(0))).toString(), is("[0, 1, 2, 3, 4, 5, 6]"));
+    }
+
+    @Test
+    public void grafted_clusters_keep_representatives() {
+        final IDBasedHierarchicClustering grafted =
+            RepresentativeGrafting.graft(representatives(), REPS, ASSIGNMENT, DISSIMILARITY);
+
+        final Set<String> actual = new TreeSet<>();
+        for (IDBasedHierarchicCluster c : clusters(grafted)) {
+            actual.add(c.representant() + " " + new TreeSet<>(leaves(c)));
+        }
+
+        assertThat(actual, is((Set<String>) new TreeSet<>(Arrays.asList(
+            "0 [0, 1, 2, 3, 4, 5, 6]",
+            "0 [0, 1, 6]",
+            "3 [2, 3, 4, 5]",
+            "3 [2, 3, 4]"))));
+    }
+
+    @Test
+    public void single_representative_gives_single_cluster() {
+        final IDBasedHierarchicClustering grafted = RepresentativeGrafting.graft(
+            null, new int[] {1}, new int[] {0, 0, 0}, new double[] {0.2, 0.0, 0.4});
+
+        assertThat(grafted.roots().size(), is(1));
+        final IDBasedHierarchicCluster root = grafted.roots().get(0);
+        assertThat(grafted.getPreferredAssigner().clusterLevel(root), is(0.4));
+        assertThat(root.representant(), is(1));
+        assertThat(root.clusters().isEmpty(), is(true));
+        assertThat(new TreeSet<>(root.leaves()).toString(), is("[0, 1, 2]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void no_representatives_rejected() {
+        RepresentativeGrafting.graft(null, new int[0], new int[0], new double[0]);
+    }
+
+    /**
+     * All clusters of a dendrogram.
+     *
+     * @param h Dendrogram
+     * @return Clusters in breadth first order
+     */
+    private static List<IDBasedHierarchicCluster> clusters(IDBasedHierarchicClustering h) {
+        final List<IDBasedHierarchicCluster> ret = new ArrayList<>(h.roots());
+        for (int i = 0; i < ret.size(); i++) {
+            ret.addAll(ret.get(i).clusters());
+        }
+        return ret;
+    }
+
+    /**
+     * All leaves under a cluster.
+     *
+     * @param c Cluster
+     * @return Leaf IDs of the cluster and its descendants
+     */
+    private static List<Integer> leaves(IDBasedHierarchicCluster c) {
+        final List<Integer> ret = new ArrayList<>(c.leaves());
+        for (IDBasedHierarchicCluster child : c.clusters()) {
+            ret.addAll(leaves(child));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.algorithms;
+
+import com.chemaxon.clustering.fingerprints.FingerprintSpec;
+import com.chemaxon.clustering.fingerprints.PackedFingerprints;
+import com.chemaxon.clustering.fingerprints.PackedFingerprintsTest;
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import com.chemaxon.descriptors.common.unguarded.UnguardedDissimilarityCalculator;
+import com.chemaxon.descriptors.metrics.BinaryMetrics;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link SphereExclusionFilter}.
+ *
+ * @author Gabor Imre
+ */
+public class SphereExclusionFilterTest {
+
+    @Test
+    public void matches_sequential_greedy_scan() {
+        final PackedFingerprints fp = PackedFingerprintsTest.randomFingerprints(new Random(7), 6000, 2);
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        for (double radius : new double [] { 0.0, 0.3, 0.6, 0.9, 1.0, 1.5 }) {
+            final BitSet removed = new BitSet();
+            for (int i = 0; i < fp.size(); i++) {
+                if (removed.get(i)) {
+                    continue;
+                }
+                for (int j = i + 1; j < fp.size(); j++) {
+                    if (!removed.get(j) && fp.dissimilarity(i, fp, j) < radius) {
+                        removed.set(j);
+                    }
+                }
+            }
+
+            final SphereExclusionFilter.Result r =
+                new SphereExclusionFilter(fp).filter(radius, pool, new ProgressTracker().stage("filter"));
+            assertThat(r.getKeptCount(), is(fp.size() - removed.cardinality()));
+            for (int i = 0; i < fp.size(); i++) {
+                assertThat(r.isKept(i), is(!removed.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void matches_library_metric_filter() {
+        // bits from a narrow range give many dissimilarities equal to the radii below; every tenth row is empty
+        final Random rnd = new Random(11);
+        final int words = FingerprintSpec.GROUPING.words();
+        final long [][] rows = new long[1500][words];
+        final PackedFingerprints fp = new PackedFingerprints(rows.length, words);
+        for (int i = 0; i < rows.length; i++) {
+            if (i % 10 != 0) {
+                final int bits = 1 + rnd.nextInt(6);
+                for (int k = 0; k < bits; k++) {
+                    rows[i][0] |= 1L << rnd.nextInt(8);
+                }
+            }
+            fp.setRow(i, rows[i]);
+        }
+        final UnguardedDissimilarityCalculator<long []> udc = FingerprintSpec.GROUPING.createGenerator()
+            .comparisonContextFactory()
+            .forBinaryMetrics(BinaryMetrics.BINARY_TANIMOTO)
+            .unguardedContext()
+            .unguardedComparator();
+
+        for (double radius : new double [] { 0.0, 0.25, 1.0 - 2.0 / 3.0, 0.5, 0.75, 1.0 }) {
+            // the filter formerly run on the library metric
+            final double radiusDenorm = udc.denormalize(radius);
+            final BitSet removed = new BitSet();
+            for (int i = 0; i < rows.length; i++) {
+                if (removed.get(i)) {
+                    continue;
+                }
+                for (int j = i + 1; j < rows.length; j++) {
+                    if (!removed.get(j) && udc.dissimilarity(rows[i], rows[j]) < radiusDenorm) {
+                        removed.set(j);
+                    }
+                }
+            }
+
+            final SphereExclusionFilter.Result r = new SphereExclusionFilter(fp)
+                .filter(radius, ForkJoinPool.commonPool(), new ProgressTracker().stage("filter"));
+            for (int i = 0; i < rows.length; i++) {
+                assertThat("radius " + radius + " row " + i, r.isKept(i), is(!removed.get(i)));
+            }
+        }
+    }
+}
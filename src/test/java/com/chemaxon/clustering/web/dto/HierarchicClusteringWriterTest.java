@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.dto;
+
+import com.chemaxon.clustering.common.HierarchicClustering.Alignment;
+import com.chemaxon.clustering.common.IDBasedHierarchicClusterBuidler;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link HierarchicClusteringWriter}.
+ *
+ * @author Gabor Imre
+ */
+public class HierarchicClusteringWriterTest {
+
+    /**
+     * Serializes the DTO like the JSON provider.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void streamed_output_matches_dto_serialization() throws IOException {
+        // two roots; nested clusters with leaves on multiple levels
+        final IDBasedHierarchicClustering h = new IDBasedHierarchicClusterBuidler(Alignment.LEAF_ALIGNED)
+            .newRootCluster().setLevel(0.9).setRepresentant(0).addImmediateLeaf(0)
+            .newChildCluster().setLevel(0.6).setRepresentant(1).addImmediateLeaves(1, 2)
+            .newChildCluster().setLevel(0.2).setRepresentant(3).addImmediateLeaves(3, 4)
+            .parent()
+            .newChildCluster().setLevel(0.3).setRepresentant(5).addImmediateLeaves(5, 6)
+            .parent().parent()
+            .newChildCluster().setLevel(0.4).setRepresentant(7).addImmediateLeaves(7, 8)
+            .newRootCluster().setLevel(0.5).setRepresentant(9).addImmediateLeaves(9, 10)
+            .build();
+
+        final HierarchicClustering dto = new HierarchicClustering();
+        dto.setClustering(h, h.getPreferredAssigner());
+        dto.id = "clustering-1";
+        dto.url = "/rest/clusterings/clustering-1";
+        dto.elapsedTime = 1234;
+        dto.algorithmDescription = "WARDS";
+
+        final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new HierarchicClusteringWriter(h, h.getPreferredAssigner(), dto.id, dto.url, dto.elapsedTime,
+            dto.algorithmDescription).write(streamed);
+
+        final JsonNode expected = MAPPER.readTree(MAPPER.writeValueAsBytes(dto));
+        final JsonNode actual = MAPPER.readTree(streamed.toByteArray());
+        assertThat(actual, is(expected));
+    }
+}
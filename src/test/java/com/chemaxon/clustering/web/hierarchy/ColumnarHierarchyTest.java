@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import com.chemaxon.clustering.common.HierarchicClustering;
+import com.chemaxon.clustering.common.IDBasedAssigner;
+import com.chemaxon.clustering.common.IDBasedHierarchicCluster;
+import com.chemaxon.clustering.common.IDBasedHierarchicClusterBuidler;
+import com.chemaxon.clustering.common.IDBasedHierarchicClustering;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link ColumnarHierarchy}.
+ *
+ * @author Gabor Imre
+ */
+public class ColumnarHierarchyTest {
+
+    @Test
+    public void round_trip_preserves_columns() throws IOException {
+        // large enough to span several transfer buffers
+        final Random r = new Random(19);
+        final int c = 50000;
+        final int [] parent = new int[c];
+        final double [] level = new double[c];
+        final int [] clusterId = new int[c];
+        final int [] representant = new int[c];
+        final int [] leafCount = new int[c];
+        parent[0] = -1;
+        for (int i = 0; i < c; i++) {
+            if (i > 0) {
+                parent[i] = r.nextInt(i);
+            }
+            level[i] = r.nextDouble();
+            clusterId[i] = i + 7;
+            representant[i] = r.nextInt(c);
+            leafCount[i] = 2;
+        }
+        final int [] leafOrder = new int[2 * c];
+        for (int i = 0; i < leafOrder.length; i++) {
+            leafOrder[i] = r.nextInt();
+        }
+        final ColumnarHierarchy h = new ColumnarHierarchy(HierarchicClustering.Alignment.LEAF_ALIGNED, parent, level,
+            clusterId, representant, leafCount, leafOrder, 1234L, "Wards \u00e9");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        h.writeTo(out);
+        final byte [] bytes = out.toByteArray();
+        assertThat((long) bytes.length, is(h.sizeInBytes()));
+
+        // columns are readable in place
+        final ByteBuffer view = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(view.getInt(0), is(ColumnarHierarchy.MAGIC));
+        assertThat(view.getDouble(24 + 8 * 10), is(level[10]));
+        assertThat(view.getInt(24 + 8 * c + 4 * 10), is(parent[10]));
+        assertThat(view.getInt(24 + 24 * c + 4 * 99), is(leafOrder[99]));
+
+        final ColumnarHierarchy read = ColumnarHierarchy.readFrom(new ByteArrayInputStream(bytes));
+        assertThat(read.getClusterCount(), is(c));
+        assertThat(read.getLeafCount(), is(2 * c));
+        assertThat(read.getElapsedTime(), is(1234L));
+        assertThat(read.getAlgorithmDescription(), is("Wards \u00e9"));
+
+        final ByteArrayOutputStream again = new ByteArrayOutputStream();
+        read.writeTo(again);
+        assertThat(again.toByteArray(), is(bytes));
+    }
+
+    @Test
+    public void canonical_hierarchy_round_trips_through_clustering() throws IOException {
+        // levels not representable as float32
+        final IDBasedHierarchicClustering original = new IDBasedHierarchicClusterBuidler(
+                HierarchicClustering.Alignment.LEAF_ALIGNED)
+            .newRootCluster().setLevel(0.7).setRepresentant(0).addImmediateLeaf(0)
+            .newChildCluster().setLevel(0.3).setRepresentant(1).addImmediateLeaves(1, 2)
+            .newChildCluster().setLevel(0.1).setRepresentant(3).addImmediateLeaves(3, 4)
+            .parent().parent()
+            .newChildCluster().setLevel(0.2).setRepresentant(5).addImmediateLeaves(5, 6)
+            .newRootCluster().setLevel(0.6).setRepresentant(7).addImmediateLeaves(7, 8)
+            .build();
+        final IDBasedHierarchicClustering canonical = ColumnarHierarchy.canonical(original);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarHierarchy.of(canonical, new HierarchyIndex(canonical, canonical.getPreferredAssigner()), 1234L,
+            "Wards").writeTo(out);
+        final IDBasedHierarchicClustering loaded =
+            ColumnarHierarchy.readFrom(new ByteArrayInputStream(out.toByteArray())).toClustering();
+
+        assertThat(describe(loaded), is(describe(canonical)));
+        // same clusters as the original apart from the IDs
+        assertThat(describe(loaded).replaceAll("id=\\d+ ", ""), is(describe(original).replaceAll("id=\\d+ ", "")));
+    }
+
+    @Test(expected = IOException.class)
+    public void foreign_content_is_rejected() throws IOException {
+        ColumnarHierarchy.readFrom(new ByteArrayInputStream(new byte[64]));
+    }
+
+    /**
+     * Describe the clusters of a hierarchy.
+     *
+     * @param h Hierarchy
+     * @return One line for each cluster in preorder with its ID, level, representant and immediate leaves
+     */
+    private static String describe(IDBasedHierarchicClustering h) {
+        final IDBasedAssigner assigner = h.getPreferredAssigner();
+        final StringBuilder ret = new StringBuilder();
+        final List<IDBasedHierarchicCluster> stack = new ArrayList<>(h.roots());
+        while (!stack.isEmpty()) {
+            final IDBasedHierarchicCluster c = stack.remove(0);
+            ret.append("id=").append(c.getClusterID()).append(" level=").append(assigner.clusterLevel(c))
+                .append(" rep=").append(c.representant()).append(" leaves=").append(c.leaves())
+                .append(" depth=").append(c.depth()).append('\n');
+            stack.addAll(0, c.clusters());
+        }
+        return ret.toString();
+    }
+}
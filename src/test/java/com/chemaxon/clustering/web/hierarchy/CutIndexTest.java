@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link CutIndex}.
+ *
+ * @author Gabor Imre
+ */
+public class CutIndexTest {
+
+    /**
+     * Index of {@link SampleHierarchy#TREE}.
+     *
+     * @return Index
+     */
+    private static CutIndex index() {
+        return SampleHierarchy.TREE.cutIndex();
+    }
+
+    @Test
+    public void curve_counts_clusters_of_each_level() {
+        final CutIndex index = index();
+        assertThat(index.getLevels(), is(new double [] { 0.5, 1.0, 2.0, 3.0 }));
+        assertThat(index.getClusterCounts(), is(new int [] { 4, 3, 2, 1 }));
+        assertThat(index.clusterCount(0.1), is(5));
+        assertThat(index.clusterCount(1.5), is(3));
+        assertThat(index.clusterCount(10), is(1));
+    }
+
+    @Test
+    public void level_for_count_is_lowest_reaching_level() {
+        final CutIndex index = index();
+        assertThat(index.levelForCount(5), is(Double.NEGATIVE_INFINITY));
+        assertThat(index.levelForCount(4), is(0.5));
+        assertThat(index.levelForCount(3), is(1.0));
+        assertThat(index.levelForCount(1), is(3.0));
+    }
+
+    @Test
+    public void cut_keeps_maximal_subtrees() {
+        final CutIndex.Cut cut = index().cut(0.7);
+        assertThat(cut.getGroupCount(), is(4));
+        assertThat(cut.getMembers(0), is(new int [] { 0 }));
+        assertThat(cut.getMembers(1), is(new int [] { 1 }));
+        assertThat(cut.getMembers(2), is(new int [] { 2 }));
+        assertThat(cut.getMembers(3), is(new int [] { 3, 4 }));
+        assertThat(cut.getRepresentant(3), is(4));
+
+        final CutIndex.Cut top = index().cut(2.0);
+        assertThat(top.getGroupCount(), is(2));
+        assertThat(top.getMembers(0), is(new int [] { 0, 1 }));
+        assertThat(top.getMembers(1), is(new int [] { 2, 3, 4 }));
+        assertThat(top.getRepresentant(1), is(2));
+    }
+}
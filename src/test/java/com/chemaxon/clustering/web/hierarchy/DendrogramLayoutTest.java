@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import java.awt.image.BufferedImage;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link DendrogramLayout}.
+ *
+ * @author Gabor Imre
+ */
+public class DendrogramLayoutTest {
+
+    /**
+     * Layout of {@link SampleHierarchy#TREE}.
+     *
+     * @return Layout
+     */
+    private static DendrogramLayout layout() {
+        return SampleHierarchy.TREE.layout();
+    }
+
+    @Test
+    public void clusters_are_centered_on_their_children() {
+        final DendrogramLayout layout = layout();
+        assertThat(layout.getY(1), is(1.0));
+        assertThat(layout.getY(3), is(4.0));
+        assertThat(layout.getY(2), is((2.5 + 4.0) / 2));
+        assertThat(layout.getY(0), is((1.0 + layout.getY(2)) / 2));
+    }
+
+    @Test
+    public void roots_are_on_the_left() {
+        final DendrogramLayout layout = layout();
+        assertThat(layout.getX(0), is(0.0));
+        assertThat(layout.getX(3) > layout.getX(1), is(true));
+        assertThat(layout.getX(1) > layout.getX(2), is(true));
+    }
+
+    @Test
+    public void zoom_levels_separate_leaves() {
+        assertThat(layout().getMaxZoom(), is(0));
+        final int leaves = 50000;
+        final DendrogramLayout flat = new DendrogramLayout(
+            new int [] { -1 }, new double [] { 1.0 }, new int [] { leaves }, new int[leaves]);
+        assertThat((256L << flat.getMaxZoom()) / leaves >= 16, is(true));
+        assertThat((256L << (flat.getMaxZoom() - 1)) / leaves < 16, is(true));
+    }
+
+    @Test
+    public void tile_is_rendered() {
+        final BufferedImage tile = layout().renderTile(0, 0, 0, 256);
+        // vertical line of the root at the left edge spans the children
+        final int y = (int) (layout().getY(1) * 256 / 5);
+        assertThat(tile.getRGB(0, y + 1) & 0xFFFFFF, is(0));
+        assertThat(tile.getRGB(255, 0) & 0xFFFFFF, is(0xFFFFFF));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tile_outside_of_pyramid_is_rejected() {
+        layout().renderTile(1, 0, 0, 256);
+    }
+}
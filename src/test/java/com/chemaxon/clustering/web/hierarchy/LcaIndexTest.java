@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+import java.util.Random;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link LcaIndex}.
+ *
+ * @author Gabor Imre
+ */
+public class LcaIndexTest {
+
+    /**
+     * Index of {@link SampleHierarchy#FOREST}.
+     *
+     * @return Index
+     */
+    private static LcaIndex index() {
+        return SampleHierarchy.FOREST.lcaIndex();
+    }
+
+    @Test
+    public void lca_of_nodes() {
+        final LcaIndex index = index();
+        assertThat(index.lca(3, 3), is(3));
+        assertThat(index.lca(2, 3), is(2));
+        assertThat(index.lca(3, 2), is(2));
+        assertThat(index.lca(1, 3), is(0));
+        assertThat(index.lca(3, 4), is(-1));
+    }
+
+    @Test
+    public void cophenetic_distance_of_leaves() {
+        final LcaIndex index = index();
+        assertThat(index.cophenetic(0, 0), is(0.0));
+        assertThat(index.cophenetic(0, 1), is(1.0));
+        assertThat(index.cophenetic(3, 4), is(0.5));
+        assertThat(index.cophenetic(2, 4), is(2.0));
+        assertThat(index.cophenetic(4, 0), is(3.0));
+        assertThat(index.cophenetic(5, 6), is(1.5));
+        assertThat(Double.isNaN(index.cophenetic(0, 6)), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown_leaf_is_rejected() {
+        index().clusterOf(7);
+    }
+
+    @Test
+    public void lca_matches_ancestor_walk() {
+        final Random random = new Random(42);
+        final int c = 1000;
+        // preorder: the parent of a node is on the path from the previous node to its root
+        final int [] parent = new int[c];
+        final int [] depth = new int[c];
+        parent[0] = -1;
+        for (int n = 1; n < c; n++) {
+            int p = n - 1;
+            for (int up = random.nextInt(4); up > 0 && p >= 0; up--) {
+                p = parent[p];
+            }
+            parent[n] = random.nextInt(50) == 0 ? -1 : p;
+            depth[n] = parent[n] < 0 ? 0 : depth[parent[n]] + 1;
+        }
+        final LcaIndex index = new LcaIndex(parent, new double[c], new int[0]);
+        for (int t = 0; t < 10000; t++) {
+            final int a = random.nextInt(c);
+            final int b = random.nextInt(c);
+            int u = a;
+            int v = b;
+            while (depth[u] > depth[v]) {
+                u = parent[u];
+            }
+            while (depth[v] > depth[u]) {
+                v = parent[v];
+            }
+            while (u != v) {
+                u = parent[u];
+                v = parent[v];
+                if (u < 0 || v < 0) {
+                    u = -1;
+                    break;
+                }
+            }
+            assertThat(index.lca(a, b), is(u));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.hierarchy;
+
+/**
+ * Small hierarchies in the columnar form of the indices, shared by the index tests.
+ *
+ * Clusters are in depth first preorder; the leaf order lists the immediate leaves of each cluster in cluster order.
+ *
+ * @author Gabor Imre
+ */
+final class SampleHierarchy {
+
+    /**
+     * Hierarchy of 5 leaves.
+     *
+     * <pre>
+     * 0: level 3.0
+     * +- 1: level 1.0, leaves 0, 1
+     * +- 2: level 2.0, leaf 2
+     *    +- 3: level 0.5, leaves 3, 4
+     * </pre>
+     */
+    static final SampleHierarchy TREE = new SampleHierarchy(
+        new int [] { -1, 0, 0, 2 },
+        new double [] { 3.0, 1.0, 2.0, 0.5 },
+        new int [] { 0, 1, 2, 4 },
+        new int [] { 0, 2, 1, 2 },
+        new int [] { 0, 1, 2, 3, 4 });
+
+    /**
+     * Forest of 7 leaves: {@link #TREE} and a second root.
+     *
+     * <pre>
+     * 0: level 3.0
+     * +- 1: level 1.0, leaves 0, 1
+     * +- 2: level 2.0, leaf 2
+     *    +- 3: level 0.5, leaves 3, 4
+     * 4: level 1.5, leaves 5, 6
+     * </pre>
+     */
+    static final SampleHierarchy FOREST = new SampleHierarchy(
+        new int [] { -1, 0, 0, 2, -1 },
+        new double [] { 3.0, 1.0, 2.0, 0.5, 1.5 },
+        new int [] { 0, 1, 2, 4, 5 },
+        new int [] { 0, 2, 1, 2, 2 },
+        new int [] { 0, 1, 2, 3, 4, 5, 6 });
+
+    private final int [] parent;
+    private final double [] level;
+    private final int [] representant;
+    private final int [] immediateLeafCount;
+    private final int [] leafOrder;
+
+    /**
+     * Construct from columns.
+     *
+     * @param parent Parent cluster by cluster; -1 for roots
+     * @param level Level by cluster
+     * @param representant Representant leaf by cluster
+     * @param immediateLeafCount Immediate leaf count by cluster
+     * @param leafOrder Leaves in traversal order
+     */
+    private SampleHierarchy(int [] parent, double [] level, int [] representant, int [] immediateLeafCount,
+        int [] leafOrder) {
+        this.parent = parent;
+        this.level = level;
+        this.representant = representant;
+        this.immediateLeafCount = immediateLeafCount;
+        this.leafOrder = leafOrder;
+    }
+
+    /**
+     * Immediately containing cluster of each leaf.
+     *
+     * @return Cluster by leaf
+     */
+    private int [] leafCluster() {
+        final int [] ret = new int[this.leafOrder.length];
+        for (int n = 0, l = 0; n < this.parent.length; n++) {
+            for (int i = 0; i < this.immediateLeafCount[n]; i++) {
+                ret[this.leafOrder[l++]] = n;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Build a cut index.
+     *
+     * @return New index
+     */
+    CutIndex cutIndex() {
+        return new CutIndex(this.parent.clone(), this.level.clone(), this.representant.clone(),
+            this.immediateLeafCount.clone(), this.leafOrder.clone());
+    }
+
+    /**
+     * Build a lowest common ancestor index.
+     *
+     * @return New index
+     */
+    LcaIndex lcaIndex() {
+        return new LcaIndex(this.parent.clone(), this.level.clone(), leafCluster());
+    }
+
+    /**
+     * Build a dendrogram layout.
+     *
+     * @return New layout
+     */
+    DendrogramLayout layout() {
+        return new DendrogramLayout(this.parent.clone(), this.level.clone(), this.immediateLeafCount.clone(),
+            this.leafOrder.clone());
+    }
+}
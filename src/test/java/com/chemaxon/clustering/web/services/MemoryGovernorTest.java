@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 ChemAxon Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.chemaxon.clustering.web.services;
+
+import com.chemaxon.clustering.web.progress.ProgressTracker;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ * Exercise {@link MemoryGovernor}.
+ *
+ * @author Gabor Imre
+ */
+public class MemoryGovernorTest {
+
+    /**
+     * Budget used by the tests in megabytes.
+     */
+    private static final long BUDGET_MBYTES = 16;
+
+    @Test
+    public void admits_immediately_when_free() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        try (MemoryGovernor.Reservation r = g.acquire("Test", g.getBudget(), new ProgressTracker())) {
+            assertThat(g.getReserved(), is(g.getBudget()));
+            assertThat(g.getActiveCount(), is(1));
+        }
+        assertThat(g.getReserved(), is(0L));
+        assertThat(g.getActiveCount(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_above_budget() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        g.acquire("Test", g.getBudget() + 1, new ProgressTracker());
+    }
+
+    @Test
+    public void set_aside_is_reserved() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        g.setAside("Cache", g.getBudget() / 4);
+        assertThat(g.getSetAside(), is(g.getBudget() / 4));
+        assertThat(g.getReserved(), is(g.getBudget() / 4));
+        assertThat(g.getActiveCount(), is(0));
+    }
+
+    @Test
+    public void rejects_below_budget_above_set_aside() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        g.setAside("Cache", g.getBudget() / 4);
+        try {
+            // would wait forever for the set aside part
+            g.acquire("Test", g.getBudget() - 1, new ProgressTracker());
+            throw new AssertionError("Reservation not rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(g.getWaitingCount(), is(0));
+            assertThat(g.getReserved(), is(g.getBudget() / 4));
+        }
+    }
+
+    @Test
+    public void admits_remaining_budget_next_to_set_aside() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        g.setAside("Cache", g.getBudget() / 4);
+        try (MemoryGovernor.Reservation r = g.acquire("Test", g.getBudget() - g.getBudget() / 4,
+            new ProgressTracker())) {
+            assertThat(g.getReserved(), is(g.getBudget()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void set_aside_above_free_budget_rejected() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        g.setAside("Cache", g.getBudget() + 1);
+    }
+
+    @Test(expected = MemoryGovernor.AdmissionDeferredException.class)
+    public void deferring_does_not_wait() {
+        final MemoryGovernor g = new MemoryGovernor(BUDGET_MBYTES);
+        try (MemoryGovernor.Reservation r = g.acquire("Test", g.getBudget() / 2, new ProgressTracker())) {
+            g.deferring(() -> g.acquire("Test", g.getBudget(), new ProgressTracker()));
+        }
+    }
+}